@@ -0,0 +1,194 @@
+package com.correctsyntax.biblenotify;
+
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/*
+ * Logging and tracing for hot paths like the alarm receiver. A message is a
+ * format and up to three arguments: nothing is formatted or concatenated
+ * unless it goes to logcat (debug builds log from DEBUG, release builds from
+ * WARN) or the ring is dumped.
+ *
+ * The ring keeps the last RING_SIZE events in memory, from INFO up (WARN
+ * in release builds), so a bug report can show what led up to a problem.
+ * Its slots are reused and the message is not formatted, but primitive
+ * arguments are boxed by the caller: hot paths check isLoggable() first.
+ *
+ * Sections show up in Perfetto/systrace (atrace tag "app") and their
+ * duration goes into the ring:
+ *
+ *   long section = AppLog.begin("select");
+ *   try { ... } finally { AppLog.end("select", section); }
+ */
+public final class AppLog {
+  static final int RING_SIZE = 256;
+
+  // Lowest level sent to logcat and kept in the ring
+  static volatile int logcatLevel = BuildConfig.DEBUG ? Log.DEBUG : Log.WARN;
+  static volatile int ringLevel = BuildConfig.DEBUG ? Log.INFO : Log.WARN;
+
+  private static final class Event {
+    long wallTime;
+    int level;
+    String tag;
+    String format;
+    Object arg1;
+    Object arg2;
+    Object arg3;
+  }
+
+  private static final Event[] RING = new Event[RING_SIZE];
+  private static int next = 0;
+  private static int count = 0;
+
+  static {
+    for (int i = 0; i < RING_SIZE; i++) {
+      RING[i] = new Event();
+    }
+  }
+
+  private AppLog() {}
+
+  public static boolean isLoggable(int level) {
+    return level >= logcatLevel || level >= ringLevel;
+  }
+
+  public static void d(String tag, String format) {
+    log(Log.DEBUG, tag, format, null, null, null);
+  }
+
+  public static void d(String tag, String format, Object arg1) {
+    log(Log.DEBUG, tag, format, arg1, null, null);
+  }
+
+  public static void d(String tag, String format, Object arg1, Object arg2) {
+    log(Log.DEBUG, tag, format, arg1, arg2, null);
+  }
+
+  public static void d(String tag, String format, Object arg1, Object arg2, Object arg3) {
+    log(Log.DEBUG, tag, format, arg1, arg2, arg3);
+  }
+
+  public static void i(String tag, String format) {
+    log(Log.INFO, tag, format, null, null, null);
+  }
+
+  public static void i(String tag, String format, Object arg1) {
+    log(Log.INFO, tag, format, arg1, null, null);
+  }
+
+  public static void i(String tag, String format, Object arg1, Object arg2) {
+    log(Log.INFO, tag, format, arg1, arg2, null);
+  }
+
+  public static void i(String tag, String format, Object arg1, Object arg2, Object arg3) {
+    log(Log.INFO, tag, format, arg1, arg2, arg3);
+  }
+
+  public static void w(String tag, String format) {
+    log(Log.WARN, tag, format, null, null, null);
+  }
+
+  public static void w(String tag, String format, Object arg1) {
+    log(Log.WARN, tag, format, arg1, null, null);
+  }
+
+  public static void w(String tag, String format, Object arg1, Object arg2) {
+    log(Log.WARN, tag, format, arg1, arg2, null);
+  }
+
+  public static void e(String tag, String format) {
+    log(Log.ERROR, tag, format, null, null, null);
+  }
+
+  public static void e(String tag, String format, Object arg1) {
+    log(Log.ERROR, tag, format, arg1, null, null);
+  }
+
+  public static void e(String tag, String format, Object arg1, Object arg2) {
+    log(Log.ERROR, tag, format, arg1, arg2, null);
+  }
+
+  private static void log(
+      int level, String tag, String format, Object arg1, Object arg2, Object arg3) {
+    if (level >= logcatLevel) {
+      Log.println(level, tag, format(format, arg1, arg2, arg3));
+    }
+    if (level >= ringLevel) {
+      record(level, tag, format, arg1, arg2, arg3);
+    }
+  }
+
+  // Starts a trace section, returns what end() needs to time it
+  public static long begin(String section) {
+    Trace.beginSection(section);
+    return SystemClock.uptimeMillis();
+  }
+
+  // Sections end in reverse order of begin, on the same thread; timed only when logged
+  public static void end(String section, long startedAt) {
+    Trace.endSection();
+    if (isLoggable(Log.DEBUG)) {
+      long tookMs = SystemClock.uptimeMillis() - startedAt;
+      log(Log.DEBUG, "Trace", "%s took %d ms", section, tookMs, null);
+    }
+  }
+
+  private static synchronized void record(
+      int level, String tag, String format, Object arg1, Object arg2, Object arg3) {
+    Event event = RING[next];
+    event.wallTime = SetAlarm.clock.currentTimeMillis();
+    event.level = level;
+    event.tag = tag;
+    event.format = format;
+    event.arg1 = arg1;
+    event.arg2 = arg2;
+    event.arg3 = arg3;
+    next = (next + 1) % RING_SIZE;
+    count = Math.min(count + 1, RING_SIZE);
+  }
+
+  // The ring, oldest first, one event per line
+  public static synchronized void dump(PrintWriter out) {
+    int first = count < RING_SIZE ? 0 : next;
+    for (int i = 0; i < count; i++) {
+      Event event = RING[(first + i) % RING_SIZE];
+      out.printf(
+          Locale.US,
+          "%tF %<tT.%<tL %c/%s: %s%n",
+          event.wallTime,
+          "VVDIWEA".charAt(Math.min(event.level, Log.ASSERT) - 1),
+          event.tag,
+          format(event.format, event.arg1, event.arg2, event.arg3));
+    }
+    out.flush();
+  }
+
+  public static synchronized void clear() {
+    for (Event event : RING) {
+      event.tag = null;
+      event.format = null;
+      event.arg1 = null;
+      event.arg2 = null;
+      event.arg3 = null;
+    }
+    next = 0;
+    count = 0;
+  }
+
+  // A message that is not a valid format is kept as is, with its arguments
+  private static String format(String format, Object arg1, Object arg2, Object arg3) {
+    boolean noArgs = arg1 == null && arg2 == null && arg3 == null;
+    if (noArgs && format.indexOf('%') < 0) {
+      return format;
+    }
+    try {
+      return String.format(Locale.US, format, arg1, arg2, arg3);
+    } catch (RuntimeException e) {
+      return noArgs ? format : format + " [" + arg1 + ", " + arg2 + ", " + arg3 + "]";
+    }
+  }
+}
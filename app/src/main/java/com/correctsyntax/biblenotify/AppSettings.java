@@ -0,0 +1,289 @@
+package com.correctsyntax.biblenotify;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Typed access to the "bibleNotify" preferences.
+ *
+ * Reads come from an in-memory image. Edits land in the image at once, so
+ * the writer reads its own writes, and are queued for a single background
+ * flush: every edit applied before the flush runs goes out in one
+ * SharedPreferences commit, which never happens on the UI thread.
+ *
+ * Another process writing the file (or a flush from another instance of
+ * this app) changes its modification time. get() notices that and reloads
+ * the image, keeping local edits that were not flushed yet on top.
+ */
+public class AppSettings {
+  private static final String TAG = "AppSettings";
+  static final String NAME = "bibleNotify";
+
+  static final String STARTED = "Started";
+  static final String SET_TIME_HOUR = "SetTimeH";
+  static final String SET_TIME_MINUTE = "SetTimeM";
+  static final String CURRENT_ACTIVE_PROFILE = "currentActiveProfile";
+  static final String CURRENT_QUOTE_FILE = "currentQuoteFile";
+  static final String CURRENT_VERSE_NUMBER = "currentVerseNumber";
+  static final String TOTAL_QUOTES = "totalQuotes";
+  static final String READER_DATA = "readerData";
+  static final String READER_DATA_VERSE_NUMBER = "readerDataVerseNumber";
+  static final String LANGUAGE = "language";
+  static final String LANGUAGE_PATH = "languagePath";
+  static final String READER_MODE = "readerMode";
+
+  static final String PREFETCH_DEPTH = "prefetchDepth";
+  static final String CHAPTER_CACHE_SIZE = "chapterCacheSize";
+
+  static final String READER_MODE_WEB = "web";
+  static final String READER_MODE_NATIVE = "native";
+
+  private static AppSettings instance;
+
+  private final Context context;
+  private final File file;
+  private final ExecutorService flusher = Executors.newSingleThreadExecutor();
+
+  // Guarded by this
+  private Map<String, Object> image;
+  private final Map<String, Object> pending = new LinkedHashMap<>();
+  private boolean flushQueued = false;
+  private long loadedMtime;
+
+  private AppSettings(Context context) {
+    this.context = context;
+    this.file = new File(context.getFilesDir().getParentFile(), "shared_prefs/" + NAME + ".xml");
+    load(false);
+  }
+
+  public static AppSettings get(Context context) {
+    AppSettings settings;
+    synchronized (AppSettings.class) {
+      if (instance == null) {
+        instance = new AppSettings(context.getApplicationContext());
+      }
+      settings = instance;
+    }
+    settings.reloadIfChanged();
+    return settings;
+  }
+
+  // Batches edits, nothing is visible until apply()
+  public Editor edit() {
+    return new Editor();
+  }
+
+  public String started() {
+    return getString(STARTED, null);
+  }
+
+  public boolean isStarted() {
+    return "yes".equals(started());
+  }
+
+  public int setTimeHour() {
+    return getInt(SET_TIME_HOUR, 0);
+  }
+
+  public int setTimeMinute() {
+    return getInt(SET_TIME_MINUTE, 0);
+  }
+
+  public String currentActiveProfile() {
+    return getString(CURRENT_ACTIVE_PROFILE, null);
+  }
+
+  public String currentQuoteFile() {
+    return getString(CURRENT_QUOTE_FILE, null);
+  }
+
+  public int currentVerseNumber() {
+    return getInt(CURRENT_VERSE_NUMBER, 0);
+  }
+
+  public int totalQuotes() {
+    return getInt(TOTAL_QUOTES, 0);
+  }
+
+  public String readerData() {
+    return getString(READER_DATA, "book/ch");
+  }
+
+  public String readerDataVerseNumber() {
+    return getString(READER_DATA_VERSE_NUMBER, "");
+  }
+
+  public String language(String defaultLanguage) {
+    return getString(LANGUAGE, defaultLanguage);
+  }
+
+  public boolean hasLanguagePath() {
+    return getString(LANGUAGE_PATH, null) != null;
+  }
+
+  public String languagePath() {
+    return getString(LANGUAGE_PATH, "en");
+  }
+
+  public String readerMode() {
+    return getString(READER_MODE, READER_MODE_WEB);
+  }
+
+  public boolean isNativeReader() {
+    return READER_MODE_NATIVE.equals(readerMode());
+  }
+
+  // Chapters prepared ahead on each side of the one being read
+  public int prefetchDepth() {
+    return getInt(PREFETCH_DEPTH, 1);
+  }
+
+  // Prepared chapters the reader keeps in memory
+  public int chapterCacheSize() {
+    return getInt(CHAPTER_CACHE_SIZE, 5);
+  }
+
+  public class Editor {
+    private final Map<String, Object> changes = new LinkedHashMap<>();
+
+    public Editor setStarted(String started) {
+      return put(STARTED, started);
+    }
+
+    public Editor setTime(int hour, int minute) {
+      put(SET_TIME_HOUR, hour);
+      return put(SET_TIME_MINUTE, minute);
+    }
+
+    public Editor setCurrentActiveProfile(String profileId) {
+      return put(CURRENT_ACTIVE_PROFILE, profileId);
+    }
+
+    public Editor setCurrentQuoteFile(String quoteFile) {
+      return put(CURRENT_QUOTE_FILE, quoteFile);
+    }
+
+    public Editor setCurrentVerseNumber(int verseNumber) {
+      return put(CURRENT_VERSE_NUMBER, verseNumber);
+    }
+
+    public Editor setTotalQuotes(int totalQuotes) {
+      return put(TOTAL_QUOTES, totalQuotes);
+    }
+
+    public Editor setReaderData(String readerData, String verseNumber) {
+      put(READER_DATA, readerData);
+      return put(READER_DATA_VERSE_NUMBER, verseNumber);
+    }
+
+    public Editor setLanguage(String language, String languagePath) {
+      put(LANGUAGE, language);
+      return put(LANGUAGE_PATH, languagePath);
+    }
+
+    public Editor setReaderMode(String readerMode) {
+      return put(READER_MODE, readerMode);
+    }
+
+    public Editor setPrefetch(int depth, int cacheSize) {
+      put(PREFETCH_DEPTH, depth);
+      return put(CHAPTER_CACHE_SIZE, cacheSize);
+    }
+
+    // A null value removes the key
+    private Editor put(String key, Object value) {
+      changes.put(key, value);
+      return this;
+    }
+
+    // Visible to readers in this process at once, written in the background
+    public void apply() {
+      AppSettings.this.apply(changes);
+    }
+  }
+
+  private synchronized String getString(String key, String defaultValue) {
+    Object value = image.get(key);
+    return value instanceof String ? (String) value : defaultValue;
+  }
+
+  private synchronized int getInt(String key, int defaultValue) {
+    Object value = image.get(key);
+    return value instanceof Integer ? (Integer) value : defaultValue;
+  }
+
+  private synchronized void apply(Map<String, Object> changes) {
+    for (Map.Entry<String, Object> change : changes.entrySet()) {
+      if (change.getValue() == null) {
+        image.remove(change.getKey());
+      } else {
+        image.put(change.getKey(), change.getValue());
+      }
+    }
+    pending.putAll(changes);
+    if (!flushQueued) {
+      flushQueued = true;
+      flusher.execute(this::flush);
+    }
+  }
+
+  // Writes everything applied so far in one commit
+  private void flush() {
+    Map<String, Object> batch;
+    synchronized (this) {
+      batch = new LinkedHashMap<>(pending);
+      pending.clear();
+      flushQueued = false;
+    }
+
+    SharedPreferences.Editor editor =
+        context.getSharedPreferences(NAME, Context.MODE_PRIVATE).edit();
+    for (Map.Entry<String, Object> change : batch.entrySet()) {
+      Object value = change.getValue();
+      if (value == null) {
+        editor.remove(change.getKey());
+      } else if (value instanceof Integer) {
+        editor.putInt(change.getKey(), (Integer) value);
+      } else {
+        editor.putString(change.getKey(), (String) value);
+      }
+    }
+    if (!editor.commit()) {
+      Log.e(TAG, "Could not write " + batch.size() + " settings");
+    }
+
+    // Our own write must not look like a change from another process
+    synchronized (this) {
+      loadedMtime = file.lastModified();
+    }
+  }
+
+  private synchronized void reloadIfChanged() {
+    if (file.lastModified() != loadedMtime) {
+      load(true);
+      Log.i(TAG, "Settings changed on disk, reloaded");
+    }
+  }
+
+  // MODE_MULTI_PROCESS makes the framework re-read a file changed behind its back
+  @SuppressWarnings("deprecation")
+  private synchronized void load(boolean reload) {
+    loadedMtime = file.lastModified();
+    int mode = reload ? Context.MODE_MULTI_PROCESS : Context.MODE_PRIVATE;
+    image = new HashMap<>(context.getSharedPreferences(NAME, mode).getAll());
+    for (Map.Entry<String, Object> change : pending.entrySet()) {
+      if (change.getValue() == null) {
+        image.remove(change.getKey());
+      } else {
+        image.put(change.getKey(), change.getValue());
+      }
+    }
+  }
+}
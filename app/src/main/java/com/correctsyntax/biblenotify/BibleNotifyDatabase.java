@@ -0,0 +1,502 @@
+package com.correctsyntax.biblenotify;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/*
+ * Durable store for profiles, imported quotes and delivery history.
+ *
+ * Every change is a single-row statement compiled once per process, so a
+ * profile edit or a delivery costs O(1) regardless of how many profiles or
+ * quotes exist. Quotes are keyed by (profile, ordinal); the binary
+ * QuoteStore files are derived from them and can be rebuilt at any time.
+ * Profile rows are updated in place, so a profile keeps its rowid for as
+ * long as it exists: it is the profile's notification id.
+ *
+ * onCreate migrates the old storage once: profiles_json from the
+ * bibleNotify preferences and the imported quote JSON files.
+ */
+public class BibleNotifyDatabase extends SQLiteOpenHelper {
+  private static final String TAG = "BibleNotifyDatabase";
+  static final String NAME = "bible_notify.db";
+  static final int VERSION = 1;
+
+  private static BibleNotifyDatabase instance;
+
+  private final Context context;
+  // What onCreate migrated, dropped from the old storage once its transaction committed
+  private final List<File> migratedFiles = new ArrayList<>();
+  private boolean migratedProfiles = false;
+  private SQLiteStatement updateProfile;
+  private SQLiteStatement insertProfile;
+  private SQLiteStatement profileRow;
+  private SQLiteStatement deleteProfile;
+  private SQLiteStatement deleteQuotes;
+  private SQLiteStatement insertDelivery;
+
+  private BibleNotifyDatabase(Context context) {
+    super(context, NAME, null, VERSION);
+    this.context = context;
+  }
+
+  public static synchronized BibleNotifyDatabase get(Context context) {
+    if (instance == null) {
+      instance = new BibleNotifyDatabase(context.getApplicationContext());
+    }
+    return instance;
+  }
+
+  @Override
+  public void onCreate(SQLiteDatabase db) {
+    db.execSQL(
+        "CREATE TABLE profiles ("
+            + "id TEXT PRIMARY KEY, "
+            + "position INTEGER NOT NULL, "
+            + "name TEXT, "
+            + "category TEXT, "
+            + "hour INTEGER NOT NULL, "
+            + "minute INTEGER NOT NULL, "
+            + "enabled INTEGER NOT NULL, "
+            + "quotes_file TEXT, "
+            + "original_file_name TEXT, "
+            + "selected_days INTEGER NOT NULL, "
+            + "selection_mode TEXT, "
+            + "category_weights TEXT, "
+            + "short_weight INTEGER NOT NULL, "
+            + "favorite_weight INTEGER NOT NULL)");
+    db.execSQL("CREATE INDEX profiles_quotes_file ON profiles (quotes_file)");
+    db.execSQL(
+        "CREATE TABLE quotes ("
+            + "profile_id TEXT NOT NULL, "
+            + "ordinal INTEGER NOT NULL, "
+            + "verse TEXT, "
+            + "place TEXT, "
+            + "data TEXT, "
+            + "PRIMARY KEY (profile_id, ordinal))");
+    db.execSQL(
+        "CREATE TABLE delivery_history ("
+            + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "profile_id TEXT NOT NULL, "
+            + "scheduled_at INTEGER NOT NULL, "
+            + "delivered_at INTEGER NOT NULL, "
+            + "quote_index INTEGER NOT NULL, "
+            + "store_checksum INTEGER NOT NULL)");
+    db.execSQL(
+        "CREATE INDEX delivery_history_profile ON delivery_history (profile_id, delivered_at)");
+
+    migrate(db);
+  }
+
+  @Override
+  public void onOpen(SQLiteDatabase db) {
+    for (File file : migratedFiles) {
+      file.delete();
+    }
+    migratedFiles.clear();
+    if (migratedProfiles) {
+      context
+          .getSharedPreferences("bibleNotify", Context.MODE_PRIVATE)
+          .edit()
+          .remove("profiles_json")
+          .apply();
+      migratedProfiles = false;
+    }
+  }
+
+  @Override
+  public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    // First version, nothing to upgrade yet
+  }
+
+  // Profiles in display order, empty before the first profile is saved
+  public List<QuoteProfile> loadProfiles() {
+    List<QuoteProfile> profiles = new ArrayList<>();
+    try (Cursor cursor =
+        getReadableDatabase()
+            .rawQuery(
+                "SELECT id, name, category, hour, minute, enabled, quotes_file, "
+                    + "original_file_name, selected_days, selection_mode, category_weights, "
+                    + "short_weight, favorite_weight FROM profiles ORDER BY position",
+                null)) {
+      while (cursor.moveToNext()) {
+        QuoteProfile profile = new QuoteProfile();
+        profile.id = cursor.getString(0);
+        profile.name = cursor.getString(1);
+        profile.category = cursor.getString(2);
+        profile.hour = cursor.getInt(3);
+        profile.minute = cursor.getInt(4);
+        profile.enabled = cursor.getInt(5) != 0;
+        profile.quotesFile = cursor.getString(6);
+        profile.originalFileName = cursor.getString(7);
+        profile.selectedDays = unpackDays(cursor.getInt(8));
+        profile.selectionMode = cursor.getString(9);
+        readWeights(cursor.getString(10), profile);
+        profile.shortWeight = cursor.getInt(11);
+        profile.favoriteWeight = cursor.getInt(12);
+        profiles.add(profile);
+      }
+    }
+    return profiles;
+  }
+
+  // Updates one profile row in place, inserting it if it is new
+  public synchronized void putProfile(QuoteProfile profile, int position) {
+    SQLiteDatabase db = getWritableDatabase();
+    if (updateProfile == null) {
+      updateProfile =
+          db.compileStatement(
+              "UPDATE profiles SET id = ?, position = ?, name = ?, category = ?, hour = ?, "
+                  + "minute = ?, enabled = ?, quotes_file = ?, original_file_name = ?, "
+                  + "selected_days = ?, selection_mode = ?, category_weights = ?, "
+                  + "short_weight = ?, favorite_weight = ? WHERE id = ?");
+      insertProfile =
+          db.compileStatement(
+              "INSERT INTO profiles (id, position, name, category, hour, minute, "
+                  + "enabled, quotes_file, original_file_name, selected_days, selection_mode, "
+                  + "category_weights, short_weight, favorite_weight) "
+                  + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+    }
+    bindProfile(updateProfile, profile, position);
+    updateProfile.bindString(15, profile.id);
+    if (updateProfile.executeUpdateDelete() == 0) {
+      bindProfile(insertProfile, profile, position);
+      insertProfile.executeInsert();
+    }
+  }
+
+  // Row of a profile, the same for as long as it exists; -1 if it is not stored
+  public synchronized long profileRow(String profileId) {
+    if (profileRow == null) {
+      profileRow =
+          getReadableDatabase().compileStatement("SELECT rowid FROM profiles WHERE id = ?");
+    }
+    profileRow.bindString(1, profileId);
+    try {
+      return profileRow.simpleQueryForLong();
+    } catch (SQLiteDoneException e) {
+      return -1;
+    }
+  }
+
+  // Replaces every profile in one transaction, profiles that stay keep their rows
+  public synchronized void replaceProfiles(List<QuoteProfile> profiles) {
+    SQLiteDatabase db = getWritableDatabase();
+    Set<String> kept = new HashSet<>();
+    for (QuoteProfile profile : profiles) {
+      kept.add(profile.id);
+    }
+    db.beginTransaction();
+    try {
+      List<String> dropped = new ArrayList<>();
+      try (Cursor cursor = db.rawQuery("SELECT id FROM profiles", null)) {
+        while (cursor.moveToNext()) {
+          if (!kept.contains(cursor.getString(0))) {
+            dropped.add(cursor.getString(0));
+          }
+        }
+      }
+      for (String id : dropped) {
+        db.execSQL("DELETE FROM profiles WHERE id = ?", new Object[] {id});
+      }
+      for (int i = 0; i < profiles.size(); i++) {
+        putProfile(profiles.get(i), i);
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  // Removes the profile together with its quotes
+  public synchronized void deleteProfile(String profileId) {
+    SQLiteDatabase db = getWritableDatabase();
+    if (deleteProfile == null) {
+      deleteProfile = db.compileStatement("DELETE FROM profiles WHERE id = ?");
+    }
+    db.beginTransaction();
+    try {
+      deleteProfile.bindString(1, profileId);
+      deleteProfile.executeUpdateDelete();
+      deleteQuotes(db, profileId);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  // Owner of an imported quote file, or null
+  public String profileIdForQuoteFile(String quoteFile) {
+    try (Cursor cursor =
+        getReadableDatabase()
+            .rawQuery("SELECT id FROM profiles WHERE quotes_file = ?", new String[] {quoteFile})) {
+      return cursor.moveToFirst() ? cursor.getString(0) : null;
+    }
+  }
+
+  /*
+   * Replaces a profile's quotes inside one transaction. Nothing is visible
+   * until commit(); closing without commit rolls back. Use it from one
+   * thread only, like any SQLite transaction.
+   */
+  public QuoteWriter writeQuotes(String profileId) {
+    return new QuoteWriter(profileId, false);
+  }
+
+  // Like writeQuotes, but keeps the profile's quotes and adds after them
+  public QuoteWriter appendQuotes(String profileId) {
+    return new QuoteWriter(profileId, true);
+  }
+
+  // Copies a profile's quotes in ordinal order into a store, returns how many
+  public int copyQuotes(String profileId, QuoteStore.Writer writer) throws IOException {
+    try (Cursor cursor =
+        getReadableDatabase()
+            .rawQuery(
+                "SELECT verse, place, data FROM quotes WHERE profile_id = ? ORDER BY ordinal",
+                new String[] {profileId})) {
+      while (cursor.moveToNext()) {
+        writer.add(cursor.getString(0), cursor.getString(1), cursor.getString(2));
+      }
+      return writer.count();
+    }
+  }
+
+  // store_checksum holds the library's selection key, with the index it names the quote
+  public synchronized void recordDelivery(
+      String profileId, long scheduledAt, long deliveredAt, int quoteIndex, long selectionKey) {
+    if (insertDelivery == null) {
+      insertDelivery =
+          getWritableDatabase()
+              .compileStatement(
+                  "INSERT INTO delivery_history (profile_id, scheduled_at, delivered_at, "
+                      + "quote_index, store_checksum) VALUES (?, ?, ?, ?, ?)");
+    }
+    insertDelivery.bindString(1, profileId);
+    insertDelivery.bindLong(2, scheduledAt);
+    insertDelivery.bindLong(3, deliveredAt);
+    insertDelivery.bindLong(4, quoteIndex);
+    insertDelivery.bindLong(5, selectionKey);
+    insertDelivery.executeInsert();
+  }
+
+  public class QuoteWriter implements Closeable {
+    private final String profileId;
+    private final SQLiteDatabase db;
+    // Own statements, so an import never waits on the monitor guarding the shared ones
+    private final SQLiteStatement insert;
+    private long ordinal;
+    private boolean done = false;
+
+    QuoteWriter(String profileId, boolean append) {
+      this.profileId = profileId;
+      this.db = getWritableDatabase();
+      db.beginTransaction();
+      if (append) {
+        SQLiteStatement last =
+            db.compileStatement(
+                "SELECT COALESCE(MAX(ordinal) + 1, 0) FROM quotes WHERE profile_id = ?");
+        last.bindString(1, profileId);
+        ordinal = last.simpleQueryForLong();
+        last.close();
+      } else {
+        SQLiteStatement delete = db.compileStatement("DELETE FROM quotes WHERE profile_id = ?");
+        delete.bindString(1, profileId);
+        delete.executeUpdateDelete();
+        delete.close();
+      }
+      insert =
+          db.compileStatement(
+              "INSERT INTO quotes (profile_id, ordinal, verse, place, data) VALUES (?, ?, ?, ?, ?)");
+    }
+
+    public void add(String verse, String place, String data) {
+      insert.bindString(1, profileId);
+      insert.bindLong(2, ordinal++);
+      bindNullable(insert, 3, verse);
+      bindNullable(insert, 4, place);
+      bindNullable(insert, 5, data);
+      insert.executeInsert();
+    }
+
+    public void commit() {
+      db.setTransactionSuccessful();
+      close();
+    }
+
+    @Override
+    public void close() {
+      if (!done) {
+        done = true;
+        insert.close();
+        db.endTransaction();
+      }
+    }
+  }
+
+  private void deleteQuotes(SQLiteDatabase db, String profileId) {
+    if (deleteQuotes == null) {
+      deleteQuotes = db.compileStatement("DELETE FROM quotes WHERE profile_id = ?");
+    }
+    deleteQuotes.bindString(1, profileId);
+    deleteQuotes.executeUpdateDelete();
+  }
+
+  // One-time import of profiles_json and the imported quote JSON files
+  private void migrate(SQLiteDatabase db) {
+    SharedPreferences prefs = context.getSharedPreferences("bibleNotify", Context.MODE_PRIVATE);
+    String profilesJson = prefs.getString("profiles_json", "");
+    if (profilesJson.isEmpty()) {
+      return;
+    }
+
+    List<QuoteProfile> profiles = new ArrayList<>();
+    try {
+      JSONArray jsonArray = new JSONArray(profilesJson);
+      for (int i = 0; i < jsonArray.length(); i++) {
+        profiles.add(QuoteProfile.fromJSON(jsonArray.getJSONObject(i)));
+      }
+    } catch (JSONException e) {
+      Log.e(TAG, "Error parsing profiles JSON, not migrated: " + e);
+      return;
+    }
+
+    File quotesDir = new File(context.getFilesDir(), "assets/quotes");
+    SQLiteStatement insertProfile =
+        db.compileStatement(
+            "INSERT OR REPLACE INTO profiles (id, position, name, category, hour, minute, "
+                + "enabled, quotes_file, original_file_name, selected_days, selection_mode, "
+                + "category_weights, short_weight, favorite_weight) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+    SQLiteStatement insertQuote =
+        db.compileStatement(
+            "INSERT INTO quotes (profile_id, ordinal, verse, place, data) VALUES (?, ?, ?, ?, ?)");
+
+    for (int i = 0; i < profiles.size(); i++) {
+      QuoteProfile profile = profiles.get(i);
+      bindProfile(insertProfile, profile, i);
+      insertProfile.executeInsert();
+
+      File jsonFile = profile.quotesFile != null ? new File(quotesDir, profile.quotesFile) : null;
+      if (jsonFile == null || !jsonFile.exists()) {
+        continue;
+      }
+      try {
+        JSONArray all = new JSONObject(readFile(jsonFile)).getJSONArray("all");
+        for (int ordinal = 0; ordinal < all.length(); ordinal++) {
+          JSONObject quote = all.getJSONObject(ordinal);
+          insertQuote.bindString(1, profile.id);
+          insertQuote.bindLong(2, ordinal);
+          bindNullable(insertQuote, 3, quote.optString("verse", null));
+          bindNullable(insertQuote, 4, quote.optString("place", null));
+          bindNullable(insertQuote, 5, quote.optString("data", null));
+          insertQuote.executeInsert();
+        }
+        migratedFiles.add(jsonFile);
+        Log.i(TAG, "Migrated " + all.length() + " quotes of " + profile.name);
+      } catch (IOException | JSONException e) {
+        Log.e(TAG, "Error migrating " + jsonFile.getName() + ": " + e);
+      }
+    }
+    insertProfile.close();
+    insertQuote.close();
+
+    migratedProfiles = true;
+    Log.i(TAG, "Migrated " + profiles.size() + " profiles");
+  }
+
+  private static void bindProfile(SQLiteStatement statement, QuoteProfile profile, int position) {
+    statement.clearBindings();
+    statement.bindString(1, profile.id);
+    statement.bindLong(2, position);
+    bindNullable(statement, 3, profile.name);
+    bindNullable(statement, 4, profile.category);
+    statement.bindLong(5, profile.hour);
+    statement.bindLong(6, profile.minute);
+    statement.bindLong(7, profile.enabled ? 1 : 0);
+    bindNullable(statement, 8, profile.quotesFile);
+    bindNullable(statement, 9, profile.originalFileName);
+    statement.bindLong(10, packDays(profile.selectedDays));
+    bindNullable(statement, 11, profile.selectionMode);
+    statement.bindString(12, new JSONObject(profile.categoryWeights).toString());
+    statement.bindLong(13, profile.shortWeight);
+    statement.bindLong(14, profile.favoriteWeight);
+  }
+
+  private static void bindNullable(SQLiteStatement statement, int index, String value) {
+    if (value != null) {
+      statement.bindString(index, value);
+    } else {
+      statement.bindNull(index);
+    }
+  }
+
+  // selectedDays [Sun..Sat] as bits 0..6, null meaning every day
+  private static int packDays(boolean[] days) {
+    if (days == null) {
+      return 0x7F;
+    }
+    int bits = 0;
+    for (int i = 0; i < days.length && i < 7; i++) {
+      if (days[i]) {
+        bits |= 1 << i;
+      }
+    }
+    return bits;
+  }
+
+  private static boolean[] unpackDays(int bits) {
+    boolean[] days = new boolean[7];
+    for (int i = 0; i < 7; i++) {
+      days[i] = (bits & (1 << i)) != 0;
+    }
+    return days;
+  }
+
+  private static void readWeights(String json, QuoteProfile profile) {
+    if (json == null || json.isEmpty()) {
+      return;
+    }
+    try {
+      JSONObject weights = new JSONObject(json);
+      Iterator<String> keys = weights.keys();
+      while (keys.hasNext()) {
+        String key = keys.next();
+        profile.categoryWeights.put(key, weights.getInt(key));
+      }
+    } catch (JSONException e) {
+      Log.w(TAG, "Ignoring bad category weights of " + profile.id + ": " + e);
+    }
+  }
+
+  private static String readFile(File file) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      byte[] bytes = new byte[(int) file.length()];
+      int offset = 0;
+      int read;
+      while (offset < bytes.length && (read = in.read(bytes, offset, bytes.length - offset)) > 0) {
+        offset += read;
+      }
+      return new String(bytes, 0, offset, StandardCharsets.UTF_8);
+    }
+  }
+}
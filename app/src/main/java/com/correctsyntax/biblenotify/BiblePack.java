@@ -0,0 +1,330 @@
+package com.correctsyntax.biblenotify;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Reader for bible/<lang>/bible.pack, written at build time by the
+ * compileBiblePacks task in app/build.gradle.
+ *
+ * Layout (big endian):
+ *   header   magic, version, chapterCount, quoteCount, bookCount, verseTableOffset, textOffset
+ *   index    per chapter: key ("Ps/23"), title, textStart, textLength, verseCount, verseStart
+ *   verses   per verse: number, start, end (byte offsets into the chapter text)
+ *   text     normalized UTF-8 chapter texts in canonical book order
+ *
+ * The pack is stored uncompressed (noCompress 'pack') so it can be mapped
+ * straight from the APK: reading a chapter is one copy out of the mapping,
+ * and the verse table says where every "<p><sup>N</sup>" paragraph starts.
+ */
+public class BiblePack {
+  static final int MAGIC = 0x454E4250; // "ENBP"
+  static final int VERSION = 1;
+  static final int VERSE_ENTRY_SIZE = 12;
+  static final String HIGHLIGHT_PARAGRAPH = "<p class='hv'>";
+
+  public static class Chapter {
+    public final String key;
+    public final String title;
+    final int index; // position in canonical order
+    final int textStart;
+    final int textLength;
+    final int verseCount;
+    final int verseStart;
+
+    Chapter(
+        String key,
+        String title,
+        int index,
+        int textStart,
+        int textLength,
+        int verseCount,
+        int verseStart) {
+      this.key = key;
+      this.title = title;
+      this.index = index;
+      this.textStart = textStart;
+      this.textLength = textLength;
+      this.verseCount = verseCount;
+      this.verseStart = verseStart;
+    }
+  }
+
+  // One "<p><sup>N</sup> text</p>" paragraph, text is the markup between </sup> and </p>
+  public static class Verse {
+    public final int number;
+    public final String text;
+
+    Verse(int number, String text) {
+      this.number = number;
+      this.text = text;
+    }
+  }
+
+  private final ByteBuffer buffer;
+  private final List<Chapter> chapters;
+  private final Map<String, Chapter> chaptersByKey;
+  private final int quoteCount;
+  private final int bookCount;
+  private final int verseTableOffset;
+  private final int textOffset;
+
+  private BiblePack(
+      ByteBuffer buffer,
+      List<Chapter> chapters,
+      int quoteCount,
+      int bookCount,
+      int verseTableOffset,
+      int textOffset) {
+    this.buffer = buffer;
+    this.chapters = Collections.unmodifiableList(chapters);
+    this.chaptersByKey = new HashMap<>();
+    for (Chapter chapter : chapters) {
+      chaptersByKey.put(chapter.key, chapter);
+    }
+    this.quoteCount = quoteCount;
+    this.bookCount = bookCount;
+    this.verseTableOffset = verseTableOffset;
+    this.textOffset = textOffset;
+  }
+
+  // Maps the pack and reads its chapter index, texts stay in the mapping
+  public static BiblePack open(Context context, String languagePath) throws IOException {
+    String path = "bible/" + languagePath + "/bible.pack";
+    ByteBuffer buffer = map(context.getAssets(), path);
+
+    try {
+      ByteBuffer in = buffer.duplicate();
+      if (in.getInt() != MAGIC) {
+        throw new IOException("Not a bible pack: " + path);
+      }
+      int version = in.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported bible pack version " + version);
+      }
+      int chapterCount = in.getInt();
+      int quoteCount = in.getInt();
+      int bookCount = in.getInt();
+      int verseTableOffset = in.getInt();
+      int textOffset = in.getInt();
+
+      List<Chapter> chapters = new ArrayList<>(chapterCount);
+      for (int i = 0; i < chapterCount; i++) {
+        chapters.add(
+            new Chapter(
+                readUTF(in), readUTF(in), i, in.getInt(), in.getInt(), in.getInt(), in.getInt()));
+      }
+      return new BiblePack(buffer, chapters, quoteCount, bookCount, verseTableOffset, textOffset);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated bible pack: " + path);
+    }
+  }
+
+  // Uncompressed assets are mapped in place, anything else is read into memory once
+  static ByteBuffer map(AssetManager assets, String path) throws IOException {
+    try (AssetFileDescriptor fd = assets.openFd(path);
+        FileInputStream in = new FileInputStream(fd.getFileDescriptor());
+        FileChannel channel = in.getChannel()) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+    } catch (IOException e) {
+      // openFd throws for compressed assets
+      try (InputStream in = assets.open(path)) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+          out.write(chunk, 0, read);
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+      }
+    }
+  }
+
+  // DataOutputStream.writeUTF format; chapter keys and titles carry no NUL or supplementary chars
+  private static String readUTF(ByteBuffer in) {
+    byte[] bytes = new byte[in.getShort() & 0xFFFF];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+  // Chapters in canonical book order
+  public List<Chapter> chapters() {
+    return chapters;
+  }
+
+  // Looks up a chapter by its reader data, e.g. "Ps/23"
+  public Chapter chapter(String key) {
+    return chaptersByKey.get(key);
+  }
+
+  // Neighbors in canonical order, across book boundaries; null at either end
+  public Chapter previous(Chapter chapter) {
+    return chapter.index > 0 ? chapters.get(chapter.index - 1) : null;
+  }
+
+  public Chapter next(Chapter chapter) {
+    return chapter.index + 1 < chapters.size() ? chapters.get(chapter.index + 1) : null;
+  }
+
+  public int quoteCount() {
+    return quoteCount;
+  }
+
+  public int bookCount() {
+    return bookCount;
+  }
+
+  public String readText(Chapter chapter) {
+    return new String(chapterBytes(chapter), StandardCharsets.UTF_8);
+  }
+
+  /*
+   * Chapter text with the paragraph of one verse opened as
+   * <p class='hv'> instead of <p>. The verse is found through the verse
+   * table, so the text is never searched. Unknown verses leave it as is.
+   */
+  public String readText(Chapter chapter, int highlightedVerse) {
+    byte[] text = chapterBytes(chapter);
+    int start = verseStart(chapter, highlightedVerse);
+    if (start < 0) {
+      return new String(text, StandardCharsets.UTF_8);
+    }
+
+    // Every verse paragraph starts with "<p>", enforced when the pack is built
+    int rest = start + "<p>".length();
+    StringBuilder html = new StringBuilder(text.length + HIGHLIGHT_PARAGRAPH.length());
+    html.append(new String(text, 0, start, StandardCharsets.UTF_8));
+    html.append(HIGHLIGHT_PARAGRAPH);
+    html.append(new String(text, rest, text.length - rest, StandardCharsets.UTF_8));
+    return html.toString();
+  }
+
+  // Splits a chapter along the verse table, without looking for the paragraph markup
+  public List<Verse> readVerses(Chapter chapter) {
+    byte[] text = chapterBytes(chapter);
+    List<Verse> verses = new ArrayList<>(chapter.verseCount);
+    for (int i = 0; i < chapter.verseCount; i++) {
+      int number = verseInt(chapter, i, 0);
+      // Past "<p><sup>", the digits and "</sup>"
+      int start = verseInt(chapter, i, 4) + "<p><sup>".length();
+      while (text[start] != '<') {
+        start++;
+      }
+      start += "</sup>".length();
+      int end = verseInt(chapter, i, 8) - "</p>".length();
+      verses.add(new Verse(number, new String(text, start, end - start, StandardCharsets.UTF_8)));
+    }
+    return verses;
+  }
+
+  /*
+   * The chapter holding an entry of the verse table. Entries are numbered
+   * across the whole pack in chapter order, which is what search.idx
+   * stores as its doc ids.
+   */
+  public Chapter chapterOfVerse(int entry) {
+    int low = 0;
+    int high = chapters.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      Chapter chapter = chapters.get(mid);
+      if (entry < chapter.verseStart) {
+        high = mid - 1;
+      } else if (entry >= chapter.verseStart + chapter.verseCount) {
+        low = mid + 1;
+      } else {
+        return chapter;
+      }
+    }
+    return null;
+  }
+
+  // One verse by its verse table entry, read without copying the rest of the chapter
+  public Verse readVerse(Chapter chapter, int entry) {
+    int i = entry - chapter.verseStart;
+    int paragraphStart = verseInt(chapter, i, 4);
+    byte[] paragraph = new byte[verseInt(chapter, i, 8) - paragraphStart];
+    ByteBuffer view = buffer.duplicate();
+    view.position(textOffset + chapter.textStart + paragraphStart);
+    view.get(paragraph);
+
+    int start = "<p><sup>".length();
+    while (paragraph[start] != '<') {
+      start++;
+    }
+    start += "</sup>".length();
+    int end = paragraph.length - "</p>".length();
+    return new Verse(
+        verseInt(chapter, i, 0), new String(paragraph, start, end - start, StandardCharsets.UTF_8));
+  }
+
+  // Position of a verse in readVerses(), or -1
+  public int verseIndex(Chapter chapter, int number) {
+    return verseEntry(chapter, number);
+  }
+
+  // Byte offset of a verse paragraph in the chapter text, or -1
+  int verseStart(Chapter chapter, int number) {
+    int index = verseEntry(chapter, number);
+    return index < 0 ? -1 : verseInt(chapter, index, 4);
+  }
+
+  /*
+   * Verse table entry of a verse within its chapter, or -1. Verses are
+   * numbered without gaps in almost every chapter, so the entry at
+   * (number - first number) is checked first and a binary search only
+   * runs for chapters with gaps.
+   */
+  private int verseEntry(Chapter chapter, int number) {
+    if (chapter.verseCount == 0) {
+      return -1;
+    }
+    int first = verseInt(chapter, 0, 0);
+    int guess = number - first;
+    if (guess >= 0 && guess < chapter.verseCount && verseInt(chapter, guess, 0) == number) {
+      return guess;
+    }
+
+    int low = 0;
+    int high = chapter.verseCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midNumber = verseInt(chapter, mid, 0);
+      if (midNumber < number) {
+        low = mid + 1;
+      } else if (midNumber > number) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  private int verseInt(Chapter chapter, int verse, int field) {
+    return buffer.getInt(
+        verseTableOffset + (chapter.verseStart + verse) * VERSE_ENTRY_SIZE + field);
+  }
+
+  // The single copy out of the mapping, absolute reads keep it safe across threads
+  private byte[] chapterBytes(Chapter chapter) {
+    byte[] text = new byte[chapter.textLength];
+    ByteBuffer view = buffer.duplicate();
+    view.position(textOffset + chapter.textStart);
+    view.get(text);
+    return text;
+  }
+}
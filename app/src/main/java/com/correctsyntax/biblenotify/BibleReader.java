@@ -3,38 +3,67 @@ package com.correctsyntax.biblenotify;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.res.Configuration;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
 import android.view.ViewGroup;
 import android.webkit.WebView;
+import android.webkit.WebViewClient;
+import android.widget.FrameLayout;
 import android.widget.ImageButton;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.constraintlayout.widget.ConstraintLayout;
+import androidx.core.content.ContextCompat;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class BibleReader extends AppCompatActivity {
+  private static final String TAG = "BibleReader";
 
   TextView chapterText;
   WebView bibleTextWebView;
   ImageButton home;
 
-  String languagePath = "en";
+  volatile String languagePath = LanguagePacks.FALLBACK;
+
+  static final String STATE_SCROLL_Y = "scrollY";
+  static final String STATE_VERSE_POSITION = "versePosition";
+  static final String STATE_CHAPTER = "chapter";
+  int pendingScrollY = 0;
+
+  // Native reader mode
+  RecyclerView verseList;
+  LinearLayoutManager verseLayout;
+  private final ExecutorService readerExecutor = Executors.newSingleThreadExecutor();
+
+  // Chapter navigation, neighbors are prepared by one of the prefetchers
+  ImageButton previousButton;
+  ImageButton nextButton;
+  volatile BiblePack pack;
+  BiblePack.Chapter current;
+  private volatile ChapterPrefetcher<ChapterHtmlCache.Page> pages;
+  private volatile ChapterPrefetcher<VerseChapter> verseChapters;
+
+  // Time to text, measured from onCreate to the first finished page
+  long createdAt;
+  boolean warmWebView;
 
   @SuppressLint("SetJavaScriptEnabled")
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
+    createdAt = SystemClock.uptimeMillis();
     setContentView(R.layout.reader_activity);
 
     ConstraintLayout topbar = findViewById(R.id.reader_top_bar);
@@ -59,16 +88,10 @@ public class BibleReader extends AppCompatActivity {
           return WindowInsetsCompat.CONSUMED;
         });
 
-    bibleTextWebView = findViewById(R.id.reader_webview);
     chapterText = findViewById(R.id.chapter_text);
     home = findViewById(R.id.home_button);
 
-    bibleTextWebView.getSettings().setJavaScriptEnabled(true);
-
-    // lang
-    final SharedPreferences sharedPreferences =
-        BibleReader.this.getSharedPreferences("bibleNotify", 0);
-    languagePath = sharedPreferences.getString("languagePath", "en");
+    final AppSettings settings = AppSettings.get(this);
 
     // Go to home
     home.setOnClickListener(
@@ -77,166 +100,313 @@ public class BibleReader extends AppCompatActivity {
           startActivity(back);
         });
 
-    setText(
-        pickFromBible(BibleReader.this, "text", "bible/" + languagePath + "/", ".json"),
-        pickFromBible(BibleReader.this, "chapter", "bible/" + languagePath + "/", ".json"));
-  }
-
-  // Set the text
-  public void setText(String bibleChapterText, String bibleChapter) {
-    chapterText.setText(bibleChapter.toUpperCase());
-
-    // Set Colors
-    String appBlack = "black";
-    String appDarkGray = "DimGray";
-    String appLightGray = "Gainsboro";
-    String appWhite = "white";
-
-    // Check for dark mode and change colors to mach
-    String backgroundColor = appWhite;
-    String textColor = appDarkGray;
-    String highlightColor = appBlack;
-
-    int nightModeFlags =
-        home.getContext().getResources().getConfiguration().uiMode
-            & Configuration.UI_MODE_NIGHT_MASK;
-
-    switch (nightModeFlags) {
-      case Configuration.UI_MODE_NIGHT_YES:
-        System.out.print("UI_MODE_NIGHT_YES");
-        backgroundColor = appBlack;
-        textColor = appLightGray;
-        highlightColor = appWhite;
-        break;
-
-      case Configuration.UI_MODE_NIGHT_NO:
-        System.out.print("UI_MODE_NIGHT_NO");
-        backgroundColor = appWhite;
-        textColor = appDarkGray;
-        highlightColor = appBlack;
-        break;
-
-      case Configuration.UI_MODE_NIGHT_UNDEFINED:
-        System.out.print("UI_MODE_NIGHT_UNDEFINED");
-        backgroundColor = appWhite;
-        textColor = appDarkGray;
-        highlightColor = appBlack;
-        break;
-    }
-
-    // Verse Highlighting
-    final SharedPreferences sharedPreferences =
-        BibleReader.this.getSharedPreferences("bibleNotify", MODE_PRIVATE);
-    String readerDataVerseNumber = "";
-    if (sharedPreferences.contains("readerDataVerseNumber")) {
-      readerDataVerseNumber = sharedPreferences.getString("readerDataVerseNumber", "");
-    }
-
-    bibleChapterText =
-        bibleChapterText.replace(
-            "<p><sup>" + readerDataVerseNumber + "</sup>",
-            "<p class='hv'><sup>" + readerDataVerseNumber + "</sup>");
-
-    // WebView won't allow ids or hex numbers
-    String html =
-        "<!DOCTYPE html>\n"
-            + "<html lang=\"en\">\n"
-            + "  <head>\n"
-            + "    <meta charset=\"UTF-8\" />\n"
-            + "    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\" />\n"
-            + "    <title>app</title>\n"
-            + "  </head>\n"
-            + "  <body>\n"
-            + "    <style>\n"
-            + "      body {\n"
-            + "        margin: 50px 10% 100px 10%;"
-            + "        color:"
-            + textColor
-            + ";"
-            + "        background-color:"
-            + backgroundColor
-            + ";"
-            + "      }\n"
-            + "      p {\n"
-            + "        font-size: 18px;\n"
-            + "        font-family:  'Segoe UI', Tahoma, Geneva, Verdana, sans-serif;\n"
-            + "        color:"
-            + textColor
-            + ";"
-            + "        background-color:"
-            + backgroundColor
-            + ";"
-            + "      }\n"
-            + "      @media (min-width: 768px) {\n"
-            + // 768px
-            "        p {\n"
-            + "          font-size: 19px;\n"
-            + "        }\n"
-            + "      }\n"
-            + "      sup {\n"
-            + "        font-weight: bold;\n"
-            + "      }\n"
-            + "      .hv{\n"
-            + "color:"
-            + highlightColor
-            + ";"
-            + "      font-weight: bold;"
-            + "      }\n"
-            + "    </style>"
-            + bibleChapterText
-            + "</body>\n"
-            + "</html>";
-
-    bibleTextWebView.loadData(html, "text/html", "UTF-8");
-  }
-
-  // Get The Bible Verse
-  public String pickFromBible(Context context, String whichPart, String path, String extension) {
-    String name = null;
-    try {
-      // get JSONObject from JSON file
-      JSONObject obj = new JSONObject(loadJSONFromAsset(context, path, extension));
+    // Each notification opens its own quote, there can be several showing
+    Intent opened = getIntent();
+    if (opened != null && opened.hasExtra(NotificationDispatcher.EXTRA_READER_DATA)) {
+      settings
+          .edit()
+          .setReaderData(
+              opened.getStringExtra(NotificationDispatcher.EXTRA_READER_DATA),
+              opened.getStringExtra(NotificationDispatcher.EXTRA_VERSE_NUMBER))
+          .apply();
+    }
+
+    String bookChapter = settings.readerData();
+    int highlightedVerse = parseVerseNumber(settings.readerDataVerseNumber());
+    int restoredPosition = -1;
+    if (savedInstanceState != null) {
+      // A chapter reached with the arrows is reopened without the notification's highlight
+      String savedChapter = savedInstanceState.getString(STATE_CHAPTER, bookChapter);
+      if (!savedChapter.equals(bookChapter)) {
+        bookChapter = savedChapter;
+        highlightedVerse = -1;
+      }
+      pendingScrollY = savedInstanceState.getInt(STATE_SCROLL_Y);
+      restoredPosition = savedInstanceState.getInt(STATE_VERSE_POSITION, -1);
+    }
+
+    previousButton = findViewById(R.id.previous_chapter_button);
+    nextButton = findViewById(R.id.next_chapter_button);
+    previousButton.setOnClickListener(
+        v -> {
+          if (current != null && pack.previous(current) != null) {
+            showChapter(pack.previous(current), -1, -1);
+          }
+        });
+    nextButton.setOnClickListener(
+        v -> {
+          if (current != null && pack.next(current) != null) {
+            showChapter(pack.next(current), -1, -1);
+          }
+        });
+    updateNavigation();
 
-      // fetch JSONArray named users
-      JSONArray userArray = obj.getJSONArray("read");
+    FrameLayout container = findViewById(R.id.reader_webview_container);
+    if (settings.isNativeReader()) {
+      showVerses(container);
+    } else {
+      showWebView(container);
+    }
+
+    final String firstChapter = bookChapter;
+    final int firstVerse = highlightedVerse;
+    final int firstPosition = restoredPosition;
+    readerExecutor.execute(
+        () -> {
+          // The chapter is read from the first pack in the language's fallback chain that has it
+          String language =
+              LanguagePacks.get(this).resolveChapter(settings.languagePath(), firstChapter);
+          BiblePack.Chapter chapter = null;
+          if (language != null) {
+            try {
+              languagePath = language;
+              pack = QuoteRepository.get().biblePack(this, languagePath);
+              chapter = pack.chapter(firstChapter);
+            } catch (IOException e) {
+              Log.e(TAG, "Could not open the " + language + " pack: " + e.getMessage());
+            }
+          }
+          if (chapter == null) {
+            runOnUiThread(this::showError);
+            return;
+          }
+          createPrefetcher(settings);
+          runOnUiThread(this::updateNavigation);
+          loadChapter(chapter, firstVerse, firstPosition);
+        });
+  }
+
+  private void showWebView(FrameLayout container) {
+    // A warmed-up WebView skips provider initialization, otherwise one is built here
+    bibleTextWebView = WebViewPool.adopt(this);
+    warmWebView = bibleTextWebView != null;
+    if (bibleTextWebView == null) {
+      bibleTextWebView = new WebView(this);
+    }
+    container.addView(
+        bibleTextWebView,
+        new FrameLayout.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+
+    bibleTextWebView.getSettings().setJavaScriptEnabled(true);
+
+    // Scroll position of a page that is being restored, applied once it has loaded
+    bibleTextWebView.setWebViewClient(
+        new WebViewClient() {
+          @Override
+          public void onPageFinished(WebView view, String url) {
+            if (createdAt != 0) {
+              WebViewPool.recordTimeToText(
+                  SystemClock.uptimeMillis() - createdAt, warmWebView ? "warm" : "cold");
+              createdAt = 0;
+            }
+            if (pendingScrollY > 0) {
+              view.scrollTo(0, pendingScrollY);
+              pendingScrollY = 0;
+            }
+          }
+        });
+  }
+
+  /*
+   * Native mode: verses as Spannables in a RecyclerView, no WebView at all.
+   * Only the visible rows are laid out, so long chapters open as fast as
+   * short ones. The chapter is split and styled on a worker.
+   */
+  private void showVerses(FrameLayout container) {
+    verseList = new RecyclerView(this);
+    verseLayout = new LinearLayoutManager(this);
+    verseList.setLayoutManager(verseLayout);
+    verseList.setHasFixedSize(true);
+    container.addView(
+        verseList,
+        new FrameLayout.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+  }
+
+  // Pages are read from the page cache, verses are split and styled, both ahead of time
+  private void createPrefetcher(AppSettings settings) {
+    int depth = settings.prefetchDepth();
+    int cacheSize = settings.chapterCacheSize();
+    if (verseList != null) {
+      verseChapters =
+          new ChapterPrefetcher<>(
+              pack,
+              (chapter, verse) ->
+                  new VerseChapter(
+                      chapter.title,
+                      VerseAdapter.spans(pack.readVerses(chapter)),
+                      pack.verseIndex(chapter, verse)),
+              depth,
+              cacheSize);
+    } else {
+      Context context = getApplicationContext();
+      pages =
+          new ChapterPrefetcher<>(
+              pack,
+              (chapter, verse) ->
+                  ChapterHtmlCache.get(context).page(context, languagePath, chapter.key, verse),
+              depth,
+              cacheSize);
+    }
+  }
 
-      try {
-        JSONObject userDetail = userArray.getJSONObject(0);
-        name = userDetail.getString(whichPart);
+  // Moves to another chapter, usually already prepared by the prefetcher
+  private void showChapter(BiblePack.Chapter chapter, int highlightedVerse, int restoredPosition) {
+    readerExecutor.execute(() -> loadChapter(chapter, highlightedVerse, restoredPosition));
+  }
 
-      } catch (JSONException e) {
-        Toast.makeText(getApplicationContext(), R.string.error_toast, Toast.LENGTH_SHORT).show();
+  // Runs on readerExecutor
+  private void loadChapter(BiblePack.Chapter chapter, int highlightedVerse, int restoredPosition) {
+    try {
+      if (verseChapters != null) {
+        VerseChapter verses = verseChapters.get(chapter, highlightedVerse);
+        runOnUiThread(() -> setVerses(chapter, verses, restoredPosition));
+        verseChapters.prefetchAround(chapter);
+      } else {
+        ChapterHtmlCache.Page page = pages.get(chapter, highlightedVerse);
+        if (page == null) {
+          runOnUiThread(this::showError);
+          return;
+        }
+        runOnUiThread(
+            () -> {
+              if (!isDestroyed()) {
+                current = chapter;
+                updateNavigation();
+                setPage(page);
+              }
+            });
+        pages.prefetchAround(chapter);
       }
+    } catch (IOException e) {
+      runOnUiThread(this::showError);
+    }
+  }
 
-    } catch (JSONException e) {
-      Toast.makeText(getApplicationContext(), R.string.error_toast, Toast.LENGTH_SHORT).show();
+  private void setVerses(BiblePack.Chapter chapter, VerseChapter verses, int restoredPosition) {
+    if (isDestroyed()) {
+      return;
+    }
+    current = chapter;
+    updateNavigation();
+    chapterText.setText(verses.title.toUpperCase());
+    verseList.setAdapter(new VerseAdapter(verses.verses, verses.highlighted));
+
+    // Back where the reader was, or at the verse from the notification
+    int position = restoredPosition >= 0 ? restoredPosition : verses.highlighted;
+    if (position > 0) {
+      verseLayout.scrollToPositionWithOffset(position, 0);
     }
+    if (createdAt != 0) {
+      WebViewPool.recordTimeToText(SystemClock.uptimeMillis() - createdAt, "native");
+      createdAt = 0;
+    }
+  }
 
-    return name;
+  // The arrows are hidden at either end of the pack, and until it is open
+  private void updateNavigation() {
+    boolean hasPrevious = current != null && pack.previous(current) != null;
+    boolean hasNext = current != null && pack.next(current) != null;
+    previousButton.setVisibility(hasPrevious ? View.VISIBLE : View.INVISIBLE);
+    nextButton.setVisibility(hasNext ? View.VISIBLE : View.INVISIBLE);
   }
 
-  public String loadJSONFromAsset(Context context, String path, String extension) {
-    String json;
-    String bookChapter = "book/ch";
-    //  get value
-    final SharedPreferences sharedPreferences =
-        context.getSharedPreferences("bibleNotify", MODE_PRIVATE);
+  private void showError() {
+    Toast.makeText(getApplicationContext(), R.string.error_toast, Toast.LENGTH_SHORT).show();
+  }
 
-    if (sharedPreferences.contains("readerData")) {
-      bookChapter = sharedPreferences.getString("readerData", "");
+  @Override
+  protected void onDestroy() {
+    readerExecutor.shutdown();
+    if (pages != null) {
+      pages.shutdown();
+    }
+    if (verseChapters != null) {
+      verseChapters.shutdown();
+    }
+    // The view holds this activity through its context, so it is never pooled again
+    if (bibleTextWebView != null) {
+      ((ViewGroup) findViewById(R.id.reader_webview_container)).removeView(bibleTextWebView);
+      bibleTextWebView.destroy();
     }
+    super.onDestroy();
+  }
 
+  @Override
+  protected void onSaveInstanceState(Bundle outState) {
+    super.onSaveInstanceState(outState);
+    if (current != null) {
+      outState.putString(STATE_CHAPTER, current.key);
+    }
+    if (bibleTextWebView != null) {
+      outState.putInt(STATE_SCROLL_Y, bibleTextWebView.getScrollY());
+    } else if (verseLayout != null) {
+      outState.putInt(STATE_VERSE_POSITION, verseLayout.findFirstVisibleItemPosition());
+    }
+  }
+
+  // Declared in configChanges, so rotation and theme changes keep the loaded page
+  @Override
+  public void onConfigurationChanged(Configuration newConfig) {
+    super.onConfigurationChanged(newConfig);
+    if (bibleTextWebView != null) {
+      bibleTextWebView.evaluateJavascript(
+          "document.documentElement.className = '" + theme(newConfig) + "';", null);
+    } else if (verseList != null && verseList.getAdapter() != null) {
+      // Rows resolve their colors when bound
+      verseList.getAdapter().notifyDataSetChanged();
+    }
+
+    // The bars are not recreated either, so they pick up the night colors here
+    int background = ContextCompat.getColor(this, R.color.mode_white);
+    int foreground = ContextCompat.getColor(this, R.color.mode_black);
+    findViewById(R.id.reader_top_bar).setBackgroundColor(background);
+    findViewById(R.id.sub_bar).setBackgroundColor(background);
+    home.setBackgroundColor(background);
+    home.setColorFilter(foreground);
+    previousButton.setBackgroundColor(background);
+    previousButton.setColorFilter(foreground);
+    nextButton.setBackgroundColor(background);
+    nextButton.setColorFilter(foreground);
+    ((TextView) findViewById(R.id.top_bar_title)).setTextColor(foreground);
+    chapterText.setTextColor(foreground);
+  }
+
+  // "16" -> 16, anything else is not highlighted
+  static int parseVerseNumber(String verseNumber) {
     try {
-      InputStream is = context.getAssets().open(path + bookChapter + extension);
+      return Integer.parseInt(verseNumber.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  // Colors are in assets/reader/reader.css, the theme only picks the palette
+  static String theme(Configuration configuration) {
+    int nightModeFlags = configuration.uiMode & Configuration.UI_MODE_NIGHT_MASK;
+    return nightModeFlags == Configuration.UI_MODE_NIGHT_YES ? "night" : "day";
+  }
+
+  // Shows a cached page in the current theme, the verse is already highlighted
+  public void setPage(ChapterHtmlCache.Page page) {
+    chapterText.setText(page.title.toUpperCase());
+
+    String theme = theme(getResources().getConfiguration());
+    bibleTextWebView.loadDataWithBaseURL(
+        ChapterHtmlCache.BASE_URL, page.document(theme), "text/html", "UTF-8", null);
+  }
+
+  // A chapter prepared for the native reader
+  static class VerseChapter {
+    final String title;
+    final List<CharSequence> verses;
+    final int highlighted;
 
-      int size = is.available();
-      byte[] buffer = new byte[size];
-      is.read(buffer);
-      is.close();
-      json = new String(buffer, StandardCharsets.UTF_8);
-    } catch (IOException ex) {
-      return null;
+    VerseChapter(String title, List<CharSequence> verses, int highlighted) {
+      this.title = title;
+      this.verses = verses;
+      this.highlighted = highlighted;
     }
-    return json;
   }
 }
@@ -0,0 +1,164 @@
+package com.correctsyntax.biblenotify;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.util.Log;
+import android.util.LruCache;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Rendered reader pages, keyed by language, chapter and highlighted verse.
+ *
+ * A page is the chapter HTML from BiblePack wrapped in a document that
+ * links assets/reader/reader.css. It holds no colors, so one page serves
+ * day and night: the theme is the class of <html>, written in front of
+ * the cached part when the page is loaded and toggled later by script.
+ *
+ * Pages live in a memory LRU and in cacheDir/reader, so reopening a
+ * chapter from a notification neither maps the pack nor builds a string.
+ * Disk pages older than the installed APK are rebuilt.
+ */
+public class ChapterHtmlCache {
+  private static final String TAG = "ChapterHtmlCache";
+  static final String BASE_URL = "file:///android_asset/reader/";
+  static final int MEMORY_CHARS = 2 * 1024 * 1024;
+
+  public static class Page {
+    public final String title;
+    final String body; // everything after the theme class
+
+    Page(String title, String body) {
+      this.title = title;
+      this.body = body;
+    }
+
+    // The full document, theme is "day" or "night"
+    public String document(String theme) {
+      return "<!DOCTYPE html>\n<html class=\"" + theme + "\"" + body;
+    }
+  }
+
+  private static ChapterHtmlCache instance;
+
+  private final File dir;
+  private final long installedAt;
+  private final LruCache<String, Page> memory =
+      new LruCache<String, Page>(MEMORY_CHARS) {
+        @Override
+        protected int sizeOf(String key, Page page) {
+          return page.body.length();
+        }
+      };
+
+  private ChapterHtmlCache(Context context) {
+    this.dir = new File(context.getCacheDir(), "reader");
+    long installed = 0;
+    try {
+      installed =
+          context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+    } catch (PackageManager.NameNotFoundException e) {
+      Log.w(TAG, "Could not read install time: " + e);
+    }
+    this.installedAt = installed;
+  }
+
+  public static synchronized ChapterHtmlCache get(Context context) {
+    if (instance == null) {
+      instance = new ChapterHtmlCache(context.getApplicationContext());
+    }
+    return instance;
+  }
+
+  // Returns null if the chapter is not in the pack
+  public Page page(Context context, String languagePath, String chapterKey, int highlightedVerse)
+      throws IOException {
+    String key = languagePath + "/" + chapterKey + "#" + highlightedVerse;
+    Page page = memory.get(key);
+    if (page != null) {
+      return page;
+    }
+
+    File file = file(languagePath, chapterKey, highlightedVerse);
+    page = readPage(file);
+    if (page == null) {
+      BiblePack pack = QuoteRepository.get().biblePack(context, languagePath);
+      BiblePack.Chapter chapter = pack.chapter(chapterKey);
+      if (chapter == null) {
+        return null;
+      }
+      page = new Page(chapter.title, render(languagePath, pack.readText(chapter, highlightedVerse)));
+      writePage(file, page);
+    }
+    memory.put(key, page);
+    return page;
+  }
+
+  private static String render(String languagePath, String chapterHtml) {
+    return " lang=\""
+        + languagePath
+        + "\">\n"
+        + "  <head>\n"
+        + "    <meta charset=\"UTF-8\" />\n"
+        + "    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\" />\n"
+        + "    <title>app</title>\n"
+        + "    <link rel=\"stylesheet\" href=\"reader.css\" />\n"
+        + "  </head>\n"
+        + "  <body>\n"
+        + chapterHtml
+        + "\n  </body>\n"
+        + "</html>";
+  }
+
+  // "Ps/23" highlighting 4 -> reader/en/Ps_23_4.html
+  private File file(String languagePath, String chapterKey, int highlightedVerse) {
+    return new File(
+        new File(dir, languagePath), chapterKey.replace('/', '_') + "_" + highlightedVerse + ".html");
+  }
+
+  // First line is the title, the rest is the page body
+  private Page readPage(File file) {
+    if (!file.exists() || file.lastModified() < installedAt) {
+      return null;
+    }
+    try (InputStream in = new FileInputStream(file)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      String text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+      int newline = text.indexOf('\n');
+      if (newline < 0) {
+        return null;
+      }
+      return new Page(text.substring(0, newline), text.substring(newline + 1));
+    } catch (IOException e) {
+      Log.w(TAG, "Could not read " + file.getName() + ": " + e);
+      return null;
+    }
+  }
+
+  // Cache writes are best effort, a failed one costs a re-render next time
+  private void writePage(File file, Page page) {
+    File temp = new File(file.getPath() + ".tmp");
+    file.getParentFile().mkdirs();
+    try (OutputStream out = new FileOutputStream(temp)) {
+      out.write((page.title + "\n" + page.body).getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      Log.w(TAG, "Could not cache " + file.getName() + ": " + e);
+      temp.delete();
+      return;
+    }
+    if (!temp.renameTo(file)) {
+      temp.delete();
+    }
+  }
+}
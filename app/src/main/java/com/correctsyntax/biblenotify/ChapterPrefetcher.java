@@ -0,0 +1,140 @@
+package com.correctsyntax.biblenotify;
+
+import android.util.Log;
+import android.util.LruCache;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/*
+ * Prepares chapters around the one being read, so moving to the next or
+ * previous chapter finds it already loaded and parsed.
+ *
+ * The cache holds futures rather than results: a chapter that is still
+ * being prefetched counts as a hit and get() waits for that load instead of
+ * starting a second one. Prepared chapters are kept in a small LRU, sized
+ * in chapters; prefetches run on one background thread, nearest first.
+ */
+public class ChapterPrefetcher<T> {
+  private static final String TAG = "ChapterPrefetcher";
+
+  // Turns a chapter into what the reader shows, runs off the main thread
+  public interface Loader<T> {
+    T load(BiblePack.Chapter chapter, int highlightedVerse) throws IOException;
+  }
+
+  private final BiblePack pack;
+  private final Loader<T> loader;
+  private final int depth;
+  private final LruCache<String, FutureTask<T>> cache;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private int hits = 0;
+  private int misses = 0;
+
+  public ChapterPrefetcher(BiblePack pack, Loader<T> loader, int depth, int cacheSize) {
+    this.pack = pack;
+    this.loader = loader;
+    this.depth = depth;
+    // Room for the current chapter and everything prefetched around it
+    this.cache = new LruCache<>(Math.max(cacheSize, 2 * depth + 1));
+  }
+
+  // Blocks until the chapter is prepared, call it from a worker
+  public T get(BiblePack.Chapter chapter, int highlightedVerse) throws IOException {
+    String key = key(chapter, highlightedVerse);
+    FutureTask<T> task;
+    boolean run = false;
+    synchronized (this) {
+      task = cache.get(key);
+      if (task != null) {
+        hits++;
+      } else {
+        misses++;
+        task = task(chapter, highlightedVerse);
+        cache.put(key, task);
+        run = true;
+      }
+    }
+    if (run) {
+      task.run();
+    }
+    return result(key, task);
+  }
+
+  // Queues the chapters within depth on both sides, nearest first
+  public void prefetchAround(BiblePack.Chapter chapter) {
+    BiblePack.Chapter next = chapter;
+    BiblePack.Chapter previous = chapter;
+    for (int i = 0; i < depth; i++) {
+      next = next != null ? pack.next(next) : null;
+      previous = previous != null ? pack.previous(previous) : null;
+      prefetch(next);
+      prefetch(previous);
+    }
+  }
+
+  public synchronized int hitCount() {
+    return hits;
+  }
+
+  public synchronized int missCount() {
+    return misses;
+  }
+
+  public void shutdown() {
+    // Queued prefetches are cancelled so nothing waits on them forever
+    for (Runnable queued : executor.shutdownNow()) {
+      ((FutureTask<?>) queued).cancel(false);
+    }
+    Log.i(TAG, "Chapter cache hits " + hitCount() + ", misses " + missCount());
+  }
+
+  private void prefetch(BiblePack.Chapter chapter) {
+    if (chapter == null) {
+      return;
+    }
+    String key = key(chapter, -1);
+    FutureTask<T> task;
+    synchronized (this) {
+      if (cache.get(key) != null) {
+        return;
+      }
+      task = task(chapter, -1);
+      cache.put(key, task);
+    }
+    executor.execute(task);
+  }
+
+  private FutureTask<T> task(BiblePack.Chapter chapter, int highlightedVerse) {
+    return new FutureTask<>(() -> loader.load(chapter, highlightedVerse));
+  }
+
+  private T result(String key, FutureTask<T> task) throws IOException {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while loading " + key);
+    } catch (CancellationException e) {
+      throw new IOException("Cancelled loading " + key);
+    } catch (ExecutionException e) {
+      // A failed load is not cached, the next get() tries again
+      synchronized (this) {
+        if (cache.get(key) == task) {
+          cache.remove(key);
+        }
+      }
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Could not load " + key, e.getCause());
+    }
+  }
+
+  private static String key(BiblePack.Chapter chapter, int highlightedVerse) {
+    return chapter.key + "#" + highlightedVerse;
+  }
+}
@@ -0,0 +1,208 @@
+package com.correctsyntax.biblenotify;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.constraintlayout.widget.ConstraintLayout;
+import androidx.core.graphics.Insets;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.WindowInsetsCompat;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * What the recorded alarm deliveries look like: how late the OS woke the
+ * app, and where the time went between wakeup and the notification. The
+ * records can be exported as CSV to compare devices and Android versions.
+ * The events AppLog kept in this process are shown below, for bug reports.
+ */
+public class DiagnosticsActivity extends AppCompatActivity {
+  private static final String TAG = "DiagnosticsActivity";
+  private static final double[] PERCENTILES = {50, 95, 99, 100};
+
+  private TextView summaryText;
+  private TextView tableText;
+  private TextView eventsText;
+  private Button exportButton;
+  private List<DeliveryTelemetry.Record> records = new ArrayList<>();
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private ActivityResultLauncher<String> exportLauncher;
+
+  @Override
+  protected void onCreate(Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    setContentView(R.layout.diagnostics_activity);
+
+    ConstraintLayout topbar = findViewById(R.id.diagnostics_top_bar);
+
+    ViewCompat.setOnApplyWindowInsetsListener(
+        topbar,
+        (v, windowInsets) -> {
+          Insets insets = windowInsets.getInsets(WindowInsetsCompat.Type.systemBars());
+          ViewGroup.MarginLayoutParams mlp = (ViewGroup.MarginLayoutParams) v.getLayoutParams();
+          mlp.topMargin = insets.top;
+          mlp.leftMargin = insets.left;
+          mlp.rightMargin = insets.right;
+          v.setLayoutParams(mlp);
+          return WindowInsetsCompat.CONSUMED;
+        });
+
+    summaryText = findViewById(R.id.diagnostics_summary);
+    tableText = findViewById(R.id.diagnostics_table);
+    eventsText = findViewById(R.id.diagnostics_events);
+    exportButton = findViewById(R.id.diagnostics_export);
+
+    exportLauncher =
+        registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("text/csv"),
+            uri -> {
+              if (uri != null) {
+                export(uri);
+              }
+            });
+    exportButton.setOnClickListener(v -> exportLauncher.launch("deliveries.csv"));
+
+    load();
+  }
+
+  @Override
+  protected void onDestroy() {
+    executor.shutdownNow();
+    super.onDestroy();
+  }
+
+  private void load() {
+    executor.execute(
+        () -> {
+          List<DeliveryTelemetry.Record> loaded;
+          try {
+            loaded = DeliveryTelemetry.read(AlarmBroadcastReceiver.telemetryFile(this));
+          } catch (IOException e) {
+            Log.e(TAG, "Error reading delivery telemetry: " + e.getMessage());
+            loaded = new ArrayList<>();
+          }
+          final List<DeliveryTelemetry.Record> result = loaded;
+          final String summary = summary(result);
+          final String table = result.isEmpty() ? "" : table(result);
+          StringWriter events = new StringWriter();
+          AppLog.dump(new PrintWriter(events));
+          runOnUiThread(
+              () -> {
+                if (isDestroyed()) {
+                  return;
+                }
+                records = result;
+                summaryText.setText(summary);
+                tableText.setText(table);
+                eventsText.setText(events.toString());
+                exportButton.setEnabled(!result.isEmpty());
+              });
+        });
+  }
+
+  private String summary(List<DeliveryTelemetry.Record> records) {
+    if (records.isEmpty()) {
+      return getString(R.string.diagnostics_empty);
+    }
+    int exact = 0;
+    int staged = 0;
+    int notStaged = 0;
+    for (DeliveryTelemetry.Record record : records) {
+      if (record.has(DeliveryTelemetry.FLAG_EXACT)) {
+        exact++;
+      }
+      if (record.has(DeliveryTelemetry.FLAG_STAGED)) {
+        staged++;
+      }
+      if (record.has(DeliveryTelemetry.FLAG_NOT_STAGED)) {
+        notStaged++;
+      }
+    }
+    return getString(
+        R.string.diagnostics_summary,
+        records.size(),
+        exact,
+        records.size() - exact,
+        staged * 100 / records.size(),
+        notStaged);
+  }
+
+  // One row per measurement, in ms
+  private static String table(List<DeliveryTelemetry.Record> records) {
+    int n = records.size();
+    long[] drift = new long[n];
+    long[] queue = new long[n];
+    long[] payload = new long[n];
+    long[] reschedule = new long[n];
+    long[] notify = new long[n];
+    long[] wakeupToNotify = new long[n];
+    long[] stage = new long[n];
+    for (int i = 0; i < n; i++) {
+      DeliveryTelemetry.Record record = records.get(i);
+      drift[i] = record.driftMs();
+      queue[i] = record.queueMs;
+      payload[i] = record.payloadMs;
+      reschedule[i] = record.rescheduleMs;
+      notify[i] = record.notifyMs;
+      wakeupToNotify[i] = record.wakeupToNotifyMs();
+      stage[i] = record.stageMs;
+    }
+
+    StringBuilder table = new StringBuilder();
+    table.append(String.format(Locale.US, "%-16s%9s%9s%9s%9s%n", "ms", "p50", "p95", "p99", "max"));
+    row(table, "drift", drift);
+    row(table, "queue", queue);
+    row(table, "payload", payload);
+    row(table, "reschedule", reschedule);
+    row(table, "notify", notify);
+    row(table, "wakeup→notify", wakeupToNotify);
+    row(table, "stage next", stage);
+    return table.toString();
+  }
+
+  private static void row(StringBuilder table, String name, long[] values) {
+    long[] p = DeliveryTelemetry.percentiles(values, PERCENTILES);
+    table.append(String.format(Locale.US, "%-16s%9d%9d%9d%9d%n", name, p[0], p[1], p[2], p[3]));
+  }
+
+  private void export(Uri uri) {
+    final List<DeliveryTelemetry.Record> toExport = records;
+    executor.execute(
+        () -> {
+          boolean exported;
+          try (OutputStream out = getContentResolver().openOutputStream(uri)) {
+            if (out == null) {
+              throw new IOException("No output stream for " + uri);
+            }
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            DeliveryTelemetry.writeCsv(toExport, writer);
+            writer.flush();
+            exported = true;
+          } catch (IOException e) {
+            Log.e(TAG, "Error exporting delivery telemetry: " + e.getMessage());
+            exported = false;
+          }
+          final int message =
+              exported ? R.string.diagnostics_exported : R.string.diagnostics_export_failed;
+          runOnUiThread(
+              () -> Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT).show());
+        });
+  }
+}
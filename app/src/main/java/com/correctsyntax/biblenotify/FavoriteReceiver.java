@@ -0,0 +1,57 @@
+package com.correctsyntax.biblenotify;
+
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+import android.widget.Toast;
+import java.io.IOException;
+
+// "Favorite" action of a quote notification, feeds the weighted selection mode
+public class FavoriteReceiver extends BroadcastReceiver {
+  private static final String TAG = "FavoriteReceiver";
+
+  static final String EXTRA_PROFILE_ID = "profileId";
+  static final String EXTRA_QUOTE_INDEX = "quoteIndex";
+  static final String EXTRA_SELECTION_KEY = "selectionKey";
+
+  // Each notification passes its own request code, or they would share one intent's extras
+  static PendingIntent pendingIntent(
+      Context context, NotificationPayload payload, int requestCode) {
+    Intent intent = new Intent(context, FavoriteReceiver.class);
+    intent.putExtra(EXTRA_PROFILE_ID, payload.profileId);
+    intent.putExtra(EXTRA_QUOTE_INDEX, payload.quoteIndex);
+    intent.putExtra(EXTRA_SELECTION_KEY, payload.selectionKey);
+
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      return PendingIntent.getBroadcast(
+          context,
+          requestCode,
+          intent,
+          PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+    } else {
+      return PendingIntent.getBroadcast(
+          context, requestCode, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+  }
+
+  @Override
+  public void onReceive(Context context, Intent intent) {
+    String profileId = intent.getStringExtra(EXTRA_PROFILE_ID);
+    int index = intent.getIntExtra(EXTRA_QUOTE_INDEX, -1);
+    long selectionKey = intent.getLongExtra(EXTRA_SELECTION_KEY, 0);
+    if (profileId == null || index < 0) {
+      return;
+    }
+
+    try {
+      if (Favorites.add(context, profileId, selectionKey, index)) {
+        Toast.makeText(context, R.string.favorite_added_toast, Toast.LENGTH_SHORT).show();
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Error saving favorite: " + e);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package com.correctsyntax.biblenotify;
+
+import android.content.Context;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * Quotes a profile marked as favorite, as record indices into its quote
+ * library. The list belongs to one selection key (QuoteLibrary.selectionKey())
+ * and is dropped when the library is replaced, since indices would no longer
+ * point at the same quotes; appends keep them.
+ */
+public class Favorites {
+  static final int MAGIC = 0x454E4656; // "ENFV"
+  static final int VERSION = 1;
+
+  public static int[] load(Context context, String profileId, long selectionKey) {
+    File file = file(context, profileId);
+    if (!file.exists()) {
+      return new int[0];
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != selectionKey) {
+        return new int[0];
+      }
+      int[] indices = new int[in.readInt()];
+      for (int i = 0; i < indices.length; i++) {
+        indices[i] = in.readInt();
+      }
+      return indices;
+    } catch (IOException e) {
+      return new int[0];
+    }
+  }
+
+  // Returns false if the quote already was a favorite
+  public static synchronized boolean add(
+      Context context, String profileId, long selectionKey, int index) throws IOException {
+    int[] indices = load(context, profileId, selectionKey);
+    for (int existing : indices) {
+      if (existing == index) {
+        return false;
+      }
+    }
+    indices = Arrays.copyOf(indices, indices.length + 1);
+    indices[indices.length - 1] = index;
+
+    File target = file(context, profileId);
+    File temp = new File(target.getPath() + ".tmp");
+    target.getParentFile().mkdirs();
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(selectionKey);
+      out.writeInt(indices.length);
+      for (int value : indices) {
+        out.writeInt(value);
+      }
+    }
+    if (!temp.renameTo(target)) {
+      temp.delete();
+      throw new IOException("Could not replace " + target);
+    }
+    return true;
+  }
+
+  // Changes whenever the list is rewritten, lets callers cache what they derived from it
+  public static long version(Context context, String profileId) {
+    File file = file(context, profileId);
+    return file.lastModified() * 31 + file.length();
+  }
+
+  // Favorites of this install, for WeightedSelection
+  public static WeightedSelection.FavoriteSource source(final Context context) {
+    return new WeightedSelection.FavoriteSource() {
+      @Override
+      public long version(String profileId) {
+        return Favorites.version(context, profileId);
+      }
+
+      @Override
+      public int[] load(String profileId, long selectionKey) {
+        return Favorites.load(context, profileId, selectionKey);
+      }
+    };
+  }
+
+  private static File file(Context context, String profileId) {
+    return new File(new File(context.getFilesDir(), "selection"), profileId + ".fav");
+  }
+}
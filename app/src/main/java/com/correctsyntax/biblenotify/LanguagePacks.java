@@ -0,0 +1,169 @@
+package com.correctsyntax.biblenotify;
+
+import android.content.Context;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/*
+ * The bible languages shipped in the APK, read once from bible/languages.json.
+ *
+ * The manifest is written by the compileBiblePacks build task next to the
+ * packs, so it lists exactly what was packed: every language with its
+ * chapters. Nothing here walks the assets.
+ *
+ * A requested language ("fr-CA", "fr", "de") is resolved through the chain
+ * requested -> language without region -> en. Chains are built once per
+ * requested language and cached, so a lookup is a map hit plus at most
+ * three set lookups.
+ */
+public class LanguagePacks {
+  private static final String TAG = "LanguagePacks";
+  static final String MANIFEST = "bible/languages.json";
+  static final String FALLBACK = "en";
+
+  public static class Language {
+    public final String code;
+    public final String name;
+    public final int quoteCount;
+    final Set<String> chapters;
+
+    Language(String code, String name, int quoteCount, Set<String> chapters) {
+      this.code = code;
+      this.name = name;
+      this.quoteCount = quoteCount;
+      this.chapters = chapters;
+    }
+
+    public boolean hasChapter(String chapterKey) {
+      return chapters.contains(chapterKey);
+    }
+
+    public int chapterCount() {
+      return chapters.size();
+    }
+  }
+
+  private static LanguagePacks instance;
+
+  private final Map<String, Language> languages;
+  private final Map<String, List<Language>> chains = new HashMap<>();
+
+  private LanguagePacks(Map<String, Language> languages) {
+    this.languages = languages;
+  }
+
+  public static synchronized LanguagePacks get(Context context) {
+    if (instance == null) {
+      instance = new LanguagePacks(load(context));
+    }
+    return instance;
+  }
+
+  // In manifest order, which is sorted by code
+  public List<Language> languages() {
+    return Collections.unmodifiableList(new ArrayList<>(languages.values()));
+  }
+
+  // Null if the language is not shipped
+  public Language language(String code) {
+    return languages.get(code);
+  }
+
+  // The shipped language to use for a requested one, null only if nothing is shipped
+  public String resolve(String requested) {
+    List<Language> chain = chain(requested);
+    return chain.isEmpty() ? null : chain.get(0).code;
+  }
+
+  // The first language in the chain that has the chapter, null if none does
+  public String resolveChapter(String requested, String chapterKey) {
+    for (Language language : chain(requested)) {
+      if (language.hasChapter(chapterKey)) {
+        return language.code;
+      }
+    }
+    return null;
+  }
+
+  // requested -> requested without region -> en, only languages that are shipped
+  private synchronized List<Language> chain(String requested) {
+    String key = requested != null ? requested : "";
+    List<Language> chain = chains.get(key);
+    if (chain != null) {
+      return chain;
+    }
+
+    String tag = key.replace('_', '-').toLowerCase(Locale.ROOT);
+    int region = tag.indexOf('-');
+    chain = new ArrayList<>(3);
+    addTo(chain, tag);
+    if (region > 0) {
+      addTo(chain, tag.substring(0, region));
+    }
+    addTo(chain, FALLBACK);
+    if (chain.isEmpty() && !languages.isEmpty()) {
+      chain.add(languages.values().iterator().next());
+    }
+    if (chain.isEmpty()) {
+      AppLog.e(TAG, "No languages are shipped");
+    } else if (!chain.get(0).code.equals(tag)) {
+      AppLog.i(TAG, "Language %s is not shipped, using %s", key, chain.get(0).code);
+    }
+    chains.put(key, chain);
+    return chain;
+  }
+
+  private void addTo(List<Language> chain, String code) {
+    Language language = languages.get(code);
+    if (language != null && !chain.contains(language)) {
+      chain.add(language);
+    }
+  }
+
+  private static Map<String, Language> load(Context context) {
+    Map<String, Language> languages = new LinkedHashMap<>();
+    try (InputStream is = context.getAssets().open(MANIFEST)) {
+      JSONArray all = new JSONObject(readFully(is)).getJSONArray("languages");
+      for (int i = 0; i < all.length(); i++) {
+        JSONObject language = all.getJSONObject(i);
+        JSONArray keys = language.getJSONArray("chapters");
+        Set<String> chapters = new HashSet<>(keys.length() * 2);
+        for (int j = 0; j < keys.length(); j++) {
+          chapters.add(keys.getString(j));
+        }
+        String code = language.getString("code");
+        languages.put(
+            code,
+            new Language(
+                code, language.getString("name"), language.optInt("quotes"), chapters));
+      }
+    } catch (IOException | JSONException e) {
+      AppLog.e(TAG, "Error reading %s: %s", MANIFEST, e.getMessage());
+    }
+    return languages;
+  }
+
+  private static String readFully(InputStream is) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = is.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
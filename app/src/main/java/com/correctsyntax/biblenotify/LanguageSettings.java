@@ -1,20 +1,20 @@
 package com.correctsyntax.biblenotify;
 
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
+import android.widget.CheckBox;
 import android.widget.Spinner;
 import androidx.appcompat.app.AppCompatActivity;
-import java.util.HashMap;
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.List;
 
 public class LanguageSettings extends AppCompatActivity
     implements AdapterView.OnItemSelectedListener {
 
   Spinner languageSelector;
-  HashMap<String, String> languages = new HashMap<String, String>();
+  List<LanguagePacks.Language> languages;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -23,61 +23,62 @@ public class LanguageSettings extends AppCompatActivity
 
     languageSelector = findViewById(R.id.language_selector);
 
+    // Reader mode, the native one renders verses without a WebView
+    CheckBox nativeReader = findViewById(R.id.native_reader_checkbox);
+    nativeReader.setChecked(AppSettings.get(this).isNativeReader());
+    nativeReader.setOnCheckedChangeListener(
+        (button, checked) ->
+            AppSettings.get(this)
+                .edit()
+                .setReaderMode(
+                    checked ? AppSettings.READER_MODE_NATIVE : AppSettings.READER_MODE_WEB)
+                .apply());
+
     // ***********************
     // How to add a new language to Bible Notify:
-    // 1. Add language name (i.e English, French) to language_choices.xml Like
-    // `<item>English</item>`
-    // 2. Add language to HashMap below (i.e `languages.put("English", "en");`)
-    // 3. Create folder with language short hand as the name (i.e "en", "fr") in "assets/bible/"
-    // (i.e "assets/bible/fr/")
-    // 4. Put the Bible files in the language folder
+    // 1. Create folder with language short hand as the name (i.e "en", "fr") in "src/main/bible/"
+    // (i.e "src/main/bible/fr/")
+    // 2. Put the Bible files in the language folder
+    // The build packs it and lists it in bible/languages.json, which fills this list
     // ***********************
 
     // Add languages
-    languages.put("English", "en");
-    languages.put("Français", "fr");
+    languages = LanguagePacks.get(this).languages();
+    List<String> names = new ArrayList<>(languages.size());
+    for (LanguagePacks.Language language : languages) {
+      names.add(language.name);
+    }
 
-    // Create an ArrayAdapter using the string array and a default spinner layout.
-    ArrayAdapter<CharSequence> adapter =
-        ArrayAdapter.createFromResource(
-            this, R.array.language_array, android.R.layout.simple_spinner_item);
+    // Create an ArrayAdapter using the language names and a default spinner layout.
+    ArrayAdapter<String> adapter =
+        new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, names);
     // Specify the layout to use when the list of choices appears.
     adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
     // Apply the adapter to the spinner.
     languageSelector.setAdapter(adapter);
-    languageSelector.setOnItemSelectedListener(this);
-
-    final SharedPreferences sharedPreferences =
-        getApplicationContext().getSharedPreferences("bibleNotify", MODE_PRIVATE);
 
-    //
-    //    Log.d("2%%%%%", String.valueOf(sharedPreferences.getString("language", "")));
-    //    Log.d("3%%%%%", String.valueOf(languageSelector.getCount()));
-    //
-    for (int i = 0; i < languageSelector.getCount(); i++) {
-      if (languageSelector
-          .getItemAtPosition(i)
-          .equals(sharedPreferences.getString("language", Locale.getDefault().getLanguage()))) {
+    // The saved language may not be shipped, the one it resolves to is selected
+    String current = LanguagePacks.get(this).resolve(AppSettings.get(this).languagePath());
+    for (int i = 0; i < languages.size(); i++) {
+      if (languages.get(i).code.equals(current)) {
         languageSelector.setSelection(i);
         break;
       }
     }
+    languageSelector.setOnItemSelectedListener(this);
   }
 
   public void onItemSelected(AdapterView<?> parent, View view, int pos, long id) {
-    final SharedPreferences sharedPreferences =
-        getApplicationContext().getSharedPreferences("bibleNotify", MODE_PRIVATE);
-
-    SharedPreferences.Editor editor = sharedPreferences.edit();
-    editor.putString("language", (String) parent.getItemAtPosition(pos));
-    //    Log.d("####SAVED###", Objects.requireNonNull((String) parent.getItemAtPosition(pos)));
-    //    Log.d("####SAVED2###", Objects.requireNonNull(languages.get((String)
-    // parent.getItemAtPosition(pos))));
-    editor.putString("languagePath", languages.get((String) parent.getItemAtPosition(pos)));
-    editor.apply();
+    final AppSettings settings = AppSettings.get(this);
 
-    // An item is selected. You can retrieve the selected item using
-    // parent.getItemAtPosition(pos).
+    LanguagePacks.Language language = languages.get(pos);
+    if (language.code.equals(LanguagePacks.get(this).resolve(settings.languagePath()))) {
+      // Already in use, e.g. the initial selection
+      return;
+    }
+    // Staged notifications were picked from the old language
+    NotificationPayload.discardAll(this);
+    settings.edit().setLanguage(language.name, language.code).apply();
   }
 
   public void onNothingSelected(AdapterView<?> parent) {
@@ -2,7 +2,6 @@ package com.correctsyntax.biblenotify;
 
 import android.app.AlarmManager;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.res.ColorStateList;
 import android.graphics.Color;
@@ -30,7 +29,7 @@ import com.google.android.material.button.MaterialButton;
 import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
-  ImageButton helpBtn, languagesBtn;
+  ImageButton helpBtn, languagesBtn, searchBtn;
   Button startBtn, changeBtn;
 
   public static int hourToSet = 12;
@@ -70,9 +69,15 @@ public class MainActivity extends AppCompatActivity {
     changeBtn = findViewById(R.id.change_button);
     helpBtn = findViewById(R.id.help_button);
     languagesBtn = findViewById(R.id.languages_btn);
+    searchBtn = findViewById(R.id.search_btn);
 
-    final SharedPreferences sharedPreferences =
-        getApplicationContext().getSharedPreferences("bibleNotify", MODE_PRIVATE);
+    // Built once the first frame is drawn and the main thread is idle
+    WebViewPool.warmUp(this);
+
+    // Libraries that grew by many imports are merged into one segment
+    QuoteParser.compactQuoteLibraries(this);
+
+    final AppSettings settings = AppSettings.get(this);
 
     // Request exact alarm permission
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
@@ -106,7 +111,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     // If enabled set image to done
-    if (sharedPreferences.contains("Started")) {
+    if (settings.started() != null) {
       startBtn.setText(R.string.app_is_running);
       startBtn.setBackgroundColor(Color.BLACK);
       startBtn.setTextColor(Color.WHITE);
@@ -116,11 +121,11 @@ public class MainActivity extends AppCompatActivity {
     }
 
     // Auto set the language
-    SharedPreferences.Editor editor = sharedPreferences.edit();
-    if (!sharedPreferences.contains("languagePath")) {
-      editor.putString("language", Locale.getDefault().getDisplayLanguage());
-      editor.putString("languagePath", Locale.getDefault().getLanguage());
-      editor.apply();
+    if (!settings.hasLanguagePath()) {
+      settings
+          .edit()
+          .setLanguage(Locale.getDefault().getDisplayLanguage(), Locale.getDefault().getLanguage())
+          .apply();
     }
 
     // Start Button
@@ -130,8 +135,7 @@ public class MainActivity extends AppCompatActivity {
             checkNotificationPermission();
           }
 
-          if (sharedPreferences.contains("Started")
-              && sharedPreferences.getString("Started", "no").equals("yes")) {
+          if (settings.isStarted()) {
             Toast.makeText(
                     getApplicationContext(),
                     MainActivity.this.getString(R.string.app_is_running),
@@ -139,8 +143,7 @@ public class MainActivity extends AppCompatActivity {
                 .show();
           } else {
             // tell that it has been enabled
-            editor.putString("Started", "yes");
-            editor.commit();
+            settings.edit().setStarted("yes").apply();
 
             /* Make Alert dialog */
             AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
@@ -155,12 +158,24 @@ public class MainActivity extends AppCompatActivity {
                     "ok",
                     (dialog, id) -> {
                       // Save the time
-                      SharedPreferences.Editor editor1 = sharedPreferences.edit();
-                      editor1.putInt("SetTimeH", hourToBeSaved);
-                      editor1.putInt("SetTimeM", minToBeSaved);
-                      editor1.apply();
+                      // The alarm timeline is built from profiles, so the chosen time goes there
+                      ProfileManager profileManager = ProfileManager.get(MainActivity.this);
+                      QuoteProfile profile =
+                          profileManager.getProfile(settings.currentActiveProfile());
+                      if (profile == null) {
+                        profile = profileManager.getAllProfiles().get(0);
+                      }
+                      profile = profile.copy();
+                      profile.hour = hourToBeSaved;
+                      profile.minute = minToBeSaved;
+                      profileManager.updateProfile(profile);
+                      settings
+                          .edit()
+                          .setTime(hourToBeSaved, minToBeSaved)
+                          .setCurrentActiveProfile(profile.id)
+                          .apply();
 
-                      SetAlarm.startAlarmBroadcastReceiver(MainActivity.this, sharedPreferences);
+                      SetAlarm.startAlarmBroadcastReceiver(MainActivity.this);
                       Toast.makeText(getApplicationContext(), "Saved", Toast.LENGTH_SHORT).show();
 
                       // Animation
@@ -176,9 +191,7 @@ public class MainActivity extends AppCompatActivity {
                 .setNeutralButton(
                     "Cancel",
                     (dialog, id) -> {
-                      SharedPreferences.Editor editor12 = sharedPreferences.edit();
-                      editor12.putString("Started", "No");
-                      editor12.apply();
+                      settings.edit().setStarted("No").apply();
                     })
                 .create()
                 .show();
@@ -194,10 +207,10 @@ public class MainActivity extends AppCompatActivity {
 
             // Set time
 
-            // Get the currently set time from sharedPreferences
-            if (sharedPreferences.getString("Started", "no").equals("yes")) {
-              hourToSet = sharedPreferences.getInt("SetTimeH", 0);
-              minToSet = sharedPreferences.getInt("SetTimeM", 0);
+            // Get the currently set time from the settings
+            if (settings.isStarted()) {
+              hourToSet = settings.setTimeHour();
+              minToSet = settings.setTimeMinute();
             }
 
             if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.LOLLIPOP_MR1) {
@@ -213,8 +226,7 @@ public class MainActivity extends AppCompatActivity {
     // Settings (Change time)
     changeBtn.setOnClickListener(
         v -> {
-          if (sharedPreferences.contains("Started")
-              && sharedPreferences.getString("Started", "no").equals("yes")) {
+          if (settings.isStarted()) {
             Intent settingsIntent = new Intent(MainActivity.this, SettingsActivity.class);
             startActivity(settingsIntent);
           } else {
@@ -239,6 +251,13 @@ public class MainActivity extends AppCompatActivity {
           Intent languagesIntent = new Intent(MainActivity.this, LanguageSettings.class);
           startActivity(languagesIntent);
         });
+
+    // Search
+    searchBtn.setOnClickListener(
+        v -> {
+          Intent searchIntent = new Intent(MainActivity.this, SearchActivity.class);
+          startActivity(searchIntent);
+        });
   }
 
   @RequiresApi(api = Build.VERSION_CODES.TIRAMISU)
@@ -0,0 +1,263 @@
+package com.correctsyntax.biblenotify;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.service.notification.StatusBarNotification;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Posts quote notifications. Every profile has its own notification
+ * channel, so it can be tuned in the system settings, and its own
+ * notification id (from its row in the profiles table), so profiles firing
+ * close together do not replace each other. From Android 7 they are grouped
+ * under a summary once more than one is showing.
+ *
+ * Channels are registered once per process, and again after profiles
+ * change or when the channel to post to is missing. Builders are kept per
+ * channel and only get the quote set on them. A delivery costs two
+ * PendingIntents (open and favorite), the notify call and, with grouping,
+ * one look at the active notifications.
+ */
+public class NotificationDispatcher {
+  private static final String TAG = "NotificationDispatcher";
+
+  static final String CHANNEL_PREFIX = "quotes_";
+  // The single channel every profile used to share
+  static final String LEGACY_CHANNEL_ID = "echoNotify";
+  static final String GROUP = "quotes";
+  static final int SUMMARY_ID = 1;
+  // Profiles that are not stored, none normally
+  static final int UNKNOWN_PROFILE_ID = 0;
+
+  // What the reader opens, carried by each notification's own intent
+  static final String EXTRA_READER_DATA = "readerData";
+  static final String EXTRA_VERSE_NUMBER = "verseNumber";
+
+  private static NotificationDispatcher instance;
+
+  private final Context context;
+  private final NotificationManager manager;
+  private final Map<String, Notification.Builder> builders = new HashMap<>();
+  private final Map<String, Integer> notificationIds = new HashMap<>();
+  private boolean channelsRegistered = false;
+
+  private NotificationDispatcher(Context context) {
+    this.context = context;
+    this.manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+  }
+
+  public static synchronized NotificationDispatcher get(Context context) {
+    if (instance == null) {
+      instance = new NotificationDispatcher(context.getApplicationContext());
+      // Renamed profiles rename their channel, deleted ones lose it
+      ProfileManager.get(context).addListener(profiles -> instance.profilesChanged());
+    }
+    return instance;
+  }
+
+  /*
+   * Same id for a profile on every run and no two profiles with the same
+   * one: the profile's rowid, after the summary's id. It is also the request
+   * code of the notification's PendingIntents.
+   */
+  private int notificationId(String profileId) {
+    Integer id = notificationIds.get(profileId);
+    if (id != null) {
+      return id;
+    }
+    long row = profileId != null ? BibleNotifyDatabase.get(context).profileRow(profileId) : -1;
+    if (row <= 0) {
+      return UNKNOWN_PROFILE_ID;
+    }
+    id = (int) (SUMMARY_ID + row);
+    notificationIds.put(profileId, id);
+    return id;
+  }
+
+  static String channelId(String profileId) {
+    return CHANNEL_PREFIX + profileId;
+  }
+
+  public synchronized void post(NotificationPayload payload) {
+    int id = notificationId(payload.profileId);
+    String channelId = channelId(payload.profileId);
+    // Profile changes arrive on the main thread, possibly after this alarm
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+        && channelsRegistered
+        && manager.getNotificationChannel(channelId) == null) {
+      channelsRegistered = false;
+    }
+    registerChannels();
+
+    Notification.BigTextStyle bigText = new Notification.BigTextStyle();
+    bigText.bigText(payload.text);
+    bigText.setSummaryText(payload.summary);
+
+    Notification.Builder builder = builder(channelId);
+    builder.setContentTitle(payload.title);
+    builder.setContentText(payload.text);
+    builder.setStyle(bigText);
+    builder.setWhen(SetAlarm.clock.currentTimeMillis());
+    builder.setContentIntent(openIntent(id, payload));
+
+    // A reused builder still has the previous quote's action
+    PendingIntent favoriteIntent = FavoriteReceiver.pendingIntent(context, payload, id);
+    String favoriteLabel = context.getString(R.string.favorite_action);
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+      builder.setActions(
+          new Notification.Action.Builder(R.drawable.nicon, favoriteLabel, favoriteIntent)
+              .build());
+    } else {
+      builder.addAction(R.drawable.nicon, favoriteLabel, favoriteIntent);
+    }
+
+    manager.notify(id, builder.build());
+
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+      postSummary(id, payload.title, channelId);
+    }
+  }
+
+  private synchronized void profilesChanged() {
+    channelsRegistered = false;
+    notificationIds.clear();
+  }
+
+  /*
+   * One channel per profile, created in a single call. Channels of deleted
+   * profiles and the old shared channel are removed at the same time.
+   */
+  private void registerChannels() {
+    if (channelsRegistered || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+      channelsRegistered = true;
+      return;
+    }
+    List<NotificationChannel> channels = new ArrayList<>();
+    Set<String> ids = new HashSet<>();
+    for (QuoteProfile profile : ProfileManager.get(context).getAllProfiles()) {
+      String id = channelId(profile.id);
+      channels.add(new NotificationChannel(id, profile.name, NotificationManager.IMPORTANCE_HIGH));
+      ids.add(id);
+    }
+    manager.createNotificationChannels(channels);
+
+    for (NotificationChannel channel : manager.getNotificationChannels()) {
+      String id = channel.getId();
+      if (id.equals(LEGACY_CHANNEL_ID) || (id.startsWith(CHANNEL_PREFIX) && !ids.contains(id))) {
+        manager.deleteNotificationChannel(id);
+        builders.remove(id);
+      }
+    }
+    channelsRegistered = true;
+    AppLog.d(TAG, "Registered %d notification channels", channels.size());
+  }
+
+  // What is the same for every notification of a channel is set once
+  private Notification.Builder builder(String channelId) {
+    // Actions cannot be cleared before Android 7, so older versions start over
+    Notification.Builder builder =
+        Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? builders.get(channelId) : null;
+    if (builder != null) {
+      return builder;
+    }
+
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+      builder = new Notification.Builder(context, channelId);
+    } else {
+      builder = new Notification.Builder(context);
+    }
+    builder.setSmallIcon(R.drawable.nicon);
+    builder.setAutoCancel(true);
+    builder.setShowWhen(true);
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+      builder.setGroup(GROUP);
+      builders.put(channelId, builder);
+    }
+    return builder;
+  }
+
+  private PendingIntent openIntent(int id, NotificationPayload payload) {
+    Intent intent = new Intent(context, BibleReader.class);
+    intent.putExtra(EXTRA_READER_DATA, payload.readerData);
+    intent.putExtra(EXTRA_VERSE_NUMBER, verseNumber(payload.summary));
+    intent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_MULTIPLE_TASK);
+
+    // One request code per profile, so each notification keeps its own extras
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      return PendingIntent.getActivity(
+          context, id, intent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    } else {
+      return PendingIntent.getActivity(context, id, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+  }
+
+  // Bible verses are "Book Chapter:Verse", custom quotes have no verse number
+  static String verseNumber(String summary) {
+    if (summary != null && summary.contains(":")) {
+      String[] parts = summary.split(":");
+      if (parts.length > 1) {
+        return parts[1].replace(" (story)", "");
+      }
+    }
+    return "";
+  }
+
+  /*
+   * Lists the titles of the group's notifications once there are two or
+   * more. The one just posted may not be among the active ones yet.
+   */
+  private void postSummary(int postedId, String postedTitle, String channelId) {
+    List<CharSequence> titles = new ArrayList<>();
+    titles.add(postedTitle);
+    for (StatusBarNotification active : manager.getActiveNotifications()) {
+      Notification notification = active.getNotification();
+      if (active.getId() == SUMMARY_ID
+          || active.getId() == postedId
+          || !GROUP.equals(notification.getGroup())) {
+        continue;
+      }
+      CharSequence title = notification.extras.getCharSequence(Notification.EXTRA_TITLE);
+      titles.add(title != null ? title : "");
+    }
+    if (titles.size() < 2) {
+      return;
+    }
+
+    Notification.InboxStyle inbox = new Notification.InboxStyle();
+    for (CharSequence title : titles) {
+      inbox.addLine(title);
+    }
+    String summaryText =
+        context
+            .getResources()
+            .getQuantityString(R.plurals.notification_summary, titles.size(), titles.size());
+    inbox.setSummaryText(summaryText);
+
+    Notification.Builder summary;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+      summary = new Notification.Builder(context, channelId);
+      // The quote itself already alerted
+      summary.setGroupAlertBehavior(Notification.GROUP_ALERT_CHILDREN);
+    } else {
+      summary = new Notification.Builder(context);
+    }
+    summary.setSmallIcon(R.drawable.nicon);
+    summary.setContentTitle(summaryText);
+    summary.setStyle(inbox);
+    summary.setGroup(GROUP);
+    summary.setGroupSummary(true);
+    summary.setAutoCancel(true);
+    summary.setOnlyAlertOnce(true);
+    manager.notify(SUMMARY_ID, summary.build());
+  }
+}
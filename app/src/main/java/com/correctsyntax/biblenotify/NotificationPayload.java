@@ -0,0 +1,232 @@
+package com.correctsyntax.biblenotify;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * A notification chosen ahead of time. SetAlarm stages one for the head of
+ * the timeline when it arms the alarm, so the receiver only reads this small
+ * record and posts it. A payload is used only for the fire it was staged for
+ * (same profile and scheduled time), anything else is treated as stale.
+ * Staging only peeks at the shuffle bag and the receiver calls markShown()
+ * once it posted the payload, so a stale or discarded one uses up nothing.
+ */
+public class NotificationPayload {
+  private static final String TAG = "NotificationPayload";
+  static final int MAGIC = 0x454E4E50; // "ENNP"
+  static final int VERSION = 3;
+  static final String DIRECTORY = "notifications";
+
+  public final String profileId;
+  public final long scheduledAt;
+  public final String title;
+  public final String text;
+  public final String summary;
+  public final String readerData;
+  // Where the quote came from, so it can be marked as a favorite
+  public final int quoteIndex;
+  public final long selectionKey;
+
+  public NotificationPayload(
+      String profileId,
+      long scheduledAt,
+      String title,
+      String text,
+      String summary,
+      String readerData,
+      int quoteIndex,
+      long selectionKey) {
+    this.profileId = profileId;
+    this.scheduledAt = scheduledAt;
+    this.title = title;
+    this.text = text;
+    this.summary = summary;
+    this.readerData = readerData;
+    this.quoteIndex = quoteIndex;
+    this.selectionKey = selectionKey;
+  }
+
+  /*
+   * Picks a quote for the profile and builds the notification content. This
+   * is the slow part (profile, store and shuffle bag access) and normally runs
+   * right after the previous notification went out. Returns null if there
+   * are no quotes.
+   */
+  public static NotificationPayload prepare(
+      Context context, QuoteProfile profile, String quoteFile, long scheduledAt)
+      throws IOException {
+    return prepare(context, profile, quoteFile, scheduledAt, false);
+  }
+
+  // A staged payload leaves its quote unseen until markShown()
+  public static NotificationPayload prepare(
+      Context context, QuoteProfile profile, String quoteFile, long scheduledAt, boolean staged)
+      throws IOException {
+    // An unshipped language falls back instead of looking for verses that do not exist
+    String languagePath =
+        LanguagePacks.get(context).resolve(AppSettings.get(context).languagePath());
+    if (languagePath == null) {
+      return null;
+    }
+
+    // Served from the process-wide cache, only the chosen record is read from disk
+    QuoteRepository quotes = QuoteRepository.get();
+    int count;
+    long selectionKey;
+    long section = AppLog.begin("count");
+    try {
+      count = quotes.count(context, quoteFile, languagePath);
+      if (count <= 0) {
+        return null;
+      }
+      selectionKey = quotes.selectionKey(context, quoteFile, languagePath);
+    } finally {
+      AppLog.end("count", section);
+    }
+
+    int index;
+    section = AppLog.begin("select");
+    try {
+      if (QuoteProfile.SELECTION_WEIGHTED.equals(profile.selectionMode)) {
+        // Favorites, short quotes and categories by the profile's weights
+        index =
+            WeightedSelection.next(
+                Favorites.source(context),
+                profile,
+                quotes.classes(context, quoteFile, languagePath),
+                selectionKey);
+      } else {
+        // No repeats until every quote of the profile was shown once
+        int mode =
+            QuoteProfile.SELECTION_SEQUENTIAL.equals(profile.selectionMode)
+                ? ShuffleBag.MODE_SEQUENTIAL
+                : ShuffleBag.MODE_SHUFFLE;
+        File bag = selectionFile(context, profile.id);
+        index =
+            staged
+                ? ShuffleBag.peek(bag, count, selectionKey, mode)
+                : ShuffleBag.next(bag, count, selectionKey, mode);
+      }
+    } finally {
+      AppLog.end("select", section);
+    }
+    if (AppLog.isLoggable(Log.DEBUG)) {
+      AppLog.d(TAG, "Selected quote %d of %d", index, count);
+    }
+
+    QuoteStore.Record quote;
+    section = AppLog.begin("parse");
+    try {
+      quote = quotes.quoteAt(context, quoteFile, languagePath, index);
+    } finally {
+      AppLog.end("parse", section);
+    }
+
+    // Determine notification title based on profile or category
+    String title = quote.place.equals("Custom") ? profile.name : quote.place;
+    return new NotificationPayload(
+        profile.id, scheduledAt, title, quote.verse, quote.place, quote.data, index, selectionKey);
+  }
+
+  // Returns the payload staged for this profile, or null if there is none
+  public static NotificationPayload read(Context context, String profileId) {
+    File file = file(context, profileId);
+    if (!file.exists()) {
+      return null;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      long scheduledAt = in.readLong();
+      return new NotificationPayload(
+          profileId,
+          scheduledAt,
+          readString(in),
+          readString(in),
+          readString(in),
+          readString(in),
+          in.readInt(),
+          in.readLong());
+    } catch (IOException e) {
+      AppLog.w(TAG, "Error reading staged notification: %s", e);
+      return null;
+    }
+  }
+
+  public void write(Context context) throws IOException {
+    File target = file(context, profileId);
+    File temp = new File(target.getPath() + ".tmp");
+    target.getParentFile().mkdirs();
+
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(scheduledAt);
+      writeString(out, title);
+      writeString(out, text);
+      writeString(out, summary);
+      writeString(out, readerData);
+      out.writeInt(quoteIndex);
+      out.writeLong(selectionKey);
+    }
+    if (!temp.renameTo(target)) {
+      temp.delete();
+      throw new IOException("Could not replace " + target);
+    }
+  }
+
+  // Counts a staged payload's quote as shown, once it was posted
+  public void markShown(Context context) throws IOException {
+    QuoteProfile profile = ProfileManager.get(context).getProfile(profileId);
+    if (profile != null && !QuoteProfile.SELECTION_WEIGHTED.equals(profile.selectionMode)) {
+      ShuffleBag.markShown(selectionFile(context, profileId), quoteIndex, selectionKey);
+    }
+  }
+
+  // Drops the payload staged for a profile, e.g. after it imported new quotes
+  public static void discard(Context context, String profileId) {
+    file(context, profileId).delete();
+  }
+
+  // Drops every staged payload, e.g. after a language change
+  public static void discardAll(Context context) {
+    File[] files = new File(context.getFilesDir(), DIRECTORY).listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+  }
+
+  private static File selectionFile(Context context, String profileId) {
+    return new File(new File(context.getFilesDir(), "selection"), profileId + ".bag");
+  }
+
+  private static File file(Context context, String profileId) {
+    return new File(new File(context.getFilesDir(), DIRECTORY), profileId + ".bin");
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
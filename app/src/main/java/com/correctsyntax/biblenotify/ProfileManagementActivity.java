@@ -24,6 +24,8 @@ public class ProfileManagementActivity extends AppCompatActivity {
   private Button addProfileButton, backButton;
   private ProfileManager profileManager;
   private ProfileAdapter profileAdapter;
+  private final ProfileManager.Listener profilesListener =
+      profiles -> profileAdapter.updateProfiles(profiles);
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -45,7 +47,8 @@ public class ProfileManagementActivity extends AppCompatActivity {
           return WindowInsetsCompat.CONSUMED;
         });
 
-    profileManager = new ProfileManager(this);
+    profileManager = ProfileManager.get(this);
+    profileManager.addListener(profilesListener);
     
     profilesRecyclerView = findViewById(R.id.profiles_recycler_view);
     addProfileButton = findViewById(R.id.add_profile_button);
@@ -58,6 +61,12 @@ public class ProfileManagementActivity extends AppCompatActivity {
     backButton.setOnClickListener(v -> finish());
   }
 
+  @Override
+  protected void onDestroy() {
+    super.onDestroy();
+    profileManager.removeListener(profilesListener);
+  }
+
   private void setupRecyclerView() {
     profilesRecyclerView.setLayoutManager(new LinearLayoutManager(this));
     profileAdapter = new ProfileAdapter();
@@ -101,7 +110,7 @@ public class ProfileManagementActivity extends AppCompatActivity {
       }
       
       profileManager.addProfile(name, category, hour, minute);
-      loadProfiles();
+      SetAlarm.onProfilesChanged(this);
     });
     
     builder.setNegativeButton("Cancel", null);
@@ -168,7 +177,7 @@ public class ProfileManagementActivity extends AppCompatActivity {
         .setMessage("Are you sure you want to delete \"" + profile.name + "\"?")
         .setPositiveButton("Delete", (dialog, which) -> {
           profileManager.deleteProfile(profile.id);
-          loadProfiles();
+          SetAlarm.onProfilesChanged(this);
         })
         .setNegativeButton("Cancel", null)
         .show();
@@ -1,130 +1,212 @@
 package com.correctsyntax.biblenotify;
 
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/*
+ * Process-wide owner of the quote profiles. Reads are served from an
+ * immutable snapshot (id map, enabled list, time index) that is loaded once
+ * and replaced as a whole on every write, so readers on any thread never
+ * lock and never see a half-applied change. Writes touch only the changed
+ * row of BibleNotifyDatabase, on a single background thread in call order;
+ * afterWrites() runs what another process reads (alarms) once they are in.
+ *
+ * Profiles handed out belong to the snapshot: copy() one before changing it
+ * and pass the copy to updateProfile().
+ */
 public class ProfileManager {
     private static final String TAG = "ProfileManager";
-    private static final String PREFS_KEY = "quote_profiles";
-    private static final String PROFILES_JSON_KEY = "profiles_json";
-    
-    private Context context;
-    private SharedPreferences prefs;
-    
-    public ProfileManager(Context context) {
-        this.context = context;
-        this.prefs = context.getSharedPreferences("bibleNotify", Context.MODE_PRIVATE);
-    }
-    
-    public List<QuoteProfile> getAllProfiles() {
-        List<QuoteProfile> profiles = new ArrayList<>();
-        String profilesJson = prefs.getString(PROFILES_JSON_KEY, "");
-        
-        if (profilesJson.isEmpty()) {
-            // Create default profile if none exist
-            profiles.add(createDefaultProfile());
-            saveProfiles(profiles);
-            return profiles;
-        }
-        
-        try {
-            JSONArray jsonArray = new JSONArray(profilesJson);
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject profileJson = jsonArray.getJSONObject(i);
-                profiles.add(QuoteProfile.fromJSON(profileJson));
-            }
-        } catch (JSONException e) {
-            Log.e(TAG, "Error parsing profiles JSON: " + e);
-            profiles.add(createDefaultProfile());
-        }
-        
-        return profiles;
+
+    // Called on the main thread after every write
+    public interface Listener {
+        void onProfilesChanged(List<QuoteProfile> profiles);
     }
-    
-    public void saveProfiles(List<QuoteProfile> profiles) {
-        try {
-            JSONArray jsonArray = new JSONArray();
+
+    private static final class Snapshot {
+        final List<QuoteProfile> all;
+        final Map<String, QuoteProfile> byId;
+        final List<QuoteProfile> enabled;
+        final Map<Integer, QuoteProfile> byTime; // minute of day -> first enabled profile
+
+        Snapshot(List<QuoteProfile> profiles) {
+            Map<String, QuoteProfile> byId = new HashMap<>();
+            List<QuoteProfile> enabled = new ArrayList<>();
+            Map<Integer, QuoteProfile> byTime = new HashMap<>();
             for (QuoteProfile profile : profiles) {
-                jsonArray.put(profile.toJSON());
+                byId.put(profile.id, profile);
+                if (profile.enabled) {
+                    enabled.add(profile);
+                    int minuteOfDay = profile.hour * 60 + profile.minute;
+                    if (!byTime.containsKey(minuteOfDay)) {
+                        byTime.put(minuteOfDay, profile);
+                    }
+                }
             }
-            
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.putString(PROFILES_JSON_KEY, jsonArray.toString());
-            editor.apply();
-            
-            Log.i(TAG, "Saved " + profiles.size() + " profiles");
-        } catch (JSONException e) {
-            Log.e(TAG, "Error saving profiles: " + e);
+            this.all = Collections.unmodifiableList(new ArrayList<>(profiles));
+            this.byId = byId;
+            this.enabled = Collections.unmodifiableList(enabled);
+            this.byTime = byTime;
+        }
+    }
+
+    private static ProfileManager instance;
+
+    private final BibleNotifyDatabase database;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot snapshot;
+
+    private ProfileManager(Context context) {
+        this.database = BibleNotifyDatabase.get(context);
+    }
+
+    public static synchronized ProfileManager get(Context context) {
+        if (instance == null) {
+            instance = new ProfileManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public List<QuoteProfile> getAllProfiles() {
+        return snapshot().all;
+    }
+
+    public List<QuoteProfile> getEnabledProfiles() {
+        return snapshot().enabled;
+    }
+
+    public QuoteProfile getProfile(String profileId) {
+        if (profileId == null) {
+            return null;
+        }
+        return snapshot().byId.get(profileId);
+    }
+
+    // Get profile for a specific time (for scheduling)
+    public QuoteProfile getProfileForTime(int hour, int minute) {
+        return snapshot().byTime.get(hour * 60 + minute);
+    }
+
+    public synchronized void saveProfiles(List<QuoteProfile> profiles) {
+        List<QuoteProfile> copies = new ArrayList<>(profiles.size());
+        for (QuoteProfile profile : profiles) {
+            copies.add(profile.copy());
         }
+        publish(copies);
+        writer.execute(() -> database.replaceProfiles(copies));
     }
-    
-    public QuoteProfile addProfile(String name, String category, int hour, int minute) {
-        List<QuoteProfile> profiles = getAllProfiles();
-        
+
+    public synchronized QuoteProfile addProfile(String name, String category, int hour, int minute) {
+        List<QuoteProfile> profiles = new ArrayList<>(getAllProfiles());
+
         // Generate unique ID
         String id = "profile_" + System.currentTimeMillis();
-        
+
         QuoteProfile newProfile = new QuoteProfile(id, name, category, hour, minute);
-        profiles.add(newProfile);
-        
-        saveProfiles(profiles);
+        final QuoteProfile copy = newProfile.copy();
+        profiles.add(copy);
+
+        publish(profiles);
+        final int position = profiles.size() - 1;
+        writer.execute(() -> database.putProfile(copy, position));
         Log.i(TAG, "Added new profile: " + name);
-        
+
+        // Not the snapshot's, the caller may change it and pass it to updateProfile()
         return newProfile;
     }
-    
-    public void deleteProfile(String profileId) {
-        List<QuoteProfile> profiles = getAllProfiles();
+
+    public synchronized void deleteProfile(String profileId) {
+        List<QuoteProfile> profiles = new ArrayList<>(getAllProfiles());
         profiles.removeIf(profile -> profile.id.equals(profileId));
-        saveProfiles(profiles);
+        publish(profiles);
+        writer.execute(() -> database.deleteProfile(profileId));
         Log.i(TAG, "Deleted profile: " + profileId);
     }
-    
-    public void updateProfile(QuoteProfile updatedProfile) {
-        List<QuoteProfile> profiles = getAllProfiles();
+
+    public synchronized void updateProfile(QuoteProfile updatedProfile) {
+        List<QuoteProfile> profiles = new ArrayList<>(getAllProfiles());
         for (int i = 0; i < profiles.size(); i++) {
             if (profiles.get(i).id.equals(updatedProfile.id)) {
-                profiles.set(i, updatedProfile);
+                final QuoteProfile copy = updatedProfile.copy();
+                final int position = i;
+                profiles.set(i, copy);
+                publish(profiles);
+                writer.execute(() -> database.putProfile(copy, position));
                 break;
             }
         }
-        saveProfiles(profiles);
         Log.i(TAG, "Updated profile: " + updatedProfile.name);
     }
-    
-    public List<QuoteProfile> getEnabledProfiles() {
-        List<QuoteProfile> allProfiles = getAllProfiles();
-        List<QuoteProfile> enabledProfiles = new ArrayList<>();
-        
-        for (QuoteProfile profile : allProfiles) {
-            if (profile.enabled) {
-                enabledProfiles.add(profile);
+
+    /*
+     * Runs action on the writer thread once every write queued so far is in
+     * the database. It never blocks the caller, which may be waiting behind a
+     * long import holding the database; action should hand off anything slow.
+     */
+    public void afterWrites(Runnable action) {
+        writer.execute(action);
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    snapshot = new Snapshot(load());
+                }
+                current = snapshot;
             }
         }
-        
-        return enabledProfiles;
+        return current;
     }
-    
-    private QuoteProfile createDefaultProfile() {
-        return new QuoteProfile("default", "Daily Inspiration", "General", 9, 0);
+
+    // Reads the profiles table, only once per process
+    private List<QuoteProfile> load() {
+        List<QuoteProfile> profiles = database.loadProfiles();
+
+        if (profiles.isEmpty()) {
+            // Create default profile if none exist
+            QuoteProfile profile = createDefaultProfile();
+            profiles.add(profile);
+            writer.execute(() -> database.putProfile(profile, 0));
+        }
+
+        Log.i(TAG, "Loaded " + profiles.size() + " profiles");
+        return profiles;
     }
-    
-    // Get profile for a specific time (for scheduling)
-    public QuoteProfile getProfileForTime(int hour, int minute) {
-        List<QuoteProfile> profiles = getEnabledProfiles();
-        
-        for (QuoteProfile profile : profiles) {
-            if (profile.hour == hour && profile.minute == minute) {
-                return profile;
+
+    // Publishes a new snapshot, callers hold the lock
+    private void publish(List<QuoteProfile> profiles) {
+        final Snapshot next = new Snapshot(profiles);
+        snapshot = next;
+
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onProfilesChanged(next.all);
             }
-        }
-        
-        return null;
+        });
+    }
+
+    private QuoteProfile createDefaultProfile() {
+        return new QuoteProfile("default", "Daily Inspiration", "General", 9, 0);
     }
-}
\ No newline at end of file
+}
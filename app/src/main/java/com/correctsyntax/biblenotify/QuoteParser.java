@@ -1,140 +1,188 @@
 package com.correctsyntax.biblenotify;
 
 import android.content.Context;
-import android.util.Log;
-import java.io.BufferedReader;
+import android.content.pm.PackageManager;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class QuoteParser {
   private static final String TAG = "QuoteParser";
 
-  public static class Quote {
-    public String text;
-    public String category;
+  private static final ExecutorService compactor = Executors.newSingleThreadExecutor();
+
+  /* Streams a plain text file into the profile's quote rows and its quote
+  library, without holding the quotes in memory. With append the quotes are
+  added after the existing ones as a new library segment, otherwise they
+  replace them. Returns the number of quotes imported, 0 if the file had none
+  (existing quotes are left alone) or -1 on error. */
+  public static int importQuotes(
+      Context context,
+      Reader reader,
+      String profileId,
+      String category,
+      String filename,
+      boolean append) {
+    File assetsDir = new File(context.getFilesDir(), "assets/quotes");
+    if (!assetsDir.exists()) {
+      assetsDir.mkdirs();
+    }
+
+    String place = category != null ? category : "General";
+    File storeFile = new File(assetsDir, storeFileName(filename));
+    BibleNotifyDatabase database = BibleNotifyDatabase.get(context);
+
+    try (BibleNotifyDatabase.QuoteWriter rows =
+            append ? database.appendQuotes(profileId) : database.writeQuotes(profileId);
+        QuoteLibrary.Writer store =
+            append ? QuoteLibrary.append(storeFile) : QuoteLibrary.replace(storeFile)) {
+      int count =
+          QuoteImporter.run(
+              reader,
+              text -> {
+                String data = "custom/" + store.nextIndex();
+                rows.add(text, place, data);
+                store.add(text, place, data);
+              },
+              length -> AppLog.w(TAG, "Cut a line of %d characters in %s", length, filename));
+
+      if (count > 0) {
+        // Rows first: a library lost after this point is rebuilt from them
+        rows.commit();
+        store.commit();
+        AppLog.i(TAG, "%s %d quotes into %s", append ? "Appended" : "Imported", count, filename);
+        if (append) {
+          compactLater(storeFile);
+        }
+      }
+      return count;
 
-    public Quote(String text, String category) {
-      this.text = text;
-      this.category = category != null ? category : "General";
+    } catch (IOException | RuntimeException e) {
+      AppLog.e(TAG, "Error importing quotes: %s", e.getMessage());
+      return -1;
     }
   }
 
-  public static List<Quote> parseTextFile(String filePath, String category) {
-    List<Quote> quotes = new ArrayList<>();
-    
-    try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        line = line.trim();
-        if (!line.isEmpty()) {
-          String cleanedQuote = cleanQuoteText(line);
-          if (!cleanedQuote.isEmpty()) {
-            quotes.add(new Quote(cleanedQuote, category));
-          }
-        }
+  // Merges the segments of libraries that grew by many appends, in the background
+  public static void compactQuoteLibraries(Context context) {
+    for (QuoteProfile profile : ProfileManager.get(context).getAllProfiles()) {
+      if (profile.quotesFile != null) {
+        compactLater(customQuoteStoreFile(context, profile.quotesFile));
       }
-    } catch (IOException e) {
-      Log.e(TAG, "Error parsing text file: " + e.getMessage());
     }
+  }
 
-    return quotes;
+  private static void compactLater(File storeFile) {
+    compactor.execute(
+        () -> {
+          try {
+            if (QuoteLibrary.needsCompaction(storeFile)) {
+              int merged = QuoteLibrary.compact(storeFile);
+              AppLog.i(TAG, "Compacted %d segments of %s", merged, storeFile.getName());
+            }
+          } catch (IOException e) {
+            AppLog.e(TAG, "Error compacting %s: %s", storeFile.getName(), e.getMessage());
+          }
+        });
   }
 
-  private static String cleanQuoteText(String text) {
-    text = text.trim();
-    text = text.replaceAll("^\\d+\\.\\s*", "");
-    text = text.replaceAll("^\\d+\\s*", "");
-    text = text.replaceAll("^-\\s*", "");
-    text = text.replaceAll("^•\\s*", "");
-    return text.trim();
+  // Binary twin of an imported JSON file, e.g. quotes_x.json -> quotes_x.bin
+  public static String storeFileName(String filename) {
+    if (filename.endsWith(".json")) {
+      filename = filename.substring(0, filename.length() - ".json".length());
+    }
+    return filename + ".bin";
   }
 
-  public static boolean generateQuoteJSON(Context context, List<Quote> quotes, String filename) {
-    try {
-      JSONObject root = new JSONObject();
-      JSONArray allQuotes = new JSONArray();
-
-      for (int i = 0; i < quotes.size(); i++) {
-        Quote quote = quotes.get(i);
-        JSONObject quoteObj = new JSONObject();
-        quoteObj.put("verse", quote.text);
-        quoteObj.put("place", quote.category);
-        quoteObj.put("data", "custom/" + i);
-        allQuotes.put(quoteObj);
-      }
+  // Root store file of an imported quote library, whether or not it exists yet
+  public static File customQuoteStoreFile(Context context, String filename) {
+    return new File(new File(context.getFilesDir(), "assets/quotes"), storeFileName(filename));
+  }
 
-      root.put("all", allQuotes);
+  /* Resolves the quote library for a custom quote file, falling back to the
+  bundled verses. Returns the library's root store file (see QuoteLibrary),
+  or null if neither can be found. */
+  public static File quoteStoreFile(Context context, String filename, String languagePath) {
+    if (filename != null) {
+      File storeFile = customQuoteStoreFile(context, filename);
 
-      File assetsDir = new File(context.getFilesDir(), "assets/quotes");
-      if (!assetsDir.exists()) {
-        assetsDir.mkdirs();
+      // The library is derived from the quote rows and rebuilt if it went missing
+      if (!QuoteLibrary.exists(storeFile)) {
+        rebuildQuoteStore(context, filename, storeFile);
       }
 
-      File jsonFile = new File(assetsDir, filename);
-      try (FileOutputStream fos = new FileOutputStream(jsonFile)) {
-        fos.write(root.toString(2).getBytes());
-        Log.i(TAG, "Generated JSON with " + quotes.size() + " quotes");
-        return true;
+      if (QuoteLibrary.exists(storeFile)) {
+        return storeFile;
       }
-
-    } catch (JSONException | IOException e) {
-      Log.e(TAG, "Error generating JSON: " + e.getMessage());
-      return false;
     }
+
+    return defaultQuoteStoreFile(context, languagePath);
   }
 
-  public static String loadQuotesJSON(Context context, String filename) {
+  // The bundled verses are compiled by the build and copied once per install into files/quotes
+  private static File defaultQuoteStoreFile(Context context, String languagePath) {
+    File storeFile =
+        new File(context.getFilesDir(), "quotes/bible_verses_" + languagePath + ".bin");
+
+    long installedAt = 0;
     try {
-      File quotesDir = new File(context.getFilesDir(), "assets/quotes");
-      File jsonFile = new File(quotesDir, filename);
-      if (!jsonFile.exists()) {
-        Log.i(TAG, "Custom quotes file not found, using default");
-        return loadDefaultJSON(context);
-      }
+      installedAt =
+          context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+    } catch (PackageManager.NameNotFoundException e) {
+      AppLog.w(TAG, "Could not read install time: %s", e);
+    }
 
-      StringBuilder json = new StringBuilder();
-      try (BufferedReader reader = new BufferedReader(new FileReader(jsonFile))) {
-        String line;
-        while ((line = reader.readLine()) != null) {
-          json.append(line);
-        }
+    if (!storeFile.exists() || storeFile.lastModified() < installedAt) {
+      String asset = "bible/" + languagePath + "/Verses/quotes.bin";
+      storeFile.getParentFile().mkdirs();
+      try {
+        // Sidecar first, it is only used if it matches the store
+        copyAsset(context, asset + ".cls", QuoteClasses.fileFor(storeFile));
+        copyAsset(context, asset, storeFile);
+      } catch (IOException e) {
+        AppLog.e(TAG, "Bundled verses not found: %s", e.getMessage());
+        return null;
       }
-      return json.toString();
-
-    } catch (IOException e) {
-      Log.e(TAG, "Error loading quotes JSON: " + e.getMessage());
-      return loadDefaultJSON(context);
+      AppLog.i(TAG, "Copied bundled verses into %s", storeFile.getName());
     }
+    return storeFile;
   }
 
-  private static String loadDefaultJSON(Context context) {
-    try {
-      InputStream is = context.getAssets().open("bible/en/Verses/bible_verses.json");
-      byte[] buffer = new byte[is.available()];
-      is.read(buffer);
-      is.close();
-      return new String(buffer);
-    } catch (IOException e) {
-      Log.e(TAG, "Error loading default JSON: " + e.getMessage());
-      return "{}";
+  private static void copyAsset(Context context, String path, File target) throws IOException {
+    File temp = new File(target.getPath() + ".tmp");
+    try (InputStream in = context.getAssets().open(path);
+        OutputStream out = new FileOutputStream(temp)) {
+      byte[] buffer = new byte[16 * 1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    }
+    if (!temp.renameTo(target)) {
+      temp.delete();
+      throw new IOException("Could not replace " + target);
     }
   }
 
-  public static int getQuoteCount(String json) {
-    try {
-      JSONObject obj = new JSONObject(json);
-      JSONArray quotes = obj.getJSONArray("all");
-      return quotes.length();
-    } catch (JSONException e) {
-      return 158;
+  private static void rebuildQuoteStore(Context context, String filename, File storeFile) {
+    BibleNotifyDatabase database = BibleNotifyDatabase.get(context);
+    String profileId = database.profileIdForQuoteFile(filename);
+    if (profileId == null) {
+      return;
+    }
+    try (QuoteStore.Writer writer = new QuoteStore.Writer(storeFile)) {
+      int count = database.copyQuotes(profileId, writer);
+      if (count > 0) {
+        writer.commit();
+        AppLog.i(TAG, "Rebuilt %s from %d quotes", storeFile.getName(), count);
+      }
+    } catch (IOException e) {
+      AppLog.e(TAG, "Error rebuilding quote store: %s", e.getMessage());
     }
   }
-}
\ No newline at end of file
+}
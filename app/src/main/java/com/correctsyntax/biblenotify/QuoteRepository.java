@@ -0,0 +1,286 @@
+package com.correctsyntax.biblenotify;
+
+import android.content.Context;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Process-wide cache of open quote libraries and bible packs, so the
+ * receiver, the test button and the reader share warm data instead of
+ * re-reading files.
+ *
+ * Libraries are kept in a small LRU keyed by quote file and language. A
+ * cached library is revalidated on every access by the length and mtime of
+ * its manifest or store; if those moved, only the manifest and the 40 byte
+ * store headers are read to decide whether to reopen.
+ */
+public final class QuoteRepository {
+  private static final String TAG = "QuoteRepository";
+  static final int MAX_STORES = 4;
+
+  private static final QuoteRepository INSTANCE = new QuoteRepository();
+
+  private static class Entry {
+    final File root;
+    final File file;
+    final boolean fallback;
+    final QuoteLibrary library;
+    QuoteClasses classes;
+    SearchIndex[] search;
+    long length;
+    long lastModified;
+
+    Entry(File root, boolean fallback, QuoteLibrary library) {
+      this.root = root;
+      this.file = library.file();
+      this.fallback = fallback;
+      this.library = library;
+      this.length = file.length();
+      this.lastModified = file.lastModified();
+    }
+  }
+
+  private final LinkedHashMap<String, Entry> stores = new LinkedHashMap<>(8, 0.75f, true);
+  private final Map<String, BiblePack> packs = new HashMap<>();
+  private final Map<String, SearchIndex> bibleIndexes = new HashMap<>();
+
+  private QuoteRepository() {}
+
+  public static QuoteRepository get() {
+    return INSTANCE;
+  }
+
+  // Number of quotes for a profile's quote file, 0 if nothing can be loaded
+  public synchronized int count(Context context, String quoteFile, String languagePath) {
+    Entry entry = entry(context, quoteFile, languagePath);
+    return entry != null ? entry.library.count() : 0;
+  }
+
+  // Identifies the library contents, 0 if nothing can be loaded
+  public synchronized long checksum(Context context, String quoteFile, String languagePath) {
+    Entry entry = entry(context, quoteFile, languagePath);
+    return entry != null ? entry.library.checksum() : 0;
+  }
+
+  // What selection state is kept by, unlike the checksum it survives appends
+  public synchronized long selectionKey(Context context, String quoteFile, String languagePath) {
+    Entry entry = entry(context, quoteFile, languagePath);
+    return entry != null ? entry.library.selectionKey() : 0;
+  }
+
+  public synchronized QuoteStore.Record quoteAt(
+      Context context, String quoteFile, String languagePath, int index) throws IOException {
+    Entry entry = entry(context, quoteFile, languagePath);
+    if (entry == null) {
+      throw new IOException("Quote files not found");
+    }
+    return entry.library.get(index);
+  }
+
+  /*
+   * Weight classes of the library. A single store has them as a sidecar,
+   * built on first use for stores that predate them; a library of several
+   * segments has its own next to the manifest, merged from the segments'
+   * sidecars by the import and again here if that did not happen.
+   */
+  public synchronized QuoteClasses classes(Context context, String quoteFile, String languagePath)
+      throws IOException {
+    Entry entry = entry(context, quoteFile, languagePath);
+    if (entry == null) {
+      throw new IOException("Quote files not found");
+    }
+    if (entry.classes == null) {
+      QuoteLibrary library = entry.library;
+      File file =
+          QuoteClasses.fileFor(
+              library.segmentCount() == 1 ? library.segmentFile(0) : library.file());
+      try {
+        entry.classes = QuoteClasses.open(file, library.checksum());
+      } catch (IOException e) {
+        AppLog.i(TAG, "Building quote classes for %s: %s", entry.file.getName(), e.getMessage());
+        if (library.segmentCount() == 1) {
+          QuoteClasses.build(library, file);
+        } else {
+          QuoteClasses.merge(library, file);
+        }
+        entry.classes = QuoteClasses.open(file, library.checksum());
+      }
+    }
+    return entry.classes;
+  }
+
+  /*
+   * Library indices of the quotes of a custom library matching a query, in
+   * order, at most limit of them. Each segment has its own search sidecar.
+   * Null if the profile falls back to the bundled verses.
+   */
+  public synchronized int[] search(
+      Context context, String quoteFile, String languagePath, String query, int limit)
+      throws IOException {
+    Entry entry = entry(context, quoteFile, languagePath);
+    if (entry == null || entry.fallback) {
+      return null;
+    }
+    QuoteLibrary library = entry.library;
+    if (entry.search == null) {
+      entry.search = new SearchIndex[library.segmentCount()];
+    }
+
+    int[] docs = new int[0];
+    for (int i = 0; i < library.segmentCount() && docs.length < limit; i++) {
+      int base = library.base(i);
+      int[] found = searchIndex(entry, i).search(query, limit - docs.length);
+      int start = docs.length;
+      docs = Arrays.copyOf(docs, start + found.length);
+      for (int j = 0; j < found.length; j++) {
+        docs[start + j] = base + found[j];
+      }
+    }
+    return docs;
+  }
+
+  // Search sidecar of one segment, built on first use for stores that predate them
+  private static SearchIndex searchIndex(Entry entry, int segment) throws IOException {
+    if (entry.search[segment] == null) {
+      File segmentFile = entry.library.segmentFile(segment);
+      QuoteStore store = entry.library.segment(segment);
+      File file = SearchIndex.fileFor(segmentFile);
+      try {
+        entry.search[segment] = SearchIndex.open(file, store.checksum());
+      } catch (IOException e) {
+        AppLog.i(TAG, "Building search index for %s: %s", segmentFile.getName(), e.getMessage());
+        SearchIndex.build(store, file);
+        entry.search[segment] = SearchIndex.open(file, store.checksum());
+      }
+    }
+    return entry.search[segment];
+  }
+
+  // Index of the verses of a bible pack, built with the APK
+  public synchronized SearchIndex bibleIndex(Context context, String languagePath)
+      throws IOException {
+    SearchIndex index = bibleIndexes.get(languagePath);
+    if (index == null) {
+      String path = "bible/" + languagePath + "/search.idx";
+      index = SearchIndex.open(BiblePack.map(context.getAssets(), path), path);
+      bibleIndexes.put(languagePath, index);
+    }
+    return index;
+  }
+
+  public synchronized BiblePack biblePack(Context context, String languagePath)
+      throws IOException {
+    BiblePack pack = packs.get(languagePath);
+    if (pack == null) {
+      pack = BiblePack.open(context, languagePath);
+      packs.put(languagePath, pack);
+    }
+    return pack;
+  }
+
+  // Drops every cached library, e.g. after files were replaced behind our back
+  public synchronized void clear() {
+    for (Entry entry : stores.values()) {
+      closeQuietly(entry);
+    }
+    stores.clear();
+  }
+
+  private Entry entry(Context context, String quoteFile, String languagePath) {
+    String key = quoteFile + "|" + languagePath;
+    Entry entry = stores.get(key);
+
+    if (entry != null && !isCurrent(context, entry, quoteFile)) {
+      stores.remove(key);
+      closeQuietly(entry);
+      entry = null;
+    }
+
+    if (entry == null) {
+      entry = load(context, quoteFile, languagePath);
+      if (entry == null) {
+        return null;
+      }
+      stores.put(key, entry);
+      trim();
+    }
+    return entry;
+  }
+
+  private boolean isCurrent(Context context, Entry entry, String quoteFile) {
+    // A library imported since we fell back to the bundled verses takes over
+    if (entry.fallback
+        && quoteFile != null
+        && QuoteLibrary.exists(QuoteParser.customQuoteStoreFile(context, quoteFile))) {
+      return false;
+    }
+    // A store that became a library of segments, or the other way round
+    if (!entry.file.exists() || !entry.file.equals(QuoteLibrary.fileFor(entry.root))) {
+      return false;
+    }
+
+    long length = entry.file.length();
+    long lastModified = entry.file.lastModified();
+    if (length == entry.length && lastModified == entry.lastModified) {
+      return true;
+    }
+
+    try {
+      if (QuoteLibrary.readChecksum(entry.root) == entry.library.checksum()) {
+        entry.length = length;
+        entry.lastModified = lastModified;
+        return true;
+      }
+    } catch (IOException e) {
+      AppLog.w(TAG, "Error reading quote library header: %s", e);
+    }
+    return false;
+  }
+
+  private static Entry load(Context context, String quoteFile, String languagePath) {
+    File file = QuoteParser.quoteStoreFile(context, quoteFile, languagePath);
+    if (file == null) {
+      return null;
+    }
+
+    boolean fallback =
+        quoteFile == null || !file.equals(QuoteParser.customQuoteStoreFile(context, quoteFile));
+    try {
+      return new Entry(file, fallback, QuoteLibrary.open(file));
+    } catch (IOException e) {
+      AppLog.e(TAG, "Error opening quote library %s: %s", file.getName(), e);
+      return null;
+    }
+  }
+
+  private void trim() {
+    Iterator<Entry> iterator = stores.values().iterator();
+    while (stores.size() > MAX_STORES && iterator.hasNext()) {
+      closeQuietly(iterator.next());
+      iterator.remove();
+    }
+  }
+
+  private static void closeQuietly(Entry entry) {
+    try {
+      entry.library.close();
+      if (entry.classes != null) {
+        entry.classes.close();
+      }
+    } catch (IOException e) {
+      AppLog.w(TAG, "Error closing quote library: %s", e);
+    }
+    if (entry.search != null) {
+      for (SearchIndex index : entry.search) {
+        if (index != null) {
+          index.close();
+        }
+      }
+    }
+  }
+}
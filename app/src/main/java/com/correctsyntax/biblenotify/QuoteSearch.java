@@ -0,0 +1,95 @@
+package com.correctsyntax.biblenotify;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Full-text search over the bible of the current language and every
+ * imported library. Both go through a SearchIndex, so a query costs a few
+ * binary searches and postings merges however many quotes there are; only
+ * the verses and quotes that are returned are read.
+ */
+public class QuoteSearch {
+  private static final String TAG = "QuoteSearch";
+  static final int MAX_RESULTS = 200;
+
+  public static class Result {
+    public final String title;
+    public final String text;
+    final String chapterKey; // bible verses only, opens in the reader
+    final int verse;
+
+    Result(String title, String text, String chapterKey, int verse) {
+      this.title = title;
+      this.text = text;
+      this.chapterKey = chapterKey;
+      this.verse = verse;
+    }
+
+    public boolean isVerse() {
+      return chapterKey != null;
+    }
+  }
+
+  // Verses first in canonical order, then each library's quotes in file order
+  public static List<Result> search(Context context, String query, int limit) throws IOException {
+    long startedAt = SystemClock.uptimeMillis();
+    QuoteRepository repository = QuoteRepository.get();
+    String languagePath =
+        LanguagePacks.get(context).resolve(AppSettings.get(context).languagePath());
+    List<Result> results = new ArrayList<>();
+    if (languagePath == null) {
+      return results;
+    }
+
+    BiblePack pack = repository.biblePack(context, languagePath);
+    for (int doc : repository.bibleIndex(context, languagePath).search(query, limit)) {
+      BiblePack.Chapter chapter = pack.chapterOfVerse(doc);
+      if (chapter == null) {
+        continue;
+      }
+      BiblePack.Verse verse = pack.readVerse(chapter, doc);
+      results.add(
+          new Result(
+              chapter.title + ":" + verse.number, plainText(verse.text), chapter.key, verse.number));
+    }
+
+    for (QuoteProfile profile : ProfileManager.get(context).getAllProfiles()) {
+      if (results.size() >= limit) {
+        break;
+      }
+      if (profile.quotesFile == null) {
+        continue;
+      }
+      int[] docs =
+          repository.search(
+              context, profile.quotesFile, languagePath, query, limit - results.size());
+      if (docs == null) {
+        continue;
+      }
+      for (int doc : docs) {
+        QuoteStore.Record quote = repository.quoteAt(context, profile.quotesFile, languagePath, doc);
+        results.add(new Result(profile.name, quote.verse, null, -1));
+      }
+    }
+
+    if (AppLog.isLoggable(Log.DEBUG)) {
+      AppLog.d(
+          TAG,
+          "%d results for \"%s\" in %d ms",
+          results.size(),
+          query,
+          SystemClock.uptimeMillis() - startedAt);
+    }
+    return results;
+  }
+
+  // Verse markup is only <sup>, <i> and the like, a result line shows the words
+  private static String plainText(String markup) {
+    return markup.replaceAll("<[^>]*>", "").replace("&nbsp;", " ").trim();
+  }
+}
@@ -3,7 +3,6 @@ package com.correctsyntax.biblenotify;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 
 import java.util.Objects;
 
@@ -13,8 +12,8 @@ public class RebootReceiver extends BroadcastReceiver {
   public void onReceive(Context context, Intent intent) {
 
     if (Objects.equals(intent.getAction(), "android.intent.action.BOOT_COMPLETED")) {
-      final SharedPreferences sharedPreferences = context.getSharedPreferences("bibleNotify", 0);
-      SetAlarm.startAlarmBroadcastReceiver(context, sharedPreferences);
+      // Keeps the process alive until the alarm is armed
+      SetAlarm.startAlarmBroadcastReceiver(context, goAsync());
     }
   }
 }
@@ -0,0 +1,183 @@
+package com.correctsyntax.biblenotify;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.TextView;
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.constraintlayout.widget.ConstraintLayout;
+import androidx.core.graphics.Insets;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.WindowInsetsCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class SearchActivity extends AppCompatActivity {
+  private static final String TAG = "SearchActivity";
+
+  // Searches as the user types, once they pause
+  static final long TYPING_DELAY_MS = 150;
+
+  private EditText queryText;
+  private TextView emptyText;
+  private ResultAdapter resultAdapter;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+  private final Runnable runSearch = this::search;
+
+  // Results of an older query are dropped when they arrive late
+  private int generation = 0;
+
+  @Override
+  protected void onCreate(Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    setContentView(R.layout.search_activity);
+
+    ConstraintLayout topbar = findViewById(R.id.search_top_bar);
+
+    ViewCompat.setOnApplyWindowInsetsListener(
+        topbar,
+        (v, windowInsets) -> {
+          Insets insets = windowInsets.getInsets(WindowInsetsCompat.Type.systemBars());
+          ViewGroup.MarginLayoutParams mlp = (ViewGroup.MarginLayoutParams) v.getLayoutParams();
+          mlp.topMargin = insets.top;
+          mlp.leftMargin = insets.left;
+          mlp.rightMargin = insets.right;
+          v.setLayoutParams(mlp);
+          return WindowInsetsCompat.CONSUMED;
+        });
+
+    queryText = findViewById(R.id.search_query);
+    emptyText = findViewById(R.id.search_empty);
+    RecyclerView results = findViewById(R.id.search_results);
+    results.setLayoutManager(new LinearLayoutManager(this));
+    resultAdapter = new ResultAdapter();
+    results.setAdapter(resultAdapter);
+
+    queryText.addTextChangedListener(
+        new TextWatcher() {
+          @Override
+          public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+          @Override
+          public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+          @Override
+          public void afterTextChanged(Editable s) {
+            handler.removeCallbacks(runSearch);
+            handler.postDelayed(runSearch, TYPING_DELAY_MS);
+          }
+        });
+  }
+
+  @Override
+  protected void onDestroy() {
+    handler.removeCallbacks(runSearch);
+    searchExecutor.shutdownNow();
+    super.onDestroy();
+  }
+
+  private void search() {
+    final String query = queryText.getText().toString();
+    final int searchGeneration = ++generation;
+    if (query.trim().isEmpty()) {
+      showResults(new ArrayList<>(), false);
+      return;
+    }
+
+    searchExecutor.execute(
+        () -> {
+          List<QuoteSearch.Result> found;
+          try {
+            found = QuoteSearch.search(this, query, QuoteSearch.MAX_RESULTS);
+          } catch (IOException e) {
+            Log.e(TAG, "Search failed: " + e.getMessage());
+            found = new ArrayList<>();
+          }
+          final List<QuoteSearch.Result> results = found;
+          runOnUiThread(
+              () -> {
+                if (searchGeneration == generation && !isDestroyed()) {
+                  showResults(results, true);
+                }
+              });
+        });
+  }
+
+  private void showResults(List<QuoteSearch.Result> results, boolean searched) {
+    resultAdapter.updateResults(results);
+    emptyText.setVisibility(searched && results.isEmpty() ? View.VISIBLE : View.GONE);
+  }
+
+  // Verses open in the reader at that verse, library quotes are shown here
+  private void open(QuoteSearch.Result result) {
+    if (result.isVerse()) {
+      AppSettings.get(this)
+          .edit()
+          .setReaderData(result.chapterKey, String.valueOf(result.verse))
+          .apply();
+      startActivity(new Intent(this, BibleReader.class));
+    } else {
+      new AlertDialog.Builder(this)
+          .setTitle(result.title)
+          .setMessage(result.text)
+          .setPositiveButton(android.R.string.ok, null)
+          .show();
+    }
+  }
+
+  private class ResultAdapter extends RecyclerView.Adapter<ResultAdapter.ResultViewHolder> {
+    private List<QuoteSearch.Result> results = new ArrayList<>();
+
+    void updateResults(List<QuoteSearch.Result> newResults) {
+      this.results = newResults;
+      notifyDataSetChanged();
+    }
+
+    @Override
+    public ResultViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+      View view =
+          LayoutInflater.from(parent.getContext())
+              .inflate(R.layout.search_result_item, parent, false);
+      return new ResultViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ResultViewHolder holder, int position) {
+      QuoteSearch.Result result = results.get(position);
+      holder.title.setText(result.title);
+      holder.text.setText(result.text);
+      holder.itemView.setOnClickListener(v -> open(result));
+    }
+
+    @Override
+    public int getItemCount() {
+      return results.size();
+    }
+
+    class ResultViewHolder extends RecyclerView.ViewHolder {
+      final TextView title;
+      final TextView text;
+
+      ResultViewHolder(View itemView) {
+        super(itemView);
+        title = itemView.findViewById(R.id.result_title);
+        text = itemView.findViewById(R.id.result_text);
+      }
+    }
+  }
+}
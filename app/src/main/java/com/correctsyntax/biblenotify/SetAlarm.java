@@ -2,34 +2,190 @@ package com.correctsyntax.biblenotify;
 
 import android.app.AlarmManager;
 import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Build;
-import android.util.Log;
+import android.os.Handler;
+import android.os.Looper;
 import android.widget.Toast;
-import java.util.Calendar;
-import java.util.Date;
+import java.io.File;
+import java.io.IOException;
 
+/*
+ * Arms a single OS alarm for the head of the AlarmTimeline. The alarm carries
+ * the profile it fires for, and AlarmBroadcastReceiver hands it back through
+ * onAlarmDelivered so only that profile is moved forward. The head's
+ * notification is staged as a NotificationPayload at the same time.
+ *
+ * The timeline itself is kept by an AlarmScheduler, whose sink is arm()
+ * here; persistence, staging and AlarmManager are all this class adds.
+ */
 public class SetAlarm {
   private static final String TAG = "SetAlarm";
 
-  public static int hour = 12;
-  public static int min = 0;
+  static final String EXTRA_PROFILE_ID = "profileId";
+  static final String EXTRA_SCHEDULED_AT = "scheduledAt";
+  static final String EXTRA_EXACT = "exact";
+  static final String TIMELINE_FILE = "alarm_timeline.bin";
 
-  public static void startAlarmBroadcastReceiver(
-      Context context, SharedPreferences sharedPreferences) {
+  // Time of the scheduling path, the receiver and delivery history
+  static final Clock clock = Clock.SYSTEM;
 
-    // get time
-    if (sharedPreferences.contains("SetTimeH")) {
-      min = sharedPreferences.getInt("SetTimeM", 0);
-      hour = sharedPreferences.getInt("SetTimeH", 0);
+  // Kept while the process lives, the timeline file covers cold starts
+  private static AlarmScheduler scheduler;
+
+  private static AlarmScheduler scheduler(Context context) {
+    if (scheduler == null) {
+      final Context appContext = context.getApplicationContext();
+      scheduler = new AlarmScheduler(clock, head -> arm(appContext, head));
+    }
+    return scheduler;
+  }
+
+  /*
+   * Rebuilds the timeline from every enabled profile and arms its head. The
+   * callers are mostly on the main thread and staging does file I/O, so it
+   * all runs on the receiver's worker, in order with deliveries. It starts
+   * once the profile writes queued so far are in the database: the alarm
+   * may fire in a new process, which loads the profiles from there.
+   */
+  public static void startAlarmBroadcastReceiver(Context context) {
+    startAlarmBroadcastReceiver(context, null);
+  }
+
+  // pendingResult, from a receiver's goAsync(), is finished once the alarm is armed
+  static void startAlarmBroadcastReceiver(
+      Context context, BroadcastReceiver.PendingResult pendingResult) {
+    final Context appContext = context.getApplicationContext();
+    Runnable task =
+        () -> {
+          try {
+            rebuild(appContext);
+          } finally {
+            if (pendingResult != null) {
+              pendingResult.finish();
+            }
+          }
+        };
+    ProfileManager.get(appContext)
+        .afterWrites(() -> AlarmBroadcastReceiver.EXECUTOR.execute(task));
+  }
+
+  // Profiles were added or removed, only matters once the app was started
+  public static void onProfilesChanged(Context context) {
+    if (AppSettings.get(context).isStarted()) {
+      startAlarmBroadcastReceiver(context);
+    }
+  }
+
+  private static void rebuild(Context context) {
+    synchronized (SetAlarm.class) {
+      AlarmScheduler scheduler = scheduler(context);
+      AlarmTimeline.Fire head =
+          scheduler.rebuild(ProfileManager.get(context).getEnabledProfiles());
+      AppLog.i(TAG, "Timeline rebuilt with %d profiles", scheduler.timeline().size());
+      save(context);
+      stage(context, head);
+    }
+  }
+
+  // Moves the delivered profile to its next slot and arms the new head
+  public static void onAlarmDelivered(Context context, String profileId) {
+    synchronized (SetAlarm.class) {
+      AlarmScheduler scheduler = scheduler(context);
+      if (scheduler.timeline() == null) {
+        AlarmTimeline loaded = load(context);
+        if (loaded == null) {
+          rebuild(context);
+          return;
+        }
+        scheduler.restore(loaded);
+      }
+
+      QuoteProfile profile = ProfileManager.get(context).getProfile(profileId);
+      scheduler.delivered(profileId, profile);
+      save(context);
+    }
+  }
+
+  // Stages the notification of the current head, called by the receiver after posting
+  public static void stageNext(Context context) {
+    synchronized (SetAlarm.class) {
+      if (scheduler != null && scheduler.head() != null) {
+        stage(context, scheduler.head());
+      }
+    }
+  }
+
+  // Chooses the head's notification now, so the receiver only has to post it
+  private static void stage(Context context, AlarmTimeline.Fire head) {
+    if (head == null) {
+      return;
     }
-    
-    Log.i(TAG, "Setting alarm for " + hour + ":" + String.format("%02d", min));
+    NotificationPayload staged = NotificationPayload.read(context, head.profileId);
+    if (staged != null && staged.scheduledAt == head.time) {
+      return;
+    }
+
+    QuoteProfile profile = ProfileManager.get(context).getProfile(head.profileId);
+    if (profile == null) {
+      return;
+    }
+    try {
+      NotificationPayload payload =
+          NotificationPayload.prepare(context, profile, profile.quotesFile, head.time, true);
+      if (payload != null) {
+        payload.write(context);
+      }
+    } catch (IOException e) {
+      AppLog.e(TAG, "Error staging next notification: %s", e);
+    }
+  }
 
-    // Start Alarm
+  private static AlarmTimeline load(Context context) {
+    File file = new File(context.getFilesDir(), TIMELINE_FILE);
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      return AlarmTimeline.read(file);
+    } catch (IOException e) {
+      AppLog.e(TAG, "Error reading alarm timeline: %s", e);
+      return null;
+    }
+  }
+
+  private static void save(Context context) {
+    try {
+      scheduler.timeline().write(new File(context.getFilesDir(), TIMELINE_FILE));
+    } catch (IOException e) {
+      AppLog.e(TAG, "Error saving alarm timeline: %s", e);
+    }
+  }
+
+  /*
+   * Exact alarms need a permission the user can revoke (Android 12+).
+   * Without it the alarm is set inexact rather than not at all, and the
+   * alarm says so, for DeliveryTelemetry.
+   */
+  private static void arm(Context context, AlarmTimeline.Fire head) {
+    AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+
+    boolean canScheduleExactAlarms;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+      canScheduleExactAlarms = alarmManager.canScheduleExactAlarms();
+    } else {
+      canScheduleExactAlarms = true;
+    }
+
+    // One request code for the whole timeline, so re-arming replaces the old alarm
     Intent _intent = new Intent(context, AlarmBroadcastReceiver.class);
+    if (head != null) {
+      _intent.putExtra(EXTRA_PROFILE_ID, head.profileId);
+      _intent.putExtra(EXTRA_SCHEDULED_AT, head.time);
+      _intent.putExtra(EXTRA_EXACT, canScheduleExactAlarms);
+    }
     PendingIntent pendingIntent;
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
       pendingIntent =
@@ -42,106 +198,39 @@ public class SetAlarm {
       pendingIntent =
           PendingIntent.getBroadcast(context, 0, _intent, PendingIntent.FLAG_UPDATE_CURRENT);
     }
-    AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
 
     alarmManager.cancel(pendingIntent);
-    Calendar calendar = Calendar.getInstance();
-    calendar.set(Calendar.HOUR_OF_DAY, hour);
-    calendar.set(Calendar.MINUTE, min);
-    calendar.set(Calendar.SECOND, 0);
-    calendar.set(Calendar.MILLISECOND, 0);
-
-    // Check active profile and find next valid notification day
-    ProfileManager profileManager = new ProfileManager(context);
-    String activeProfileId = sharedPreferences.getString("currentActiveProfile", null);
-    Calendar nextValidDay = getNextValidNotificationDay(calendar, profileManager, activeProfileId);
-    
-    Log.i(TAG, "Current time: " + Calendar.getInstance().getTime().toString());
-    Log.i(TAG, "Next valid notification: " + nextValidDay.getTime().toString());
-
-    boolean canScheduleExactAlarms;
-    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-      canScheduleExactAlarms = alarmManager.canScheduleExactAlarms();
-    } else {
-      canScheduleExactAlarms = true;
+    if (head == null) {
+      AppLog.w(TAG, "No enabled profile has a selected day, no alarm set");
+      return;
     }
 
+    AppLog.i(TAG, "Next notification at %tc for profile %s", head.time, head.profileId);
+
     // SDK 18 and below
     if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
-      alarmManager.set(AlarmManager.RTC_WAKEUP, nextValidDay.getTimeInMillis(), pendingIntent);
+      alarmManager.set(AlarmManager.RTC_WAKEUP, head.time, pendingIntent);
     }
     // SDK 19 to 22
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
         && Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
-      alarmManager.setExact(AlarmManager.RTC_WAKEUP, nextValidDay.getTimeInMillis(), pendingIntent);
+      alarmManager.setExact(AlarmManager.RTC_WAKEUP, head.time, pendingIntent);
     }
     // SDK 23 +
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
       if (!canScheduleExactAlarms) {
-        Log.e(TAG, "Cannot schedule exact alarms - permission not granted");
-        Toast.makeText(context, "Exact alarm permission not granted. Notifications may be delayed.", Toast.LENGTH_LONG).show();
+        AppLog.e(TAG, "Cannot schedule exact alarms - permission not granted, set inexact");
+        alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, head.time, pendingIntent);
+        // Also reached from the receiver's worker thread
+        new Handler(Looper.getMainLooper())
+            .post(
+                () ->
+                    Toast.makeText(context, R.string.exact_alarm_denied_toast, Toast.LENGTH_LONG)
+                        .show());
         return;
       }
-      alarmManager.setExactAndAllowWhileIdle(
-          AlarmManager.RTC_WAKEUP, nextValidDay.getTimeInMillis(), pendingIntent);
-      Log.i(TAG, "Exact alarm set with setExactAndAllowWhileIdle");
+      alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, head.time, pendingIntent);
+      AppLog.d(TAG, "Exact alarm set with setExactAndAllowWhileIdle");
     }
   }
-
-  // Helper method to find next valid day for notification based on active profile
-  private static Calendar getNextValidNotificationDay(Calendar baseTime, ProfileManager profileManager, String activeProfileId) {
-    Calendar testCalendar = Calendar.getInstance();
-    testCalendar.setTimeInMillis(baseTime.getTimeInMillis());
-    Date now = new Date();
-    
-    // Get the active profile
-    QuoteProfile activeProfile = null;
-    if (activeProfileId != null) {
-      java.util.List<QuoteProfile> allProfiles = profileManager.getAllProfiles();
-      for (QuoteProfile profile : allProfiles) {
-        if (profile.id.equals(activeProfileId)) {
-          activeProfile = profile;
-          break;
-        }
-      }
-    }
-    
-    // If no active profile found, fallback to any enabled profile
-    if (activeProfile == null) {
-      java.util.List<QuoteProfile> enabledProfiles = profileManager.getEnabledProfiles();
-      if (!enabledProfiles.isEmpty()) {
-        activeProfile = enabledProfiles.get(0);
-      }
-    }
-    
-    // If still no profile, return original time
-    if (activeProfile == null) {
-      Log.w(TAG, "No active profile found, using original time");
-      return baseTime;
-    }
-    
-    Log.i(TAG, "Using profile for scheduling: " + activeProfile.name);
-    
-    // If time has passed today, start checking from tomorrow
-    if (testCalendar.getTime().compareTo(now) <= 0) {
-      testCalendar.add(Calendar.DAY_OF_MONTH, 1);
-    }
-    
-    // Check up to 7 days ahead to find a valid day for this specific profile
-    for (int daysAhead = 0; daysAhead < 7; daysAhead++) {
-      int dayOfWeek = testCalendar.get(Calendar.DAY_OF_WEEK);
-      
-      if (activeProfile.isEnabledForDay(dayOfWeek)) {
-        Log.i(TAG, "Found valid notification day: " + testCalendar.getTime().toString() + " for profile: " + activeProfile.name);
-        return testCalendar;
-      }
-      
-      // Move to next day if profile doesn't allow notifications today
-      testCalendar.add(Calendar.DAY_OF_MONTH, 1);
-    }
-    
-    // Fallback: if no valid day found, return the original time (shouldn't happen)
-    Log.w(TAG, "No valid notification day found in next 7 days for profile " + activeProfile.name + ", using original time");
-    return baseTime;
-  }
 }
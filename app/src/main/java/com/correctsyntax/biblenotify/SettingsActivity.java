@@ -1,7 +1,6 @@
 package com.correctsyntax.biblenotify;
 
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Bundle;
 import android.view.ViewGroup;
@@ -18,28 +17,34 @@ import android.widget.TimePicker;
 import android.widget.Toast;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
-import java.io.BufferedReader;
-import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SettingsActivity extends AppCompatActivity {
 
   TimePicker timePicker;
   ImageButton help;
-  Button returnButton, saveButton, importButton, testButton, manageProfilesButton;
+  Button returnButton, saveButton, importButton, testButton, manageProfilesButton, diagnosticsButton;
   Spinner profileSpinner;
   TextView currentFileName, daysToggle;
   LinearLayout daysContainer;
   CheckBox[] dayCheckboxes;
   ProfileManager profileManager;
+  private final ProfileManager.Listener profilesListener = profiles -> refreshProfileSpinner();
   QuoteProfile currentProfile;
   private boolean isImportingFile = false;
+  // Whether the picked file is added to the profile's quotes instead of replacing them
+  private boolean appendImport = false;
   private boolean daysExpanded = false;
 
   public static int hour = 12;
@@ -49,6 +54,7 @@ public class SettingsActivity extends AppCompatActivity {
   public static int minToSet = 0;
 
   private ActivityResultLauncher<Intent> filePickerLauncher;
+  private final ExecutorService importExecutor = Executors.newSingleThreadExecutor();
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -84,6 +90,7 @@ public class SettingsActivity extends AppCompatActivity {
     importButton = findViewById(R.id.import_quotes_button);
     testButton = findViewById(R.id.test_notification_button);
     manageProfilesButton = findViewById(R.id.manage_profiles_button);
+    diagnosticsButton = findViewById(R.id.diagnostics_button);
     profileSpinner = findViewById(R.id.profile_spinner);
     currentFileName = findViewById(R.id.current_file_name);
     daysToggle = findViewById(R.id.days_toggle);
@@ -100,14 +107,12 @@ public class SettingsActivity extends AppCompatActivity {
         findViewById(R.id.cb_saturday)
     };
     
-    profileManager = new ProfileManager(this);
+    profileManager = ProfileManager.get(this);
+    profileManager.addListener(profilesListener);
 
     setupFilePickerLauncher();
     setupProfileSpinner();
 
-    final SharedPreferences sharedPreferences =
-        getApplicationContext().getSharedPreferences("bibleNotify", MODE_PRIVATE);
-
     // Initialize with current profile's time
     loadCurrentProfileSettings();
 
@@ -133,17 +138,14 @@ public class SettingsActivity extends AppCompatActivity {
             
             profileManager.updateProfile(currentProfile);
             
-            // Also update SharedPreferences for alarm system
-            SharedPreferences.Editor editor = sharedPreferences.edit();
-            editor.putInt("SetTimeH", hour);
-            editor.putInt("SetTimeM", min);
-            editor.apply();
-
-            // Pass the current profile to the alarm system
-            editor.putString("currentActiveProfile", currentProfile.id);
-            editor.apply();
-            
-            SetAlarm.startAlarmBroadcastReceiver(SettingsActivity.this, sharedPreferences);
+            // Also pass the time and the current profile to the alarm system
+            AppSettings.get(this)
+                .edit()
+                .setTime(hour, min)
+                .setCurrentActiveProfile(currentProfile.id)
+                .apply();
+
+            SetAlarm.startAlarmBroadcastReceiver(SettingsActivity.this);
 
             Toast.makeText(getApplicationContext(), R.string.time_saved_toast, Toast.LENGTH_SHORT)
                 .show();
@@ -164,7 +166,7 @@ public class SettingsActivity extends AppCompatActivity {
         });
 
     // Import Quotes Button
-    importButton.setOnClickListener(v -> openFilePicker());
+    importButton.setOnClickListener(v -> chooseImportMode());
     
     // Test Notification Button
     testButton.setOnClickListener(v -> testNotificationNow());
@@ -174,6 +176,12 @@ public class SettingsActivity extends AppCompatActivity {
       Intent profileIntent = new Intent(SettingsActivity.this, ProfileManagementActivity.class);
       startActivity(profileIntent);
     });
+
+    // Diagnostics Button
+    diagnosticsButton.setOnClickListener(v -> {
+      Intent diagnosticsIntent = new Intent(SettingsActivity.this, DiagnosticsActivity.class);
+      startActivity(diagnosticsIntent);
+    });
     
     // Days toggle functionality
     daysToggle.setOnClickListener(v -> toggleDaysSection());
@@ -203,6 +211,35 @@ public class SettingsActivity extends AppCompatActivity {
         });
   }
 
+  // A profile with quotes can add a file to them, a new segment instead of a full rewrite
+  private void chooseImportMode() {
+    if (currentProfile == null || currentProfile.quotesFile == null) {
+      appendImport = false;
+      openFilePicker();
+      return;
+    }
+    new AlertDialog.Builder(this)
+        .setTitle("Import quotes")
+        .setMessage(
+            "\""
+                + currentProfile.name
+                + "\" already has quotes. Replace them, or add the new file to them?")
+        .setPositiveButton(
+            "Add to existing",
+            (dialog, which) -> {
+              appendImport = true;
+              openFilePicker();
+            })
+        .setNegativeButton(
+            "Replace",
+            (dialog, which) -> {
+              appendImport = false;
+              openFilePicker();
+            })
+        .setNeutralButton(android.R.string.cancel, null)
+        .show();
+  }
+
   private void openFilePicker() {
     Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
     intent.setType("text/plain");
@@ -237,88 +274,85 @@ public class SettingsActivity extends AppCompatActivity {
       Toast.makeText(this, "Please select a profile first", Toast.LENGTH_SHORT).show();
       return;
     }
-    
+
     isImportingFile = true;
-    try {
-      InputStream inputStream = getContentResolver().openInputStream(uri);
-      BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-      
-      StringBuilder content = new StringBuilder();
-      String line;
-      while ((line = reader.readLine()) != null) {
-        content.append(line).append("\n");
-      }
-      reader.close();
+    final QuoteProfile profile = currentProfile;
+    final String fileName = "quotes_" + profile.id + ".json";
+    final String originalName = getFileName(uri);
+    final boolean append = appendImport && fileName.equals(profile.quotesFile);
 
-      // Use current profile's category
-      List<QuoteParser.Quote> quotes = parseQuotesFromText(content.toString(), currentProfile.category);
-      android.util.Log.i("SettingsActivity", "Parsed " + quotes.size() + " quotes from file");
-      
-      if (!quotes.isEmpty()) {
-        String fileName = "quotes_" + currentProfile.id + ".json";
-        boolean success = QuoteParser.generateQuoteJSON(this, quotes, fileName);
-        android.util.Log.i("SettingsActivity", "JSON generation success: " + success);
-        
-        if (success) {
-          // Save file names to profile
-          String originalName = getFileName(uri);
-          currentProfile.quotesFile = fileName;
-          currentProfile.originalFileName = originalName;
-          profileManager.updateProfile(currentProfile);
-          
-          // Update global preferences for notification system
-          SharedPreferences sharedPreferences = getSharedPreferences("bibleNotify", MODE_PRIVATE);
-          SharedPreferences.Editor editor = sharedPreferences.edit();
-          editor.putString("currentQuoteFile", fileName);
-          editor.putInt("totalQuotes", quotes.size());
-          editor.putInt("currentVerseNumber", 0); // Reset counter for new quotes
-          editor.apply();
-          
-          // Update file name display
-          updateFileNameDisplay();
-          
-          android.util.Log.i("SettingsActivity", "Saved " + quotes.size() + " quotes to profile " + currentProfile.name);
-          Toast.makeText(this, "Imported " + quotes.size() + " quotes to \"" + currentProfile.name + "\" successfully!", 
-                        Toast.LENGTH_LONG).show();
-          isImportingFile = false;
-        } else {
-          Toast.makeText(this, "Failed to import quotes", Toast.LENGTH_SHORT).show();
-        }
-      } else {
-        Toast.makeText(this, "No valid quotes found in file", Toast.LENGTH_SHORT).show();
-      }
-      
-    } catch (Exception e) {
-      Toast.makeText(this, "Error importing file: " + e.getMessage(), 
-                    Toast.LENGTH_SHORT).show();
-      isImportingFile = false;
-    }
+    // Large files are streamed off the UI thread straight into the quote files
+    importExecutor.execute(
+        () -> {
+          int imported;
+          int total;
+          try (Reader reader =
+              new InputStreamReader(
+                  getContentResolver().openInputStream(uri), StandardCharsets.UTF_8)) {
+            imported =
+                QuoteParser.importQuotes(
+                    this, reader, profile.id, profile.category, fileName, append);
+            total =
+                append && imported > 0
+                    ? QuoteRepository.get()
+                        .count(this, fileName, AppSettings.get(this).languagePath())
+                    : imported;
+          } catch (Exception e) {
+            runOnUiThread(
+                () -> {
+                  Toast.makeText(this, "Error importing file: " + e.getMessage(), Toast.LENGTH_SHORT)
+                      .show();
+                  isImportingFile = false;
+                });
+            return;
+          }
+          android.util.Log.i("SettingsActivity", "Imported " + imported + " quotes from file");
+
+          final int count = imported;
+          final int totalCount = total;
+          runOnUiThread(
+              () -> onQuotesImported(profile, fileName, originalName, append, count, totalCount));
+        });
   }
 
-  private List<QuoteParser.Quote> parseQuotesFromText(String text, String category) {
-    List<QuoteParser.Quote> quotes = new java.util.ArrayList<>();
-    String[] lines = text.split("\n");
-    
-    for (String line : lines) {
-      line = line.trim();
-      if (!line.isEmpty()) {
-        String cleanedQuote = cleanQuoteText(line);
-        if (!cleanedQuote.isEmpty()) {
-          quotes.add(new QuoteParser.Quote(cleanedQuote, category));
-        }
-      }
+  private void onQuotesImported(
+      QuoteProfile profile,
+      String fileName,
+      String originalName,
+      boolean append,
+      int count,
+      int total) {
+    isImportingFile = false;
+    if (count < 0) {
+      Toast.makeText(this, "Failed to import quotes", Toast.LENGTH_SHORT).show();
+      return;
     }
-    
-    return quotes;
-  }
+    if (count == 0) {
+      Toast.makeText(this, "No valid quotes found in file", Toast.LENGTH_SHORT).show();
+      return;
+    }
+
+    // Save file names to profile
+    profile.quotesFile = fileName;
+    profile.originalFileName =
+        append && profile.originalFileName != null && !profile.originalFileName.isEmpty()
+            ? profile.originalFileName + ", " + originalName
+            : originalName;
+    profileManager.updateProfile(profile);
+    NotificationPayload.discard(this, profile.id);
 
-  private String cleanQuoteText(String text) {
-    text = text.trim();
-    text = text.replaceAll("^\\d+\\.\\s*", "");
-    text = text.replaceAll("^\\d+\\s*", "");
-    text = text.replaceAll("^-\\s*", "");
-    text = text.replaceAll("^•\\s*", "");
-    return text.trim();
+    // Update global preferences for notification system
+    AppSettings.get(this).edit().setCurrentQuoteFile(fileName).setTotalQuotes(total).apply();
+
+    // Update file name display
+    updateFileNameDisplay();
+
+    android.util.Log.i("SettingsActivity", "Saved " + count + " quotes to profile " + profile.name);
+    String message =
+        append
+            ? "Added " + count + " quotes to \"" + profile.name + "\", " + total + " in all"
+            : "Imported " + count + " quotes to \"" + profile.name + "\" successfully!";
+    Toast.makeText(this, message, Toast.LENGTH_LONG).show();
   }
 
   private void testNotificationNow() {
@@ -363,7 +397,7 @@ public class SettingsActivity extends AppCompatActivity {
       @Override
       public void onItemSelected(AdapterView<?> parent, android.view.View view, int position, long id) {
         if (position < finalProfiles.size()) {
-          currentProfile = finalProfiles.get(position);
+          currentProfile = finalProfiles.get(position).copy();
           loadProfileSettings();
         }
       }
@@ -376,7 +410,7 @@ public class SettingsActivity extends AppCompatActivity {
     
     // Select first profile by default
     if (!finalProfiles.isEmpty()) {
-      currentProfile = finalProfiles.get(0);
+      currentProfile = finalProfiles.get(0).copy();
       profileSpinner.setSelection(0);
     }
   }
@@ -416,10 +450,7 @@ public class SettingsActivity extends AppCompatActivity {
     updateDaysCheckboxes();
     
     // Update global settings for notification system
-    SharedPreferences sharedPreferences = getSharedPreferences("bibleNotify", MODE_PRIVATE);
-    SharedPreferences.Editor editor = sharedPreferences.edit();
-    editor.putString("currentQuoteFile", currentProfile.quotesFile);
-    editor.apply();
+    AppSettings.get(this).edit().setCurrentQuoteFile(currentProfile.quotesFile).apply();
   }
   
   private void updateFileNameDisplay() {
@@ -433,26 +464,32 @@ public class SettingsActivity extends AppCompatActivity {
   }
   
   @Override
-  protected void onResume() {
-    super.onResume();
+  protected void onDestroy() {
+    super.onDestroy();
+    profileManager.removeListener(profilesListener);
+    importExecutor.shutdown();
+  }
+
+  // Profiles were added, removed or saved, here or in ProfileManagementActivity
+  private void refreshProfileSpinner() {
     // Don't reset profile during file import
     if (isImportingFile) {
       return;
     }
     
-    // Refresh profile list in case profiles were added/removed, but preserve selection
-    String selectedProfileName = null;
+    // Refresh profile list, but preserve selection
+    String selectedProfileId = null;
     if (currentProfile != null) {
-      selectedProfileName = currentProfile.name;
+      selectedProfileId = currentProfile.id;
     }
     
     setupProfileSpinner();
     
     // Restore selection if possible
-    if (selectedProfileName != null) {
-      ArrayAdapter<String> adapter = (ArrayAdapter<String>) profileSpinner.getAdapter();
-      for (int i = 0; i < adapter.getCount(); i++) {
-        if (adapter.getItem(i).equals(selectedProfileName)) {
+    if (selectedProfileId != null) {
+      List<QuoteProfile> profiles = profileManager.getAllProfiles();
+      for (int i = 0; i < profiles.size(); i++) {
+        if (profiles.get(i).id.equals(selectedProfileId)) {
           profileSpinner.setSelection(i);
           break;
         }
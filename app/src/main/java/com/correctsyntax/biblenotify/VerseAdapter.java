@@ -0,0 +1,106 @@
+package com.correctsyntax.biblenotify;
+
+import android.graphics.Typeface;
+import android.os.Build;
+import android.text.Html;
+import android.text.Spannable;
+import android.text.SpannableStringBuilder;
+import android.text.style.RelativeSizeSpan;
+import android.text.style.StyleSpan;
+import android.text.style.SuperscriptSpan;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.content.ContextCompat;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.RecyclerView;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Verses of the native reader. Each verse is turned into a Spannable once,
+ * off the main thread, and text layout is precomputed on a worker when an
+ * item is bound. The highlighted verse is an item position, so it only
+ * changes the color and weight of one row.
+ */
+public class VerseAdapter extends RecyclerView.Adapter<VerseAdapter.VerseViewHolder> {
+  private static final ExecutorService LAYOUT_EXECUTOR = Executors.newSingleThreadExecutor();
+
+  private final List<CharSequence> verses;
+  private final int highlighted;
+
+  public VerseAdapter(List<CharSequence> verses, int highlighted) {
+    this.verses = verses;
+    this.highlighted = highlighted;
+  }
+
+  // "<p><sup>N</sup> text</p>" paragraphs to "N text" with a bold superscript number
+  public static List<CharSequence> spans(List<BiblePack.Verse> verses) {
+    List<CharSequence> spans = new ArrayList<>(verses.size());
+    for (BiblePack.Verse verse : verses) {
+      SpannableStringBuilder text = new SpannableStringBuilder();
+      String number = String.valueOf(verse.number);
+      text.append(number);
+      text.setSpan(new SuperscriptSpan(), 0, number.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+      text.setSpan(new RelativeSizeSpan(0.75f), 0, number.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+      text.setSpan(
+          new StyleSpan(Typeface.BOLD), 0, number.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+      text.append(" ");
+      text.append(body(verse.text.trim()));
+      spans.add(text);
+    }
+    return spans;
+  }
+
+  // Most verses are plain text, only those with markup or entities go through Html
+  @SuppressWarnings("deprecation")
+  private static CharSequence body(String markup) {
+    if (markup.indexOf('<') < 0 && markup.indexOf('&') < 0) {
+      return markup;
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+      return Html.fromHtml(markup, Html.FROM_HTML_MODE_LEGACY);
+    }
+    return Html.fromHtml(markup);
+  }
+
+  @Override
+  public VerseViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+    View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.verse_item, parent, false);
+    return new VerseViewHolder(view);
+  }
+
+  @Override
+  public void onBindViewHolder(VerseViewHolder holder, int position) {
+    // Colors are resolved on every bind so a theme change only needs a rebind
+    boolean isHighlighted = position == highlighted;
+    holder.text.setTextColor(
+        ContextCompat.getColor(
+            holder.itemView.getContext(), isHighlighted ? R.color.mode_black : R.color.reader_text));
+    holder.text.setTypeface(isHighlighted ? Typeface.DEFAULT_BOLD : Typeface.DEFAULT);
+
+    holder.text.setTextFuture(
+        PrecomputedTextCompat.getTextFuture(
+            verses.get(position),
+            TextViewCompat.getTextMetricsParams(holder.text),
+            LAYOUT_EXECUTOR));
+  }
+
+  @Override
+  public int getItemCount() {
+    return verses.size();
+  }
+
+  static class VerseViewHolder extends RecyclerView.ViewHolder {
+    final AppCompatTextView text;
+
+    VerseViewHolder(View itemView) {
+      super(itemView);
+      text = itemView.findViewById(R.id.verse_text);
+    }
+  }
+}
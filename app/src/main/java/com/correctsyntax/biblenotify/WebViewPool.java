@@ -0,0 +1,137 @@
+package com.correctsyntax.biblenotify;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.WebView;
+
+/*
+ * Holds one WebView created ahead of time, so BibleReader does not pay for
+ * WebView provider initialization when it is opened from a notification.
+ *
+ * The view is built on the main thread while it is idle, on a
+ * MutableContextWrapper around the application context; adopt() points the
+ * wrapper at the activity. Nothing is warmed on low-RAM devices or while
+ * the system reports low memory, and the pooled view is dropped when the
+ * system asks the app to trim memory.
+ */
+public final class WebViewPool {
+  private static final String TAG = "WebViewPool";
+
+  private static WebView pooled;
+  private static boolean warmUpQueued = false;
+  private static boolean callbacksRegistered = false;
+
+  private WebViewPool() {}
+
+  // Safe from any thread, the view itself is created on the main thread when it goes idle
+  public static void warmUp(Context context) {
+    // The native reader never uses a WebView
+    if (AppSettings.get(context).isNativeReader()) {
+      return;
+    }
+    final Context appContext = context.getApplicationContext();
+    new Handler(Looper.getMainLooper())
+        .post(
+            () -> {
+              if (pooled != null || warmUpQueued || isMemoryLow(appContext)) {
+                return;
+              }
+              warmUpQueued = true;
+              registerCallbacks(appContext);
+              Looper.myQueue()
+                  .addIdleHandler(
+                      () -> {
+                        warmUpQueued = false;
+                        create(appContext);
+                        return false;
+                      });
+            });
+  }
+
+  // Main thread only; returns null when nothing is pooled
+  public static WebView adopt(Context activity) {
+    WebView view = pooled;
+    if (view == null) {
+      return null;
+    }
+    pooled = null;
+    ((MutableContextWrapper) view.getContext()).setBaseContext(activity);
+    return view;
+  }
+
+  // Main thread only
+  public static void release() {
+    if (pooled != null) {
+      pooled.destroy();
+      pooled = null;
+      Log.i(TAG, "Pooled WebView released");
+    }
+  }
+
+  // Recorded by BibleReader from onCreate to the first shown text: "warm", "cold" or "native"
+  public static void recordTimeToText(long millis, String renderer) {
+    Log.i(TAG, "Reader time to text " + millis + "ms (" + renderer + ")");
+  }
+
+  private static void create(Context appContext) {
+    if (pooled != null || isMemoryLow(appContext)) {
+      return;
+    }
+    long start = SystemClock.uptimeMillis();
+    try {
+      WebView view = new WebView(new MutableContextWrapper(appContext));
+      view.getSettings().setJavaScriptEnabled(true);
+      pooled = view;
+      Log.i(TAG, "WebView warmed up in " + (SystemClock.uptimeMillis() - start) + "ms");
+    } catch (RuntimeException e) {
+      // WebView can be missing or updating, the reader then builds its own
+      Log.w(TAG, "WebView warm-up failed: " + e);
+    }
+  }
+
+  private static boolean isMemoryLow(Context context) {
+    ActivityManager activityManager =
+        (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+    if (activityManager == null) {
+      return true;
+    }
+    if (activityManager.isLowRamDevice()) {
+      return true;
+    }
+    ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+    activityManager.getMemoryInfo(memoryInfo);
+    return memoryInfo.lowMemory;
+  }
+
+  private static void registerCallbacks(Context appContext) {
+    if (callbacksRegistered) {
+      return;
+    }
+    callbacksRegistered = true;
+    appContext.registerComponentCallbacks(
+        new ComponentCallbacks2() {
+          @Override
+          public void onTrimMemory(int level) {
+            // UI_HIDDEN only means the app went to the background, where the pool is meant to wait
+            if (level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+              release();
+            }
+          }
+
+          @Override
+          public void onLowMemory() {
+            release();
+          }
+
+          @Override
+          public void onConfigurationChanged(Configuration newConfig) {}
+        });
+  }
+}
@@ -0,0 +1,79 @@
+package com.correctsyntax.biblenotify;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Import throughput. Each operation imports a whole file; the lines counter
+ * turns that into lines per second, and the gc profiler's
+ * gc.alloc.rate.norm is the bytes allocated per import.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ImportBenchmark {
+  @Param({"158", "10000", "100000", "1000000"})
+  int size;
+
+  private String text;
+  private File dir;
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Lines {
+    public long lines;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      lines = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    text = QuoteFixtures.text(size, size);
+    dir = QuoteFixtures.tempDir();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    QuoteFixtures.delete(dir);
+  }
+
+  // Splitting and cleaning lines only
+  @Benchmark
+  public int parse(Lines lines, Blackhole blackhole) throws IOException {
+    int count = QuoteImporter.run(new StringReader(text), blackhole::consume);
+    lines.lines += count;
+    return count;
+  }
+
+  // What an import writes: the store with its class and search sidecars
+  @Benchmark
+  public int importStore(Lines lines) throws IOException {
+    File target = new File(dir, "import.bin");
+    try (QuoteStore.Writer writer = new QuoteStore.Writer(target)) {
+      int count =
+          QuoteImporter.run(
+              new StringReader(text),
+              quote -> writer.add(quote, "General", "custom/" + writer.count()));
+      writer.commit();
+      lines.lines += count;
+      return count;
+    }
+  }
+}
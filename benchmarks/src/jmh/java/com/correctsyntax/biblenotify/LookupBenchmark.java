@@ -0,0 +1,64 @@
+package com.correctsyntax.biblenotify;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Reading one quote by index, the cost paid for every notification
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LookupBenchmark {
+  @Param({"158", "10000", "100000", "1000000"})
+  int size;
+
+  private File dir;
+  private QuoteStore store;
+  private QuoteLibrary library;
+  private final SplittableRandom random = new SplittableRandom(42);
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = QuoteFixtures.tempDir();
+    store = QuoteStore.open(QuoteFixtures.store(dir, "store.bin", size));
+    library =
+        QuoteLibrary.open(
+            QuoteFixtures.library(dir, "library.bin", size, QuoteLibrary.COMPACT_SEGMENTS));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    store.close();
+    library.close();
+    QuoteFixtures.delete(dir);
+  }
+
+  @Benchmark
+  public QuoteStore.Record store() throws IOException {
+    return store.get(random.nextInt(size));
+  }
+
+  // The same through the segments of a library grown by appends
+  @Benchmark
+  public QuoteStore.Record library() throws IOException {
+    return library.get(random.nextInt(library.count()));
+  }
+
+  @Benchmark
+  public QuoteStore open() throws IOException {
+    try (QuoteStore opened = QuoteStore.open(new File(dir, "store.bin"))) {
+      return opened;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package com.correctsyntax.biblenotify;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Random;
+
+/*
+ * Generated libraries for the benchmarks. The same size and seed always give
+ * the same quotes: lines of 3 to 60 words, a few of them with list prefixes
+ * or blank, spread over a handful of categories like real imports.
+ */
+final class QuoteFixtures {
+  static final String[] CATEGORIES = {"General", "Hope", "Faith", "Love", "Wisdom", "Peace"};
+
+  private static final String[] WORDS = {
+    "the", "lord", "is", "my", "shepherd", "light", "grace", "and", "peace", "be", "with",
+    "you", "love", "never", "fails", "faith", "hope", "wisdom", "heart", "strength", "joy",
+    "patient", "kind", "truth", "path", "walk", "rest", "word", "spirit", "mercy", "Éternel",
+    "l'amour", "espérance", "lumière"
+  };
+
+  private QuoteFixtures() {}
+
+  // One quote per line, as a user would import them
+  static String text(int count, long seed) {
+    Random random = new Random(seed);
+    StringBuilder text = new StringBuilder(count * 120);
+    for (int i = 0; i < count; i++) {
+      switch (random.nextInt(20)) {
+        case 0:
+          text.append(i + 1).append(". ");
+          break;
+        case 1:
+          text.append("- ");
+          break;
+        case 2:
+          text.append('\n');
+          break;
+        default:
+          break;
+      }
+      int words = 3 + random.nextInt(58);
+      for (int w = 0; w < words; w++) {
+        if (w > 0) {
+          text.append(' ');
+        }
+        text.append(WORDS[random.nextInt(WORDS.length)]);
+      }
+      text.append('\n');
+    }
+    return text.toString();
+  }
+
+  static String category(int index) {
+    return CATEGORIES[index % CATEGORIES.length];
+  }
+
+  // Imports count generated quotes into a store with its sidecars, like QuoteParser does
+  static File store(File dir, String name, int count) throws IOException {
+    File target = new File(dir, name);
+    try (QuoteStore.Writer writer = new QuoteStore.Writer(target)) {
+      QuoteImporter.run(
+          new StringReader(text(count, count)),
+          quote -> writer.add(quote, category(writer.count()), "custom/" + writer.count()));
+      writer.commit();
+    }
+    return target;
+  }
+
+  // A library of segments appended one after the other, before any compaction
+  static File library(File dir, String name, int count, int segments) throws IOException {
+    File root = new File(dir, name);
+    for (int s = 0; s < segments; s++) {
+      int size = count / segments + (s < count % segments ? 1 : 0);
+      try (QuoteLibrary.Writer writer =
+          s == 0 ? QuoteLibrary.replace(root) : QuoteLibrary.append(root)) {
+        QuoteImporter.run(
+            new StringReader(text(size, s)),
+            quote ->
+                writer.add(
+                    quote, category(writer.nextIndex()), "custom/" + writer.nextIndex()));
+        writer.commit();
+      }
+    }
+    return root;
+  }
+
+  static File tempDir() throws IOException {
+    return Files.createTempDirectory("biblenotify-bench").toFile();
+  }
+
+  static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,75 @@
+package com.correctsyntax.biblenotify;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Next-fire computation, run after every delivery and whenever profiles change
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScheduleBenchmark {
+  @Param({"1", "10", "100"})
+  int profiles;
+
+  // 2024-01-01 00:00 UTC, a Monday
+  private static final long START = 1704067200000L;
+  private static final TimeZone ZONE = TimeZone.getTimeZone("Europe/Paris");
+
+  private List<QuoteProfile> profileList;
+  private Map<String, QuoteProfile> byId;
+  private QuoteProfile weekendProfile;
+  private AlarmTimeline timeline;
+  private long now;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    profileList = new ArrayList<>(profiles);
+    byId = new HashMap<>();
+    for (int i = 0; i < profiles; i++) {
+      QuoteProfile profile = new QuoteProfile("p" + i, "Profile " + i, "General", i % 24, i % 60);
+      // Every other profile skips a few days, so the day search has work to do
+      if (i % 2 == 1) {
+        profile.selectedDays = new boolean[] {false, true, false, true, false, true, false};
+      }
+      profileList.add(profile);
+      byId.put(profile.id, profile);
+    }
+    weekendProfile = new QuoteProfile("weekend", "Weekend", "General", 9, 30);
+    weekendProfile.selectedDays = new boolean[] {true, false, false, false, false, false, true};
+    timeline = AlarmTimeline.build(profileList, START, ZONE);
+    now = START;
+  }
+
+  // Worst case of the day search, five days skipped
+  @Benchmark
+  public long nextFireTime() {
+    return weekendProfile.nextFireTime(START, ZONE);
+  }
+
+  @Benchmark
+  public AlarmTimeline rebuild() {
+    return AlarmTimeline.build(profileList, START, ZONE);
+  }
+
+  // One delivery: the head moves to its next slot
+  @Benchmark
+  public AlarmTimeline.Fire deliver() {
+    AlarmTimeline.Fire head = timeline.peek();
+    now = head.time;
+    timeline.advance(head.profileId, byId.get(head.profileId), now, ZONE);
+    return timeline.peek();
+  }
+}
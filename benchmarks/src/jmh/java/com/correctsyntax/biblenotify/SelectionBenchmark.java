@@ -0,0 +1,84 @@
+package com.correctsyntax.biblenotify;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Picking the next quote with each selection mode of a profile
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SelectionBenchmark {
+  @Param({"158", "10000", "100000", "1000000"})
+  int size;
+
+  private File dir;
+  private File shuffleFile;
+  private File sequentialFile;
+  private long checksum;
+  private QuoteClasses classes;
+  private QuoteProfile profile;
+  private WeightedSelection.FavoriteSource favorites;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = QuoteFixtures.tempDir();
+    File storeFile = QuoteFixtures.store(dir, "store.bin", size);
+    checksum = QuoteStore.readChecksum(storeFile);
+    classes = QuoteClasses.open(QuoteClasses.fileFor(storeFile), checksum);
+    shuffleFile = new File(dir, "shuffle.bag");
+    sequentialFile = new File(dir, "sequential.bag");
+
+    profile = new QuoteProfile("bench", "Bench", "General", 8, 0);
+    profile.selectionMode = QuoteProfile.SELECTION_WEIGHTED;
+    profile.categoryWeights.put("Hope", 3);
+    profile.categoryWeights.put("Peace", 0);
+    profile.shortWeight = 2;
+
+    final int[] favoriteIndices = {0, size / 2, size - 1};
+    favorites =
+        new WeightedSelection.FavoriteSource() {
+          @Override
+          public long version(String profileId) {
+            return 1;
+          }
+
+          @Override
+          public int[] load(String profileId, long selectionKey) {
+            return favoriteIndices;
+          }
+        };
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    classes.close();
+    QuoteFixtures.delete(dir);
+  }
+
+  @Benchmark
+  public int shuffle() throws IOException {
+    return ShuffleBag.next(shuffleFile, size, checksum, ShuffleBag.MODE_SHUFFLE);
+  }
+
+  @Benchmark
+  public int sequential() throws IOException {
+    return ShuffleBag.next(sequentialFile, size, checksum, ShuffleBag.MODE_SEQUENTIAL);
+  }
+
+  // Cached alias table, what every pick after the first costs
+  @Benchmark
+  public int weighted() throws IOException {
+    return WeightedSelection.next(favorites, profile, classes, checksum);
+  }
+}
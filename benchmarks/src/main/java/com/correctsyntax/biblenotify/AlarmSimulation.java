@@ -0,0 +1,308 @@
+package com.correctsyntax.biblenotify;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+/*
+ * Replays the scheduling path against a simulated clock: N profiles with
+ * random day masks and times of day, a year or more of alarms, in a few
+ * milliseconds of wall time. Runs the AlarmScheduler that SetAlarm uses,
+ * with the OS alarm replaced by a recording sink that always delivers on
+ * time, and checks every delivery against a calendar worked out
+ * independently with java.time:
+ *
+ *   missed      a selected day of a profile without a notification
+ *   duplicate   more than one notification for a profile on one day
+ *   unexpected  a notification on a day the profile did not select
+ *   off time    a notification not at the profile's time of day (a time
+ *               that does not exist on a DST day moves forward by the gap)
+ *
+ * Every few simulated days the process "dies": the timeline is written to
+ * disk and read back into a new scheduler, as after a cold start.
+ *
+ *   ./gradlew :benchmarks:simulateAlarms -Psimulation.args="--profiles 50 --days 730"
+ *
+ * Exits with status 1 when any check fails.
+ */
+public final class AlarmSimulation {
+  static final long DAY = 24L * 60 * 60 * 1000;
+
+  // Moved by the harness only
+  static class SimulatedClock implements Clock {
+    long now;
+    final TimeZone zone;
+
+    SimulatedClock(long now, TimeZone zone) {
+      this.now = now;
+      this.zone = zone;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+      return now;
+    }
+
+    @Override
+    public TimeZone timeZone() {
+      return zone;
+    }
+  }
+
+  // The single OS alarm: arming replaces it
+  static class RecordingSink implements AlarmScheduler.AlarmSink {
+    AlarmTimeline.Fire armed;
+    int armCount;
+
+    @Override
+    public void arm(AlarmTimeline.Fire head) {
+      armed = head;
+      armCount++;
+    }
+  }
+
+  public static class Report {
+    int profiles;
+    int days;
+    String zone;
+    int deliveries;
+    int wakeups;
+    int alarmsArmed;
+    int reschedules;
+    long rescheduleNanos;
+    long maxRescheduleNanos;
+    int restarts;
+    int expected;
+    int missed;
+    int duplicate;
+    int unexpected;
+    int offTime;
+    double wallMillis;
+
+    public boolean passed() {
+      return missed == 0 && duplicate == 0 && unexpected == 0 && offTime == 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ROOT,
+          "%d profiles, %d days in %s%n"
+              + "  deliveries   %d of %d expected (%d wakeups, %d alarms armed, %d restarts)%n"
+              + "  reschedule   %.2f us mean, %.2f us max over %d%n"
+              + "  missed %d, duplicate %d, unexpected %d, off time %d%n"
+              + "  wall time    %.1f ms%n",
+          profiles,
+          days,
+          zone,
+          deliveries,
+          expected,
+          wakeups,
+          alarmsArmed,
+          restarts,
+          reschedules > 0 ? rescheduleNanos / 1000.0 / reschedules : 0,
+          maxRescheduleNanos / 1000.0,
+          reschedules,
+          missed,
+          duplicate,
+          unexpected,
+          offTime,
+          wallMillis);
+    }
+  }
+
+  private AlarmSimulation() {}
+
+  // Random times of day and day masks; every tenth profile at 02:30 to land in DST gaps
+  static List<QuoteProfile> randomProfiles(int count, long seed) {
+    Random random = new Random(seed);
+    List<QuoteProfile> profiles = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int hour = i % 10 == 0 ? 2 : random.nextInt(24);
+      int minute = i % 10 == 0 ? 30 : random.nextInt(4) * 15;
+      QuoteProfile profile = new QuoteProfile("p" + i, "Profile " + i, "General", hour, minute);
+      for (int day = 0; day < 7; day++) {
+        profile.selectedDays[day] = random.nextInt(3) > 0;
+      }
+      profiles.add(profile);
+    }
+    return profiles;
+  }
+
+  public static Report run(
+      List<QuoteProfile> profiles, LocalDate startDate, int days, ZoneId zoneId, int restartDays)
+      throws IOException {
+    long startedAt = System.nanoTime();
+    TimeZone zone = TimeZone.getTimeZone(zoneId);
+    long start = startDate.atStartOfDay(zoneId).toInstant().toEpochMilli();
+    long end = startDate.plusDays(days).atStartOfDay(zoneId).toInstant().toEpochMilli();
+
+    Map<String, QuoteProfile> byId = new HashMap<>();
+    for (QuoteProfile profile : profiles) {
+      byId.put(profile.id, profile);
+    }
+
+    Report report = new Report();
+    report.profiles = profiles.size();
+    report.days = days;
+    report.zone = zoneId.getId();
+
+    // Just before the first day, so a profile at midnight fires on it too
+    SimulatedClock clock = new SimulatedClock(start - 1, zone);
+    RecordingSink sink = new RecordingSink();
+    AlarmScheduler scheduler = new AlarmScheduler(clock, sink);
+    scheduler.rebuild(profiles);
+
+    File dir = Files.createTempDirectory("alarm-simulation").toFile();
+    File timelineFile = new File(dir, "alarm_timeline.bin");
+    Map<String, Integer> delivered = new HashMap<>();
+    long nextRestart = restartDays > 0 ? start + restartDays * DAY : Long.MAX_VALUE;
+    long lastWakeup = Long.MIN_VALUE;
+    // A scheduler that stops moving forward would loop forever
+    int maxDeliveries = profiles.size() * (days + 1) + 1;
+
+    try {
+      while (sink.armed != null && sink.armed.time < end) {
+        if (report.deliveries >= maxDeliveries) {
+          throw new IllegalStateException("Timeline is not advancing at " + sink.armed.time);
+        }
+        AlarmTimeline.Fire fire = sink.armed;
+
+        // Cold start between deliveries, the armed alarm survives it
+        if (fire.time >= nextRestart) {
+          clock.now = Math.max(clock.now, nextRestart);
+          scheduler.timeline().write(timelineFile);
+          scheduler = new AlarmScheduler(clock, sink);
+          scheduler.restore(AlarmTimeline.read(timelineFile));
+          nextRestart += restartDays * DAY;
+          report.restarts++;
+        }
+
+        // Delivered at its time, or straight away if it was due already
+        clock.now = Math.max(clock.now, fire.time);
+        report.deliveries++;
+        if (fire.time != lastWakeup) {
+          report.wakeups++;
+          lastWakeup = fire.time;
+        }
+        check(report, byId.get(fire.profileId), fire.time, zoneId, delivered);
+
+        long before = System.nanoTime();
+        scheduler.delivered(fire.profileId, byId.get(fire.profileId));
+        long cost = System.nanoTime() - before;
+        report.reschedules++;
+        report.rescheduleNanos += cost;
+        report.maxRescheduleNanos = Math.max(report.maxRescheduleNanos, cost);
+      }
+    } finally {
+      timelineFile.delete();
+      new File(timelineFile.getPath() + ".tmp").delete();
+      dir.delete();
+    }
+
+    // Every selected day in the window should have had exactly one notification
+    for (QuoteProfile profile : profiles) {
+      for (int d = 0; d < days; d++) {
+        LocalDate date = startDate.plusDays(d);
+        if (!isSelected(profile, date)) {
+          continue;
+        }
+        report.expected++;
+        Integer count = delivered.get(profile.id + "|" + date);
+        if (count == null) {
+          report.missed++;
+        } else if (count > 1) {
+          report.duplicate += count - 1;
+        }
+      }
+    }
+
+    report.alarmsArmed = sink.armCount;
+    report.wallMillis = (System.nanoTime() - startedAt) / 1e6;
+    return report;
+  }
+
+  private static void check(
+      Report report,
+      QuoteProfile profile,
+      long time,
+      ZoneId zoneId,
+      Map<String, Integer> delivered) {
+    LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), zoneId);
+    LocalDate date = local.toLocalDate();
+    if (!isSelected(profile, date)) {
+      report.unexpected++;
+      return;
+    }
+    // Compared as local times, so either instant of a time repeated by DST is fine
+    LocalDateTime wanted =
+        ZonedDateTime.of(date, LocalTime.of(profile.hour, profile.minute), zoneId)
+            .toLocalDateTime();
+    if (!local.equals(wanted)) {
+      report.offTime++;
+    }
+    String key = profile.id + "|" + date;
+    Integer count = delivered.get(key);
+    delivered.put(key, count == null ? 1 : count + 1);
+  }
+
+  // selectedDays runs Sunday to Saturday
+  private static boolean isSelected(QuoteProfile profile, LocalDate date) {
+    return profile.enabled && profile.selectedDays[date.getDayOfWeek().getValue() % 7];
+  }
+
+  public static void main(String[] args) throws IOException {
+    int profiles = 20;
+    int days = 366;
+    long seed = 1;
+    int restartDays = 7;
+    String zone = "Europe/Paris";
+    LocalDate start = LocalDate.of(2024, 1, 1);
+
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--profiles":
+          profiles = Integer.parseInt(value);
+          break;
+        case "--days":
+          days = Integer.parseInt(value);
+          break;
+        case "--seed":
+          seed = Long.parseLong(value);
+          break;
+        case "--restart-days":
+          restartDays = Integer.parseInt(value);
+          break;
+        case "--zone":
+          zone = value;
+          break;
+        case "--start":
+          start = LocalDate.parse(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+
+    Report report =
+        run(randomProfiles(profiles, seed), start, days, ZoneId.of(zone), restartDays);
+    System.out.print(report);
+    if (!report.passed()) {
+      System.exit(1);
+    }
+  }
+}
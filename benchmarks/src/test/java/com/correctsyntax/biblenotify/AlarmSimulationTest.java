@@ -0,0 +1,57 @@
+package com.correctsyntax.biblenotify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class AlarmSimulationTest {
+  // Both DST changes, every tenth profile at 02:30 on the skipped and repeated hour
+  private static AlarmSimulation.Report year(String zone, LocalDate start, int restartDays)
+      throws IOException {
+    List<QuoteProfile> profiles = AlarmSimulation.randomProfiles(50, 7);
+    AlarmSimulation.Report report =
+        AlarmSimulation.run(profiles, start, 366, ZoneId.of(zone), restartDays);
+    assertEquals(report.toString(), 0, report.missed);
+    assertEquals(report.toString(), 0, report.duplicate);
+    assertTrue(report.toString(), report.passed());
+    assertEquals(report.expected, report.deliveries);
+    return report;
+  }
+
+  @Test
+  public void yearInParis() throws IOException {
+    AlarmSimulation.Report report = year("Europe/Paris", LocalDate.of(2024, 1, 1), 7);
+    assertTrue(report.restarts > 0);
+  }
+
+  @Test
+  public void yearInNewYorkAcrossNewYear() throws IOException {
+    year("America/New_York", LocalDate.of(2024, 7, 1), 3);
+  }
+
+  // A half-hour DST shift, and a year with no restarts at all
+  @Test
+  public void yearOnLordHowe() throws IOException {
+    AlarmSimulation.Report report = year("Australia/Lord_Howe", LocalDate.of(2024, 1, 1), 0);
+    assertEquals(0, report.restarts);
+  }
+
+  // Every day selected, all profiles in the Paris gap on 2024-03-31
+  @Test
+  public void everyProfileInTheGap() throws IOException {
+    QuoteProfile a = new QuoteProfile("a", "a", "General", 2, 0);
+    QuoteProfile b = new QuoteProfile("b", "b", "General", 2, 30);
+    QuoteProfile c = new QuoteProfile("c", "c", "General", 2, 59);
+    AlarmSimulation.Report report =
+        AlarmSimulation.run(
+            Arrays.asList(a, b, c), LocalDate.of(2024, 3, 30), 3, ZoneId.of("Europe/Paris"), 1);
+    assertTrue(report.toString(), report.passed());
+    assertEquals(9, report.deliveries);
+  }
+}
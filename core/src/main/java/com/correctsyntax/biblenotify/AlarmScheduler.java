@@ -0,0 +1,63 @@
+package com.correctsyntax.biblenotify;
+
+import java.util.List;
+
+/*
+ * The scheduling path without Android: keeps the AlarmTimeline of the
+ * enabled profiles and hands its head to an AlarmSink whenever it changes.
+ * Time comes from a Clock, so the same code arms AlarmManager on the device
+ * (SetAlarm) and a recorded alarm in the simulation harness.
+ */
+public class AlarmScheduler {
+  public interface AlarmSink {
+    // Replaces the one armed alarm, head is null when nothing is scheduled
+    void arm(AlarmTimeline.Fire head);
+  }
+
+  private final Clock clock;
+  private final AlarmSink sink;
+  private AlarmTimeline timeline;
+
+  public AlarmScheduler(Clock clock, AlarmSink sink) {
+    this.clock = clock;
+    this.sink = sink;
+  }
+
+  public Clock clock() {
+    return clock;
+  }
+
+  // Null until rebuilt or restored
+  public synchronized AlarmTimeline timeline() {
+    return timeline;
+  }
+
+  public synchronized AlarmTimeline.Fire head() {
+    return timeline != null ? timeline.peek() : null;
+  }
+
+  // Full rebuild from every enabled profile, arms the new head
+  public synchronized AlarmTimeline.Fire rebuild(List<QuoteProfile> enabledProfiles) {
+    timeline =
+        AlarmTimeline.build(enabledProfiles, clock.currentTimeMillis(), clock.timeZone());
+    AlarmTimeline.Fire head = timeline.peek();
+    sink.arm(head);
+    return head;
+  }
+
+  // A timeline read back after the process died, its head is already armed
+  public synchronized void restore(AlarmTimeline restored) {
+    timeline = restored;
+  }
+
+  // Moves the delivered profile to its next slot and arms the new head
+  public synchronized AlarmTimeline.Fire delivered(String profileId, QuoteProfile profile) {
+    if (timeline == null) {
+      throw new IllegalStateException("No timeline to advance");
+    }
+    timeline.advance(profileId, profile, clock.currentTimeMillis(), clock.timeZone());
+    AlarmTimeline.Fire head = timeline.peek();
+    sink.arm(head);
+    return head;
+  }
+}
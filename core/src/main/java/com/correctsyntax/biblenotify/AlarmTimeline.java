@@ -0,0 +1,142 @@
+package com.correctsyntax.biblenotify;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TimeZone;
+
+/*
+ * Upcoming fires of every enabled profile, ordered by a min-heap on fire time.
+ *
+ * Only the head is ever armed with AlarmManager. After a delivery just that
+ * profile is moved to its next slot (O(log n)), so one wakeup is spent per
+ * notification however many profiles exist. Profiles due at the same minute
+ * come out one after the other: the next head is already in the past and
+ * fires straight away.
+ */
+public class AlarmTimeline {
+  static final int MAGIC = 0x454E544C; // "ENTL"
+  static final int VERSION = 1;
+
+  public static class Fire implements Comparable<Fire> {
+    public final long time;
+    public final String profileId;
+
+    public Fire(long time, String profileId) {
+      this.time = time;
+      this.profileId = profileId;
+    }
+
+    @Override
+    public int compareTo(Fire other) {
+      if (time != other.time) {
+        return time < other.time ? -1 : 1;
+      }
+      return profileId.compareTo(other.profileId);
+    }
+  }
+
+  private final PriorityQueue<Fire> heap;
+
+  private AlarmTimeline(int capacity) {
+    heap = new PriorityQueue<>(Math.max(1, capacity));
+  }
+
+  // Full rebuild, used when profiles were edited, after boot and on first start
+  public static AlarmTimeline build(List<QuoteProfile> profiles, long now, TimeZone zone) {
+    AlarmTimeline timeline = new AlarmTimeline(profiles.size());
+    for (QuoteProfile profile : profiles) {
+      timeline.schedule(profile, now, zone);
+    }
+    return timeline;
+  }
+
+  public Fire peek() {
+    return heap.peek();
+  }
+
+  public int size() {
+    return heap.size();
+  }
+
+  /*
+   * Moves a profile to its next fire after now. The delivered profile is
+   * normally the head, so this is a poll and an offer; anything else
+   * (a profile that was edited or removed meanwhile) falls back to a scan.
+   */
+  public void advance(String profileId, QuoteProfile profile, long now, TimeZone zone) {
+    Fire head = heap.peek();
+    if (head != null && head.profileId.equals(profileId)) {
+      heap.poll();
+    } else {
+      remove(profileId);
+    }
+    if (profile != null && profile.enabled) {
+      schedule(profile, now, zone);
+    }
+  }
+
+  public void remove(String profileId) {
+    Iterator<Fire> iterator = heap.iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().profileId.equals(profileId)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private void schedule(QuoteProfile profile, long now, TimeZone zone) {
+    long next = profile.nextFireTime(now, zone);
+    if (next > 0) {
+      heap.offer(new Fire(next, profile.id));
+    }
+  }
+
+  // Written in heap array order, read() offers the entries back in
+  public void write(File target) throws IOException {
+    File temp = new File(target.getPath() + ".tmp");
+    try (FileOutputStream fos = new FileOutputStream(temp)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(heap.size());
+      for (Fire fire : heap) {
+        out.writeLong(fire.time);
+        out.writeUTF(fire.profileId);
+      }
+      out.flush();
+      fos.getFD().sync();
+    }
+    if (!temp.renameTo(target)) {
+      temp.delete();
+      throw new IOException("Could not replace " + target);
+    }
+  }
+
+  public static AlarmTimeline read(File source) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(source)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not an alarm timeline");
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported alarm timeline version " + version);
+      }
+      int size = in.readInt();
+      AlarmTimeline timeline = new AlarmTimeline(size);
+      for (int i = 0; i < size; i++) {
+        timeline.heap.offer(new Fire(in.readLong(), in.readUTF()));
+      }
+      return timeline;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.correctsyntax.biblenotify;
+
+import java.util.Random;
+
+/*
+ * Vose's alias method: O(n) to build from a list of weights, then every
+ * sample is one uniform column plus one biased coin flip.
+ */
+public class AliasTable {
+  private final double[] probability;
+  private final int[] alias;
+
+  public AliasTable(double[] weights) {
+    int n = weights.length;
+    double total = 0;
+    for (double weight : weights) {
+      if (weight < 0 || Double.isNaN(weight) || Double.isInfinite(weight)) {
+        throw new IllegalArgumentException("Invalid weight " + weight);
+      }
+      total += weight;
+    }
+    if (n == 0 || total <= 0) {
+      throw new IllegalArgumentException("No positive weight");
+    }
+
+    probability = new double[n];
+    alias = new int[n];
+
+    // Scaled so the average column is exactly 1
+    double[] scaled = new double[n];
+    int[] small = new int[n];
+    int[] large = new int[n];
+    int smallCount = 0;
+    int largeCount = 0;
+    for (int i = 0; i < n; i++) {
+      scaled[i] = weights[i] * n / total;
+      if (scaled[i] < 1) {
+        small[smallCount++] = i;
+      } else {
+        large[largeCount++] = i;
+      }
+    }
+
+    while (smallCount > 0 && largeCount > 0) {
+      int less = small[--smallCount];
+      int more = large[--largeCount];
+      probability[less] = scaled[less];
+      alias[less] = more;
+
+      scaled[more] = (scaled[more] + scaled[less]) - 1;
+      if (scaled[more] < 1) {
+        small[smallCount++] = more;
+      } else {
+        large[largeCount++] = more;
+      }
+    }
+
+    // Leftovers are 1 up to rounding error
+    while (largeCount > 0) {
+      probability[large[--largeCount]] = 1;
+    }
+    while (smallCount > 0) {
+      probability[small[--smallCount]] = 1;
+    }
+  }
+
+  public int size() {
+    return probability.length;
+  }
+
+  public int sample(Random random) {
+    int column = random.nextInt(probability.length);
+    return random.nextDouble() < probability[column] ? column : alias[column];
+  }
+}
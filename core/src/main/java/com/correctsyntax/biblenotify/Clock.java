@@ -0,0 +1,28 @@
+package com.correctsyntax.biblenotify;
+
+import java.util.TimeZone;
+
+/*
+ * Where the scheduling path gets the time from. SYSTEM on the device; the
+ * simulation harness moves a clock of its own, so a year of alarms replays
+ * without waiting and in any time zone.
+ */
+public interface Clock {
+  Clock SYSTEM =
+      new Clock() {
+        @Override
+        public long currentTimeMillis() {
+          return System.currentTimeMillis();
+        }
+
+        @Override
+        public TimeZone timeZone() {
+          return TimeZone.getDefault();
+        }
+      };
+
+  long currentTimeMillis();
+
+  // Zone that profile times of day are in
+  TimeZone timeZone();
+}
@@ -0,0 +1,224 @@
+package com.correctsyntax.biblenotify;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * How alarm deliveries went, in a ring of fixed-size records: one small
+ * file that never grows, the oldest record is overwritten once it is full.
+ *
+ * Layout (big endian):
+ *   header   magic, version, capacity, next, count
+ *   records  capacity slots: scheduledAt, firedAt, queueMs, payloadMs,
+ *            rescheduleMs, notifyMs, stageMs, flags
+ *
+ * firedAt - scheduledAt is how late the OS delivered the alarm. The stages
+ * are measured from onReceive: waiting for the worker, getting the
+ * notification (staged or picked on the spot), re-arming the next alarm,
+ * posting, and staging the next notification. A delivery costs a write of
+ * its slot and one of the header.
+ */
+public class DeliveryTelemetry {
+  static final int MAGIC = 0x454E4454; // "ENDT"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 20;
+  static final int RECORD_SIZE = 40;
+  static final int CAPACITY = 1024;
+
+  // The alarm was exact; inexact when the exact alarm permission was missing
+  public static final int FLAG_EXACT = 1;
+  public static final int FLAG_INEXACT = 1 << 1;
+  // The notification was staged when the alarm was armed, or picked on the spot
+  public static final int FLAG_STAGED = 1 << 2;
+  public static final int FLAG_PREPARED = 1 << 3;
+  // Nothing was posted, e.g. no quotes could be loaded
+  public static final int FLAG_NOT_POSTED = 1 << 4;
+  // Out of time, the next notification was left for its own alarm to pick
+  public static final int FLAG_NOT_STAGED = 1 << 5;
+
+  public static class Record {
+    public final long scheduledAt;
+    public final long firedAt;
+    public final int queueMs;
+    public final int payloadMs;
+    public final int rescheduleMs;
+    public final int notifyMs;
+    public final int stageMs;
+    public final int flags;
+
+    public Record(
+        long scheduledAt,
+        long firedAt,
+        int queueMs,
+        int payloadMs,
+        int rescheduleMs,
+        int notifyMs,
+        int stageMs,
+        int flags) {
+      this.scheduledAt = scheduledAt;
+      this.firedAt = firedAt;
+      this.queueMs = queueMs;
+      this.payloadMs = payloadMs;
+      this.rescheduleMs = rescheduleMs;
+      this.notifyMs = notifyMs;
+      this.stageMs = stageMs;
+      this.flags = flags;
+    }
+
+    // How late the alarm arrived
+    public long driftMs() {
+      return firedAt - scheduledAt;
+    }
+
+    // From wakeup until the notification was posted
+    public long wakeupToNotifyMs() {
+      return (long) queueMs + payloadMs + rescheduleMs + notifyMs;
+    }
+
+    public boolean has(int flag) {
+      return (flags & flag) != 0;
+    }
+  }
+
+  private DeliveryTelemetry() {}
+
+  public static synchronized void append(File file, Record record) throws IOException {
+    File parent = file.getParentFile();
+    if (parent != null) {
+      parent.mkdirs();
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      int next = 0;
+      int count = 0;
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      if (raf.length() >= HEADER_SIZE) {
+        raf.readFully(header.array());
+        if (header.getInt(0) == MAGIC
+            && header.getInt(4) == VERSION
+            && header.getInt(8) == CAPACITY) {
+          next = header.getInt(12);
+          count = header.getInt(16);
+        }
+      }
+
+      ByteBuffer slot = ByteBuffer.allocate(RECORD_SIZE);
+      slot.putLong(record.scheduledAt);
+      slot.putLong(record.firedAt);
+      slot.putInt(record.queueMs);
+      slot.putInt(record.payloadMs);
+      slot.putInt(record.rescheduleMs);
+      slot.putInt(record.notifyMs);
+      slot.putInt(record.stageMs);
+      slot.putInt(record.flags);
+      raf.seek(HEADER_SIZE + (long) next * RECORD_SIZE);
+      raf.write(slot.array());
+
+      header.clear();
+      header.putInt(MAGIC);
+      header.putInt(VERSION);
+      header.putInt(CAPACITY);
+      header.putInt((next + 1) % CAPACITY);
+      header.putInt(Math.min(count + 1, CAPACITY));
+      raf.seek(0);
+      raf.write(header.array());
+    }
+  }
+
+  // Oldest first, empty if nothing was recorded yet
+  public static synchronized List<Record> read(File file) throws IOException {
+    List<Record> records = new ArrayList<>();
+    if (!file.exists()) {
+      return records;
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      if (raf.length() < HEADER_SIZE) {
+        return records;
+      }
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      raf.readFully(header.array());
+      if (header.getInt(0) != MAGIC
+          || header.getInt(4) != VERSION
+          || header.getInt(8) != CAPACITY) {
+        return records;
+      }
+      int next = header.getInt(12);
+      int count = header.getInt(16);
+
+      byte[] slots = new byte[count * RECORD_SIZE];
+      raf.readFully(slots);
+      ByteBuffer in = ByteBuffer.wrap(slots);
+      int first = count < CAPACITY ? 0 : next;
+      for (int i = 0; i < count; i++) {
+        in.position(((first + i) % CAPACITY) * RECORD_SIZE);
+        records.add(
+            new Record(
+                in.getLong(),
+                in.getLong(),
+                in.getInt(),
+                in.getInt(),
+                in.getInt(),
+                in.getInt(),
+                in.getInt(),
+                in.getInt()));
+      }
+    }
+    return records;
+  }
+
+  public static synchronized void clear(File file) {
+    file.delete();
+  }
+
+  // Nearest-rank percentiles of the values, p between 0 and 100; 0 for no values
+  public static long[] percentiles(long[] values, double... p) {
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    long[] result = new long[p.length];
+    for (int i = 0; i < p.length && sorted.length > 0; i++) {
+      int rank = (int) Math.ceil(p[i] / 100 * sorted.length);
+      result[i] = sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+    return result;
+  }
+
+  public static void writeCsv(List<Record> records, Writer out) throws IOException {
+    out.write(
+        "scheduled_at,fired_at,drift_ms,queue_ms,payload_ms,reschedule_ms,notify_ms,"
+            + "stage_ms,wakeup_to_notify_ms,exact,staged,posted,next_staged\n");
+    for (Record record : records) {
+      out.write(
+          record.scheduledAt
+              + ","
+              + record.firedAt
+              + ","
+              + record.driftMs()
+              + ","
+              + record.queueMs
+              + ","
+              + record.payloadMs
+              + ","
+              + record.rescheduleMs
+              + ","
+              + record.notifyMs
+              + ","
+              + record.stageMs
+              + ","
+              + record.wakeupToNotifyMs()
+              + ","
+              + (record.has(FLAG_EXACT) ? 1 : 0)
+              + ","
+              + (record.has(FLAG_STAGED) ? 1 : 0)
+              + ","
+              + (record.has(FLAG_NOT_POSTED) ? 0 : 1)
+              + ","
+              + (record.has(FLAG_NOT_STAGED) ? 0 : 1)
+              + "\n");
+    }
+  }
+}
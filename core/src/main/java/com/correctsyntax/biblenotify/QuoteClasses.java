@@ -0,0 +1,435 @@
+package com.correctsyntax.biblenotify;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Sidecar of a quote store (<store>.cls) grouping its records into weight
+ * classes, one per category and length bucket. Weighted selection draws a
+ * class first and then a uniform member, so changing weights never touches
+ * the per-quote lists.
+ *
+ * Layout (big endian):
+ *   header   magic, version, storeChecksum, classCount, membersOffset
+ *   classes  per class: category, short, size, first member
+ *   members  record indices (ints), grouped by class
+ */
+public class QuoteClasses implements Closeable {
+  static final int MAGIC = 0x454E5143; // "ENQC"
+  static final int VERSION = 1;
+
+  // Short enough to read on a watch without expanding the notification
+  static final int SHORT_QUOTE_LENGTH = 120;
+
+  // Categories beyond this share one class, keeps the builder's buffers bounded
+  static final int MAX_CLASSES = 256;
+  static final String OTHER_CATEGORY = "Other";
+
+  private static final int COPY_INTS = 1024;
+
+  public static class QuoteClass {
+    public final String category;
+    public final boolean isShort;
+    public final int size;
+    final int firstMember;
+
+    QuoteClass(String category, boolean isShort, int size, int firstMember) {
+      this.category = category;
+      this.isShort = isShort;
+      this.size = size;
+      this.firstMember = firstMember;
+    }
+  }
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final long storeChecksum;
+  private final long membersOffset;
+  private final List<QuoteClass> classes;
+
+  private QuoteClasses(
+      RandomAccessFile file, long storeChecksum, long membersOffset, List<QuoteClass> classes) {
+    this.file = file;
+    this.channel = file.getChannel();
+    this.storeChecksum = storeChecksum;
+    this.membersOffset = membersOffset;
+    this.classes = Collections.unmodifiableList(classes);
+  }
+
+  public static File fileFor(File storeFile) {
+    return new File(storeFile.getPath() + ".cls");
+  }
+
+  // Custom imports are one category each, bundled verses are grouped by book
+  static String categoryOf(String place, String data) {
+    if (data != null && !data.startsWith("custom/")) {
+      int slash = data.indexOf('/');
+      if (slash > 0) {
+        return data.substring(0, slash);
+      }
+    }
+    return place != null ? place : "";
+  }
+
+  static boolean isShort(String verse) {
+    return verse == null || verse.length() <= SHORT_QUOTE_LENGTH;
+  }
+
+  // Opens the sidecar, failing if it was built for a different store
+  public static QuoteClasses open(File source, long expectedChecksum) throws IOException {
+    long membersOffset;
+    List<QuoteClass> classes;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(source)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a quote class index");
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported quote class index version " + version);
+      }
+      if (in.readLong() != expectedChecksum) {
+        throw new IOException("Quote class index is out of date");
+      }
+      int classCount = in.readInt();
+      membersOffset = in.readLong();
+
+      classes = new ArrayList<>(classCount);
+      for (int i = 0; i < classCount; i++) {
+        classes.add(new QuoteClass(in.readUTF(), in.readBoolean(), in.readInt(), in.readInt()));
+      }
+    }
+    return new QuoteClasses(
+        new RandomAccessFile(source, "r"), expectedChecksum, membersOffset, classes);
+  }
+
+  // Scans an existing library once, for stores written before the sidecar existed
+  public static void build(QuoteLibrary library, File target) throws IOException {
+    try (Builder builder = new Builder(target)) {
+      for (int i = 0; i < library.count(); i++) {
+        QuoteStore.Record record = library.get(i);
+        builder.add(record.verse, record.place, record.data);
+      }
+      builder.commit(library.checksum());
+    }
+  }
+
+  public static void build(QuoteStore store, File target) throws IOException {
+    try (Builder builder = new Builder(target)) {
+      for (int i = 0; i < store.count(); i++) {
+        QuoteStore.Record record = store.get(i);
+        builder.add(record.verse, record.place, record.data);
+      }
+      builder.commit(store.checksum());
+    }
+  }
+
+  /*
+   * Classes of a library of several segments, from the sidecars its
+   * segments already have: classes with the same category and length are
+   * joined and their members copied in segment order, shifted to library
+   * indices. No quote is read, except for segments without a sidecar.
+   */
+  public static void merge(QuoteLibrary library, File target) throws IOException {
+    List<QuoteClasses> parts = new ArrayList<>(library.segmentCount());
+    File temp = new File(target.getPath() + ".tmp");
+    try {
+      for (int i = 0; i < library.segmentCount(); i++) {
+        parts.add(segmentClasses(library.segment(i), library.segmentFile(i)));
+      }
+
+      Map<String, Integer> classIds = new HashMap<>();
+      List<String> categories = new ArrayList<>();
+      List<Boolean> shortFlags = new ArrayList<>();
+      List<Integer> sizes = new ArrayList<>();
+      int[][] mergedIds = new int[parts.size()][];
+      for (int part = 0; part < parts.size(); part++) {
+        List<QuoteClass> partClasses = parts.get(part).classes;
+        mergedIds[part] = new int[partClasses.size()];
+        for (int i = 0; i < partClasses.size(); i++) {
+          QuoteClass quoteClass = partClasses.get(i);
+          String category = quoteClass.category;
+          String key = (quoteClass.isShort ? "s:" : "l:") + category;
+          Integer id = classIds.get(key);
+          if (id == null) {
+            if (classIds.size() >= MAX_CLASSES - 2) {
+              category = OTHER_CATEGORY;
+              key = (quoteClass.isShort ? "s:" : "l:") + category;
+              id = classIds.get(key);
+            }
+            if (id == null) {
+              id = categories.size();
+              classIds.put(key, id);
+              categories.add(category);
+              shortFlags.add(quoteClass.isShort);
+              sizes.add(0);
+            }
+          }
+          sizes.set(id, sizes.get(id) + quoteClass.size);
+          mergedIds[part][i] = id;
+        }
+      }
+
+      byte[] header = header(library.checksum(), categories, shortFlags, sizes);
+      try (FileOutputStream fos = new FileOutputStream(temp)) {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 16 * 1024));
+        out.write(header);
+        for (int id = 0; id < categories.size(); id++) {
+          for (int part = 0; part < parts.size(); part++) {
+            for (int i = 0; i < mergedIds[part].length; i++) {
+              if (mergedIds[part][i] == id) {
+                QuoteClasses source = parts.get(part);
+                source.copyMembers(source.classes.get(i), library.base(part), out);
+              }
+            }
+          }
+        }
+        out.flush();
+        fos.getFD().sync();
+      }
+    } catch (IOException | RuntimeException e) {
+      temp.delete();
+      throw e;
+    } finally {
+      for (QuoteClasses part : parts) {
+        part.close();
+      }
+    }
+
+    if (!temp.renameTo(target)) {
+      temp.delete();
+      throw new IOException("Could not replace " + target);
+    }
+  }
+
+  private static QuoteClasses segmentClasses(QuoteStore segment, File segmentFile)
+      throws IOException {
+    File file = fileFor(segmentFile);
+    try {
+      return open(file, segment.checksum());
+    } catch (IOException e) {
+      build(segment, file);
+      return open(file, segment.checksum());
+    }
+  }
+
+  public List<QuoteClass> classes() {
+    return classes;
+  }
+
+  public long storeChecksum() {
+    return storeChecksum;
+  }
+
+  // Record index of the i-th member of a class, one positional read
+  public int member(QuoteClass quoteClass, int i) throws IOException {
+    if (i < 0 || i >= quoteClass.size) {
+      throw new IndexOutOfBoundsException("Member " + i + " of " + quoteClass.size);
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(4);
+    long position = membersOffset + 4L * (quoteClass.firstMember + i);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+    buffer.flip();
+    return buffer.getInt();
+  }
+
+  // Writes a class's members shifted by base, read in chunks
+  private void copyMembers(QuoteClass quoteClass, int base, DataOutputStream out)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(4 * COPY_INTS);
+    long position = membersOffset + 4L * quoteClass.firstMember;
+    int left = quoteClass.size;
+    while (left > 0) {
+      buffer.clear();
+      buffer.limit(4 * Math.min(left, COPY_INTS));
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) < 0) {
+          throw new EOFException();
+        }
+      }
+      buffer.flip();
+      position += buffer.remaining();
+      left -= buffer.remaining() / 4;
+      while (buffer.hasRemaining()) {
+        out.writeInt(base + buffer.getInt());
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  // Header and class table, members follow right after it
+  private static byte[] header(
+      long storeChecksum, List<String> categories, List<Boolean> shortFlags, List<Integer> sizes)
+      throws IOException {
+    ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+    DataOutputStream header = new DataOutputStream(headerBytes);
+    header.writeInt(MAGIC);
+    header.writeInt(VERSION);
+    header.writeLong(storeChecksum);
+    header.writeInt(categories.size());
+    header.writeLong(0); // members offset, patched below
+    int firstMember = 0;
+    for (int i = 0; i < categories.size(); i++) {
+      header.writeUTF(categories.get(i));
+      header.writeBoolean(shortFlags.get(i));
+      header.writeInt(sizes.get(i));
+      header.writeInt(firstMember);
+      firstMember += sizes.get(i);
+    }
+    header.close();
+    byte[] headerArray = headerBytes.toByteArray();
+    ByteBuffer.wrap(headerArray, 20, 8).putLong(headerArray.length);
+    return headerArray;
+  }
+
+  /*
+   * Two passes: add() streams each record's class id to a side file, and
+   * commit() sorts them into per-class member runs through small per-class
+   * buffers, so memory does not grow with the number of quotes.
+   */
+  public static class Builder implements Closeable {
+    private static final int BUFFER_INTS = 1024;
+
+    private final File target;
+    private final File temp;
+    private final File idsTemp;
+    private final DataOutputStream ids;
+    private final Map<String, Integer> classIds = new HashMap<>();
+    private final List<String> categories = new ArrayList<>();
+    private final List<Boolean> shortFlags = new ArrayList<>();
+    private final List<Integer> sizes = new ArrayList<>();
+    private int count = 0;
+    private boolean done = false;
+
+    public Builder(File target) throws IOException {
+      this.target = target;
+      this.temp = new File(target.getPath() + ".tmp");
+      this.idsTemp = new File(target.getPath() + ".ids.tmp");
+      this.ids =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(idsTemp), 16 * 1024));
+    }
+
+    public void add(String verse, String place, String data) throws IOException {
+      String category = categoryOf(place, data);
+      boolean isShort = isShort(verse);
+      String key = (isShort ? "s:" : "l:") + category;
+
+      Integer id = classIds.get(key);
+      if (id == null) {
+        if (classIds.size() >= MAX_CLASSES - 2) {
+          category = OTHER_CATEGORY;
+          key = (isShort ? "s:" : "l:") + category;
+          id = classIds.get(key);
+        }
+        if (id == null) {
+          id = categories.size();
+          classIds.put(key, id);
+          categories.add(category);
+          shortFlags.add(isShort);
+          sizes.add(0);
+        }
+      }
+      sizes.set(id, sizes.get(id) + 1);
+      ids.writeInt(id);
+      count++;
+    }
+
+    public void commit(long storeChecksum) throws IOException {
+      ids.close();
+      int classCount = categories.size();
+
+      int[] firstMember = new int[classCount];
+      int next = 0;
+      for (int i = 0; i < classCount; i++) {
+        firstMember[i] = next;
+        next += sizes.get(i);
+      }
+      byte[] headerArray = header(storeChecksum, categories, shortFlags, sizes);
+      long membersOffset = headerArray.length;
+
+      try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+        raf.setLength(membersOffset + 4L * count);
+        raf.write(headerArray);
+
+        int[] nextSlot = firstMember.clone();
+        ByteBuffer[] buffers = new ByteBuffer[classCount];
+        try (DataInputStream in =
+            new DataInputStream(new BufferedInputStream(new FileInputStream(idsTemp), 16 * 1024))) {
+          for (int record = 0; record < count; record++) {
+            int id = in.readInt();
+            if (buffers[id] == null) {
+              buffers[id] = ByteBuffer.allocate(4 * Math.min(BUFFER_INTS, sizes.get(id)));
+            }
+            buffers[id].putInt(record);
+            if (!buffers[id].hasRemaining()) {
+              nextSlot[id] = flush(raf, membersOffset, nextSlot[id], buffers[id]);
+            }
+          }
+        }
+        for (int id = 0; id < classCount; id++) {
+          if (buffers[id] != null && buffers[id].position() > 0) {
+            flush(raf, membersOffset, nextSlot[id], buffers[id]);
+          }
+        }
+        raf.getFD().sync();
+      }
+
+      idsTemp.delete();
+      if (!temp.renameTo(target)) {
+        temp.delete();
+        throw new IOException("Could not replace " + target);
+      }
+      done = true;
+    }
+
+    // Writes a full or final buffer at the class's next slot, returns the new slot
+    private static int flush(RandomAccessFile raf, long membersOffset, int slot, ByteBuffer buffer)
+        throws IOException {
+      buffer.flip();
+      int ints = buffer.remaining() / 4;
+      raf.seek(membersOffset + 4L * slot);
+      raf.write(buffer.array(), 0, buffer.remaining());
+      buffer.clear();
+      return slot + ints;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (done) {
+        return;
+      }
+      done = true;
+      try {
+        ids.close();
+      } finally {
+        idsTemp.delete();
+        temp.delete();
+      }
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package com.correctsyntax.biblenotify;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/*
+ * Streaming text-to-quote stage shared by every import path.
+ *
+ * Input is read in fixed-size chunks and split into lines by hand, list
+ * prefixes ("1.", "12", "-", "•") are stripped without regexes and every
+ * quote goes straight to a Sink. Nothing but the current line is held in
+ * memory, and lines longer than MAX_LINE_LENGTH are cut; a Truncation
+ * listener hears about each one.
+ */
+public class QuoteImporter {
+  static final int CHUNK_SIZE = 8 * 1024;
+  static final int MAX_LINE_LENGTH = 16 * 1024;
+
+  public interface Sink {
+    void accept(String quote) throws IOException;
+  }
+
+  // Told the full length of every line cut to MAX_LINE_LENGTH
+  public interface Truncation {
+    void truncated(int length);
+  }
+
+  // Returns the number of quotes handed to the sink
+  public static int run(Reader reader, Sink sink) throws IOException {
+    return run(reader, sink, null);
+  }
+
+  public static int run(Reader reader, Sink sink, Truncation truncation) throws IOException {
+    char[] buffer = new char[CHUNK_SIZE];
+    StringBuilder line = new StringBuilder(256);
+    int length = 0;
+    int count = 0;
+    int read;
+
+    while ((read = reader.read(buffer)) != -1) {
+      for (int i = 0; i < read; i++) {
+        char c = buffer[i];
+        if (c == '\n' || c == '\r') {
+          count += emit(line, length, sink, truncation);
+          line.setLength(0);
+          length = 0;
+        } else if (length++ < MAX_LINE_LENGTH) {
+          line.append(c);
+        }
+      }
+    }
+    count += emit(line, length, sink, truncation);
+    return count;
+  }
+
+  private static int emit(CharSequence line, int length, Sink sink, Truncation truncation)
+      throws IOException {
+    if (length > MAX_LINE_LENGTH && truncation != null) {
+      truncation.truncated(length);
+    }
+    String quote = cleanQuoteText(line);
+    if (quote.isEmpty()) {
+      return 0;
+    }
+    sink.accept(quote);
+    return 1;
+  }
+
+  // Same result as trimming and applying ^\d+\.\s*, ^\d+\s*, ^-\s*, ^•\s* in turn
+  static String cleanQuoteText(CharSequence text) {
+    int start = 0;
+    int end = text.length();
+    while (start < end && text.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && text.charAt(end - 1) <= ' ') {
+      end--;
+    }
+
+    // "12. quote"
+    int digitsEnd = skipDigits(text, start, end);
+    if (digitsEnd > start && digitsEnd < end && text.charAt(digitsEnd) == '.') {
+      start = skipWhitespace(text, digitsEnd + 1, end);
+    }
+
+    // "12 quote"
+    digitsEnd = skipDigits(text, start, end);
+    if (digitsEnd > start) {
+      start = skipWhitespace(text, digitsEnd, end);
+    }
+
+    // "- quote"
+    if (start < end && text.charAt(start) == '-') {
+      start = skipWhitespace(text, start + 1, end);
+    }
+
+    // "• quote"
+    if (start < end && text.charAt(start) == '•') {
+      start = skipWhitespace(text, start + 1, end);
+    }
+
+    while (start < end && text.charAt(start) <= ' ') {
+      start++;
+    }
+    return text.subSequence(start, end).toString();
+  }
+
+  private static int skipDigits(CharSequence text, int from, int end) {
+    while (from < end && text.charAt(from) >= '0' && text.charAt(from) <= '9') {
+      from++;
+    }
+    return from;
+  }
+
+  // Matches the regex \s class: space, \t, \n, \u000B, \f, \r
+  private static int skipWhitespace(CharSequence text, int from, int end) {
+    while (from < end) {
+      char c = text.charAt(from);
+      if (c != ' ' && (c < '\t' || c > '\r')) {
+        break;
+      }
+      from++;
+    }
+    return from;
+  }
+}
@@ -0,0 +1,486 @@
+package com.correctsyntax.biblenotify;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/*
+ * A custom quote library made of immutable segments, so adding quotes to a
+ * large library writes only the new quotes.
+ *
+ * Every segment is a complete QuoteStore with its own sidecars. Which
+ * segments make up the library, in order, is kept in a manifest next to
+ * the root store (quotes_x.bin.segments):
+ *
+ *   manifest  magic, version, segmentCount, segment file names (UTF),
+ *             selectionKey, CRC32 of all of it
+ *
+ * The checksum changes with every append, the selection key only when the
+ * library is replaced: shuffle bags and favorites are kept by it, so they
+ * survive appends and compaction, which leave existing indices alone.
+ * Version 1 manifests had no key, their first segment's checksum is used.
+ *
+ * Imports and compaction write new segment files and then commit by
+ * renaming a new manifest over the old one, so a reader sees the library
+ * before or after a change and never a part of it; a torn manifest fails
+ * its checksum. Files dropped from the manifest are deleted afterwards.
+ * A library without a manifest is its root store alone, which is what
+ * older imports and the bundled verses are.
+ *
+ * The weight classes of a library of several segments are merged from the
+ * segments' sidecars into one next to the manifest (quotes_x.bin.segments.cls)
+ * after every append and compaction.
+ *
+ * Once there are more than COMPACT_SEGMENTS segments they should be merged
+ * into one with compact(), off the main thread.
+ */
+public class QuoteLibrary implements Closeable {
+  static final int MAGIC = 0x454E514C; // "ENQL"
+  static final int VERSION = 2;
+  static final int COMPACT_SEGMENTS = 4;
+
+  // Guards every manifest read-modify-write in this process
+  private static final Object MANIFEST_LOCK = new Object();
+
+  private final File file;
+  private final List<File> segmentFiles;
+  private final List<QuoteStore> segments;
+  private final int[] bases;
+  private final int count;
+  private final long checksum;
+  private final long selectionKey;
+
+  // What a manifest lists; a library without one is its root store alone
+  private static class Manifest {
+    final List<File> segments;
+    final boolean hasSelectionKey;
+    final long selectionKey;
+
+    Manifest(List<File> segments, boolean hasSelectionKey, long selectionKey) {
+      this.segments = segments;
+      this.hasSelectionKey = hasSelectionKey;
+      this.selectionKey = selectionKey;
+    }
+
+    // The key to keep when the library changes, the first segment's checksum if it has none
+    long selectionKey() throws IOException {
+      if (hasSelectionKey || segments.isEmpty()) {
+        return selectionKey;
+      }
+      return QuoteStore.readChecksum(segments.get(0));
+    }
+  }
+
+  private QuoteLibrary(
+      File file, List<File> segmentFiles, List<QuoteStore> segments, Manifest manifest) {
+    this.file = file;
+    this.segmentFiles = Collections.unmodifiableList(segmentFiles);
+    this.segments = Collections.unmodifiableList(segments);
+    this.bases = new int[segments.size()];
+    int total = 0;
+    for (int i = 0; i < segments.size(); i++) {
+      bases[i] = total;
+      total += segments.get(i).count();
+    }
+    this.count = total;
+    this.checksum = checksum(segments);
+    this.selectionKey =
+        manifest.hasSelectionKey || segments.isEmpty()
+            ? manifest.selectionKey
+            : segments.get(0).checksum();
+  }
+
+  public static File manifestFor(File root) {
+    return new File(root.getPath() + ".segments");
+  }
+
+  public static boolean exists(File root) {
+    return manifestFor(root).exists() || root.exists();
+  }
+
+  // The manifest, or the root store of a library without one
+  public static File fileFor(File root) {
+    File manifest = manifestFor(root);
+    return manifest.exists() ? manifest : root;
+  }
+
+  public static QuoteLibrary open(File root) throws IOException {
+    synchronized (MANIFEST_LOCK) {
+      return open(fileFor(root), readManifest(root));
+    }
+  }
+
+  private static QuoteLibrary open(File file, Manifest manifest) throws IOException {
+    List<File> files = manifest.segments;
+    List<QuoteStore> stores = new ArrayList<>(files.size());
+    try {
+      for (File segment : files) {
+        stores.add(QuoteStore.open(segment));
+      }
+    } catch (IOException e) {
+      for (QuoteStore store : stores) {
+        store.close();
+      }
+      throw e;
+    }
+    return new QuoteLibrary(file, files, stores, manifest);
+  }
+
+  // Reads the manifest and segment headers only, used to detect changes without opening
+  public static long readChecksum(File root) throws IOException {
+    List<File> files;
+    synchronized (MANIFEST_LOCK) {
+      files = segmentFiles(root);
+    }
+    if (files.size() == 1) {
+      return QuoteStore.readChecksum(files.get(0));
+    }
+    CRC32 crc = new CRC32();
+    for (File segment : files) {
+      crc.update(ByteBuffer.allocate(8).putLong(QuoteStore.readChecksum(segment)).array());
+    }
+    return crc.getValue();
+  }
+
+  // A single segment keeps its store's checksum, so its sidecars serve the library
+  private static long checksum(List<QuoteStore> segments) {
+    if (segments.size() == 1) {
+      return segments.get(0).checksum();
+    }
+    CRC32 crc = new CRC32();
+    for (QuoteStore segment : segments) {
+      crc.update(ByteBuffer.allocate(8).putLong(segment.checksum()).array());
+    }
+    return crc.getValue();
+  }
+
+  // The manifest, or the root store if there is none; it changes whenever the library does
+  public File file() {
+    return file;
+  }
+
+  public int count() {
+    return count;
+  }
+
+  public long checksum() {
+    return checksum;
+  }
+
+  // What selection state (shuffle bag, favorites) is kept by, see above
+  public long selectionKey() {
+    return selectionKey;
+  }
+
+  public QuoteStore.Record get(int index) throws IOException {
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException("Quote " + index + " of " + count);
+    }
+    int segment = segmentOf(index);
+    return segments.get(segment).get(index - bases[segment]);
+  }
+
+  public int segmentCount() {
+    return segments.size();
+  }
+
+  public File segmentFile(int segment) {
+    return segmentFiles.get(segment);
+  }
+
+  public QuoteStore segment(int segment) {
+    return segments.get(segment);
+  }
+
+  // Index in the library of the first quote of a segment
+  public int base(int segment) {
+    return bases[segment];
+  }
+
+  private int segmentOf(int index) {
+    int low = 0;
+    int high = bases.length - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (bases[mid] <= index) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  @Override
+  public void close() throws IOException {
+    IOException failure = null;
+    for (QuoteStore segment : segments) {
+      try {
+        segment.close();
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  // Replaces the whole library, what a full import does
+  public static Writer replace(File root) throws IOException {
+    return new Writer(root, false);
+  }
+
+  // Adds a segment after the existing quotes
+  public static Writer append(File root) throws IOException {
+    return new Writer(root, true);
+  }
+
+  public static boolean needsCompaction(File root) throws IOException {
+    synchronized (MANIFEST_LOCK) {
+      return segmentFiles(root).size() > COMPACT_SEGMENTS;
+    }
+  }
+
+  /*
+   * Copies every segment into one new segment without holding the lock,
+   * then swaps it in for the segments it was made from. Segments appended
+   * meanwhile stay after it; if the library was replaced meanwhile the
+   * merged segment is thrown away. Returns the number of segments merged.
+   */
+  public static int compact(File root) throws IOException {
+    Manifest manifest;
+    synchronized (MANIFEST_LOCK) {
+      manifest = readManifest(root);
+    }
+    List<File> merged = manifest.segments;
+    if (merged.size() <= 1) {
+      return 0;
+    }
+    long selectionKey = manifest.selectionKey();
+
+    File target = newSegmentFile(root);
+    try (QuoteLibrary library = open(root, manifest);
+        QuoteStore.Writer writer = new QuoteStore.Writer(target)) {
+      for (int i = 0; i < library.count(); i++) {
+        QuoteStore.Record record = library.get(i);
+        writer.add(record.verse, record.place, record.data);
+      }
+      writer.commit();
+    } catch (IOException | RuntimeException e) {
+      deleteSegment(target);
+      throw e;
+    }
+
+    synchronized (MANIFEST_LOCK) {
+      List<File> current = segmentFiles(root);
+      if (current.size() < merged.size() || !current.subList(0, merged.size()).equals(merged)) {
+        deleteSegment(target);
+        return 0;
+      }
+      List<File> compacted = new ArrayList<>();
+      compacted.add(target);
+      compacted.addAll(current.subList(merged.size(), current.size()));
+      writeManifest(root, compacted, selectionKey);
+    }
+    for (File segment : merged) {
+      deleteSegment(segment);
+    }
+    mergeClasses(root);
+    return merged.size();
+  }
+
+  /*
+   * Weight classes of a library of several segments, merged from the
+   * segments' sidecars once it changed so the next pick does not have to.
+   * A reader that finds them missing or out of date merges them itself.
+   */
+  private static void mergeClasses(File root) {
+    try (QuoteLibrary library = open(root)) {
+      if (library.segmentCount() > 1) {
+        QuoteClasses.merge(library, QuoteClasses.fileFor(library.file()));
+      }
+    } catch (IOException e) {
+      // Committed already, the classes are merged again on first use
+    }
+  }
+
+  // The segments named by the manifest, or the root store alone; empty if neither exists
+  private static List<File> segmentFiles(File root) throws IOException {
+    return readManifest(root).segments;
+  }
+
+  private static Manifest readManifest(File root) throws IOException {
+    File manifest = manifestFor(root);
+    if (!manifest.exists()) {
+      List<File> files =
+          root.exists() ? Collections.singletonList(root) : Collections.<File>emptyList();
+      return new Manifest(files, false, 0);
+    }
+
+    byte[] bytes = new byte[(int) manifest.length()];
+    try (DataInputStream in = new DataInputStream(new FileInputStream(manifest))) {
+      in.readFully(bytes);
+    }
+    if (bytes.length < 8) {
+      throw new IOException("Truncated quote library manifest: " + manifest);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length - 8);
+    if (ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong() != crc.getValue()) {
+      throw new IOException("Corrupt quote library manifest: " + manifest);
+    }
+
+    DataInputStream in =
+        new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a quote library manifest");
+    }
+    int version = in.readInt();
+    if (version != 1 && version != VERSION) {
+      throw new IOException("Unsupported quote library manifest version " + version);
+    }
+    int segmentCount = in.readInt();
+    List<File> files = new ArrayList<>(segmentCount);
+    for (int i = 0; i < segmentCount; i++) {
+      files.add(new File(root.getParentFile(), in.readUTF()));
+    }
+    if (version == 1) {
+      return new Manifest(files, false, 0);
+    }
+    return new Manifest(files, true, in.readLong());
+  }
+
+  // Temp file, sync, rename: the commit point of every change
+  private static void writeManifest(File root, List<File> segments, long selectionKey)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(segments.size());
+    for (File segment : segments) {
+      out.writeUTF(segment.getName());
+    }
+    out.writeLong(selectionKey);
+    CRC32 crc = new CRC32();
+    crc.update(bytes.toByteArray());
+    out.writeLong(crc.getValue());
+
+    File manifest = manifestFor(root);
+    File temp = new File(manifest.getPath() + ".tmp");
+    try (FileOutputStream fos = new FileOutputStream(temp)) {
+      bytes.writeTo(fos);
+      fos.getFD().sync();
+    }
+    if (!temp.renameTo(manifest)) {
+      temp.delete();
+      throw new IOException("Could not replace " + manifest);
+    }
+  }
+
+  // A name no other segment of any library has, e.g. quotes_x.bin.81352.seg
+  private static File newSegmentFile(File root) throws IOException {
+    return File.createTempFile(root.getName() + ".", ".seg", root.getParentFile());
+  }
+
+  private static void deleteSegment(File segment) {
+    segment.delete();
+    QuoteClasses.fileFor(segment).delete();
+    SearchIndex.fileFor(segment).delete();
+  }
+
+  /*
+   * Writes quotes into a new segment. Nothing changes for readers until
+   * commit(), which renames the new manifest into place: the new segment
+   * alone for replace(), the existing segments plus the new one for
+   * append(). Closing without commit deletes the segment.
+   */
+  public static class Writer implements Closeable {
+    private final File root;
+    private final boolean append;
+    private final File target;
+    private final QuoteStore.Writer store;
+    private final int base;
+    private boolean done = false;
+
+    Writer(File root, boolean append) throws IOException {
+      this.root = root;
+      this.append = append;
+      int existing = 0;
+      if (append) {
+        try (QuoteLibrary library = open(root)) {
+          existing = library.count();
+        }
+      }
+      this.base = existing;
+      this.target = newSegmentFile(root);
+      this.store = new QuoteStore.Writer(target);
+    }
+
+    // Library index the next quote will get
+    public int nextIndex() {
+      return base + store.count();
+    }
+
+    public int count() {
+      return store.count();
+    }
+
+    public void add(String verse, String place, String data) throws IOException {
+      store.add(verse, place, data);
+    }
+
+    public void commit() throws IOException {
+      store.commit();
+      List<File> dropped;
+      synchronized (MANIFEST_LOCK) {
+        List<File> segments = new ArrayList<>();
+        Manifest current = readManifest(root);
+        long selectionKey;
+        if (append && !current.segments.isEmpty()) {
+          segments.addAll(current.segments);
+          dropped = Collections.emptyList();
+          selectionKey = current.selectionKey();
+        } else {
+          // A new library, selection state of the old one no longer applies
+          dropped = current.segments;
+          selectionKey = QuoteStore.readChecksum(target);
+        }
+        segments.add(target);
+        writeManifest(root, segments, selectionKey);
+      }
+      done = true;
+      for (File segment : dropped) {
+        deleteSegment(segment);
+      }
+      if (append) {
+        mergeClasses(root);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (done) {
+        return;
+      }
+      done = true;
+      try {
+        store.close();
+      } finally {
+        deleteSegment(target);
+      }
+    }
+  }
+}
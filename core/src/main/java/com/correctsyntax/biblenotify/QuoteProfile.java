@@ -0,0 +1,226 @@
+package com.correctsyntax.biblenotify;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public class QuoteProfile {
+    public String id;           // Unique identifier
+    public String name;         // Display name like "Morning Motivation" 
+    public String category;     // Category for organizing quotes
+    public int hour;           // Notification hour (24-hour format)
+    public int minute;         // Notification minute
+    public boolean enabled;    // Whether notifications are enabled
+    public String quotesFile;  // Filename containing quotes for this profile
+    public String originalFileName; // Original imported file name (for display)
+    public boolean[] selectedDays; // Days of week: [Sun, Mon, Tue, Wed, Thu, Fri, Sat]
+    public String selectionMode = SELECTION_SHUFFLE; // Order quotes are shown in
+    public java.util.Map<String, Integer> categoryWeights = new java.util.HashMap<>(); // Weighted mode, default 1
+    public int shortWeight = 1;    // Weighted mode: factor for short quotes
+    public int favoriteWeight = 3; // Weighted mode: extra weight of favorites
+
+    public static final String SELECTION_SHUFFLE = "shuffle";
+    public static final String SELECTION_SEQUENTIAL = "sequential";
+    public static final String SELECTION_WEIGHTED = "weighted";
+    
+    public QuoteProfile() {
+        // Default constructor
+    }
+    
+    public QuoteProfile(String id, String name, String category, int hour, int minute) {
+        this.id = id;
+        this.name = name;
+        this.category = category;
+        this.hour = hour;
+        this.minute = minute;
+        this.enabled = true;
+        this.quotesFile = id + "_quotes.json";
+        // Default: all days enabled
+        this.selectedDays = new boolean[]{true, true, true, true, true, true, true};
+    }
+    
+    // Convert to JSON for storage
+    public JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("id", id);
+        json.put("name", name);
+        json.put("category", category);
+        json.put("hour", hour);
+        json.put("minute", minute);
+        json.put("enabled", enabled);
+        json.put("quotesFile", quotesFile);
+        json.put("selectionMode", selectionMode);
+        JSONObject weightsJson = new JSONObject();
+        for (java.util.Map.Entry<String, Integer> weight : categoryWeights.entrySet()) {
+            weightsJson.put(weight.getKey(), weight.getValue());
+        }
+        json.put("categoryWeights", weightsJson);
+        json.put("shortWeight", shortWeight);
+        json.put("favoriteWeight", favoriteWeight);
+        if (originalFileName != null) {
+            json.put("originalFileName", originalFileName);
+        }
+        // Store selectedDays as JSON array
+        if (selectedDays != null) {
+            org.json.JSONArray daysArray = new org.json.JSONArray();
+            for (boolean day : selectedDays) {
+                daysArray.put(day);
+            }
+            json.put("selectedDays", daysArray);
+        }
+        return json;
+    }
+    
+    // Create from JSON
+    public static QuoteProfile fromJSON(JSONObject json) throws JSONException {
+        QuoteProfile profile = new QuoteProfile();
+        profile.id = json.getString("id");
+        profile.name = json.getString("name");
+        profile.category = json.getString("category");
+        profile.hour = json.getInt("hour");
+        profile.minute = json.getInt("minute");
+        profile.enabled = json.getBoolean("enabled");
+        profile.quotesFile = json.getString("quotesFile");
+        profile.selectionMode = json.optString("selectionMode", SELECTION_SHUFFLE);
+        JSONObject weightsJson = json.optJSONObject("categoryWeights");
+        if (weightsJson != null) {
+            java.util.Iterator<String> keys = weightsJson.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                profile.categoryWeights.put(key, weightsJson.getInt(key));
+            }
+        }
+        profile.shortWeight = json.optInt("shortWeight", 1);
+        profile.favoriteWeight = json.optInt("favoriteWeight", 3);
+        if (json.has("originalFileName")) {
+            profile.originalFileName = json.getString("originalFileName");
+        }
+        // Load selectedDays from JSON array
+        if (json.has("selectedDays")) {
+            org.json.JSONArray daysArray = json.getJSONArray("selectedDays");
+            profile.selectedDays = new boolean[7];
+            for (int i = 0; i < 7 && i < daysArray.length(); i++) {
+                profile.selectedDays[i] = daysArray.getBoolean(i);
+            }
+        } else {
+            // Default: all days enabled for backwards compatibility
+            profile.selectedDays = new boolean[]{true, true, true, true, true, true, true};
+        }
+        return profile;
+    }
+    
+    // Independent copy, for editing a profile without touching shared state
+    public QuoteProfile copy() {
+        QuoteProfile copy = new QuoteProfile();
+        copy.id = id;
+        copy.name = name;
+        copy.category = category;
+        copy.hour = hour;
+        copy.minute = minute;
+        copy.enabled = enabled;
+        copy.quotesFile = quotesFile;
+        copy.originalFileName = originalFileName;
+        copy.selectedDays = selectedDays != null ? selectedDays.clone() : null;
+        copy.selectionMode = selectionMode;
+        copy.categoryWeights = new java.util.HashMap<>(categoryWeights);
+        copy.shortWeight = shortWeight;
+        copy.favoriteWeight = favoriteWeight;
+        return copy;
+    }
+
+    public String getTimeString() {
+        return String.format("%02d:%02d", hour, minute);
+    }
+    
+    // Helper method to get readable days string
+    public String getDaysString() {
+        if (selectedDays == null) {
+            return "Every day";
+        }
+        
+        String[] dayNames = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
+        java.util.ArrayList<String> enabledDays = new java.util.ArrayList<>();
+        
+        for (int i = 0; i < selectedDays.length; i++) {
+            if (selectedDays[i]) {
+                enabledDays.add(dayNames[i]);
+            }
+        }
+        
+        if (enabledDays.size() == 7) {
+            return "Every day";
+        } else if (enabledDays.size() == 0) {
+            return "No days selected";
+        } else {
+            return String.join(", ", enabledDays);
+        }
+    }
+    
+    public int categoryWeight(String category) {
+        Integer weight = categoryWeights.get(category);
+        return weight != null ? weight : 1;
+    }
+
+    // Changes whenever any weight does, used to invalidate cached alias tables
+    public String weightsSignature() {
+        return new java.util.TreeMap<>(categoryWeights) + "|" + shortWeight + "|" + favoriteWeight;
+    }
+
+    // Check if profile should run today
+    public boolean isEnabledForDay(int dayOfWeek) {
+        if (selectedDays == null) {
+            return true; // Default to every day
+        }
+        // dayOfWeek: Calendar.SUNDAY = 1, Calendar.MONDAY = 2, etc.
+        // selectedDays: [Sun=0, Mon=1, Tue=2, Wed=3, Thu=4, Fri=5, Sat=6]
+        int index = dayOfWeek - 1; // Convert Calendar day to array index
+        return index >= 0 && index < selectedDays.length && selectedDays[index];
+    }
+
+    // Next notification time strictly after the given time, or -1 if no day is selected.
+    // The time of day is wall clock time in zone: on a DST change a time that is skipped
+    // fires shifted by the gap, a time that happens twice fires the first time only.
+    public long nextFireTime(long after, java.util.TimeZone zone) {
+        java.util.Calendar day = java.util.Calendar.getInstance(zone);
+        day.setTimeInMillis(after);
+        day.set(java.util.Calendar.HOUR_OF_DAY, 12); // Never in a DST gap, only the date is used
+        java.util.Calendar local = java.util.Calendar.getInstance(java.util.TimeZone.getTimeZone("UTC"));
+
+        // Today if the time is still ahead, then a week ahead at most for a selected day
+        for (int daysAhead = 0; daysAhead <= 7; daysAhead++) {
+            if (isEnabledForDay(day.get(java.util.Calendar.DAY_OF_WEEK))) {
+                local.clear();
+                local.set(
+                        day.get(java.util.Calendar.YEAR),
+                        day.get(java.util.Calendar.MONTH),
+                        day.get(java.util.Calendar.DAY_OF_MONTH),
+                        hour,
+                        minute);
+                long time = wallClockTime(local.getTimeInMillis(), zone);
+                if (time > after) {
+                    return time;
+                }
+            }
+            day.add(java.util.Calendar.DAY_OF_MONTH, 1);
+        }
+        return -1;
+    }
+
+    // Instant a wall clock time (as UTC millis) happens in zone, the rules java.time uses
+    private static long wallClockTime(long local, java.util.TimeZone zone) {
+        long dayMillis = 24L * 60 * 60 * 1000;
+        int before = zone.getOffset(local - dayMillis);
+        int after = zone.getOffset(local + dayMillis);
+        if (before == after) {
+            return local - before;
+        }
+        boolean beforeValid = zone.getOffset(local - before) == before;
+        boolean afterValid = zone.getOffset(local - after) == after;
+        if (beforeValid && afterValid) {
+            return Math.min(local - before, local - after); // Happens twice
+        }
+        if (afterValid) {
+            return local - after;
+        }
+        return local - before; // Valid, or skipped and moved forward by the gap
+    }
+}
\ No newline at end of file
@@ -0,0 +1,347 @@
+package com.correctsyntax.biblenotify;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/*
+ * Compact on-disk quote file so the alarm path can read one quote without
+ * parsing a whole JSON library.
+ *
+ * Layout (big endian):
+ *   header   magic, version, count, stringCount, stringTableOffset, offsetTableOffset, checksum
+ *   records  verse, place (string table index or inline), data
+ *   strings  shared place/category strings
+ *   offsets  count + 1 longs, record i spans offsets[i] .. offsets[i + 1]
+ *
+ * The checksum is a CRC32 over everything after the header, so a reader can
+ * tell two files apart by looking at the first 40 bytes only.
+ */
+public class QuoteStore implements Closeable {
+  static final int MAGIC = 0x454E5153; // "ENQS"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 40;
+
+  // Places repeat a lot (one category per imported file), keep the table small
+  static final int MAX_SHARED_STRINGS = 256;
+  private static final int INLINE_STRING = -1;
+
+  public static class Record {
+    public final String verse;
+    public final String place;
+    public final String data;
+
+    public Record(String verse, String place, String data) {
+      this.verse = verse;
+      this.place = place;
+      this.data = data;
+    }
+  }
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final int count;
+  private final long offsetTableOffset;
+  private final long checksum;
+  private final String[] strings;
+
+  private QuoteStore(RandomAccessFile file, Header header, String[] strings) {
+    this.file = file;
+    this.channel = file.getChannel();
+    this.count = header.count;
+    this.offsetTableOffset = header.offsetTableOffset;
+    this.checksum = header.checksum;
+    this.strings = strings;
+  }
+
+  public static QuoteStore open(File source) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(source, "r");
+    try {
+      Header header = Header.read(raf.getChannel());
+      long expectedEnd = header.offsetTableOffset + 8L * (header.count + 1);
+      if (raf.length() < expectedEnd) {
+        throw new IOException("Truncated quote store: " + source);
+      }
+
+      String[] strings = new String[header.stringCount];
+      ByteBuffer table =
+          readFully(
+              raf.getChannel(),
+              header.stringTableOffset,
+              (int) (header.offsetTableOffset - header.stringTableOffset));
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = readString(table);
+      }
+      return new QuoteStore(raf, header, strings);
+    } catch (IOException | RuntimeException e) {
+      raf.close();
+      throw e;
+    }
+  }
+
+  // Reads only the fixed header, used to detect changes without opening the file
+  public static long readChecksum(File source) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(source, "r")) {
+      return Header.read(raf.getChannel()).checksum;
+    }
+  }
+
+  public int count() {
+    return count;
+  }
+
+  public long checksum() {
+    return checksum;
+  }
+
+  // Two positional reads: the offset pair, then the record itself
+  public Record get(int index) throws IOException {
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException("Quote " + index + " of " + count);
+    }
+    ByteBuffer offsets = readFully(channel, offsetTableOffset + 8L * index, 16);
+    long start = offsets.getLong();
+    long end = offsets.getLong();
+
+    ByteBuffer record = readFully(channel, start, (int) (end - start));
+    String verse = readString(record);
+    int placeRef = record.getInt();
+    String place = placeRef == INLINE_STRING ? readString(record) : strings[placeRef];
+    String data = readString(record);
+    return new Record(verse, place, data);
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  private static ByteBuffer readFully(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    String value =
+        new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return value;
+  }
+
+  private static class Header {
+    int count;
+    int stringCount;
+    long stringTableOffset;
+    long offsetTableOffset;
+    long checksum;
+
+    static Header read(FileChannel channel) throws IOException {
+      ByteBuffer buffer = readFully(channel, 0, HEADER_SIZE);
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException("Not a quote store");
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported quote store version " + version);
+      }
+      Header header = new Header();
+      header.count = buffer.getInt();
+      header.stringCount = buffer.getInt();
+      header.stringTableOffset = buffer.getLong();
+      header.offsetTableOffset = buffer.getLong();
+      header.checksum = buffer.getLong();
+      return header;
+    }
+  }
+
+  /*
+   * Streams records to disk. Record offsets go to a side file so memory stays
+   * flat however many quotes are added; commit() stitches the pieces together
+   * and renames the result over the target. The QuoteClasses sidecar used by
+   * weighted selection and the SearchIndex sidecar are built in the same pass,
+   * so an import is searchable as soon as it is committed.
+   */
+  public static class Writer implements Closeable {
+    private final File target;
+    private final File temp;
+    private final File offsetsTemp;
+    private final CheckedOutputStream checked;
+    private final CountingOutput records;
+    private final DataOutputStream out;
+    private final DataOutputStream offsets;
+    private final QuoteClasses.Builder classes;
+    private final SearchIndex.Builder search;
+    private final Map<String, Integer> sharedStrings = new HashMap<>();
+    private final List<String> stringTable = new ArrayList<>();
+    private int count = 0;
+    private boolean done = false;
+
+    public Writer(File target) throws IOException {
+      this.target = target;
+      this.temp = new File(target.getPath() + ".tmp");
+      this.offsetsTemp = new File(target.getPath() + ".idx.tmp");
+
+      FileOutputStream fos = new FileOutputStream(temp);
+      fos.write(new byte[HEADER_SIZE]);
+      checked = new CheckedOutputStream(fos, new CRC32());
+      records = new CountingOutput(new BufferedOutputStream(checked, 16 * 1024), HEADER_SIZE);
+      out = new DataOutputStream(records);
+      offsets =
+          new DataOutputStream(
+              new BufferedOutputStream(new FileOutputStream(offsetsTemp), 16 * 1024));
+      classes = new QuoteClasses.Builder(QuoteClasses.fileFor(target));
+      search = new SearchIndex.Builder(SearchIndex.fileFor(target), SearchTokenizer.ANY);
+    }
+
+    public int count() {
+      return count;
+    }
+
+    public void add(String verse, String place, String data) throws IOException {
+      offsets.writeLong(records.position);
+      writeString(out, verse);
+
+      Integer ref = sharedStrings.get(place);
+      if (ref == null && stringTable.size() < MAX_SHARED_STRINGS) {
+        ref = stringTable.size();
+        stringTable.add(place);
+        sharedStrings.put(place, ref);
+      }
+      if (ref != null) {
+        out.writeInt(ref);
+      } else {
+        out.writeInt(INLINE_STRING);
+        writeString(out, place);
+      }
+
+      writeString(out, data);
+      classes.add(verse, place, data);
+      search.add(count, verse);
+      count++;
+    }
+
+    public void commit() throws IOException {
+      // Sentinel so the last record's length is known
+      offsets.writeLong(records.position);
+      offsets.close();
+
+      long stringTableOffset = records.position;
+      for (String value : stringTable) {
+        writeString(out, value);
+      }
+      long offsetTableOffset = records.position;
+      try (InputStream in = new FileInputStream(offsetsTemp)) {
+        byte[] buffer = new byte[16 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+      }
+      out.close();
+
+      try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+        raf.writeInt(MAGIC);
+        raf.writeInt(VERSION);
+        raf.writeInt(count);
+        raf.writeInt(stringTable.size());
+        raf.writeLong(stringTableOffset);
+        raf.writeLong(offsetTableOffset);
+        raf.writeLong(checked.getChecksum().getValue());
+        raf.getFD().sync();
+      }
+
+      // Sidecars first, a reader only trusts them if the checksums match
+      classes.commit(checked.getChecksum().getValue());
+      search.commit(checked.getChecksum().getValue());
+
+      offsetsTemp.delete();
+      if (!temp.renameTo(target)) {
+        temp.delete();
+        throw new IOException("Could not replace " + target);
+      }
+      done = true;
+    }
+
+    // Drops everything written so far unless commit() succeeded
+    @Override
+    public void close() throws IOException {
+      if (done) {
+        return;
+      }
+      done = true;
+      try {
+        offsets.close();
+        out.close();
+        classes.close();
+        search.close();
+      } finally {
+        offsetsTemp.delete();
+        temp.delete();
+      }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+      byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  // Tracks the file position of the next record
+  private static class CountingOutput extends OutputStream {
+    final OutputStream out;
+    long position;
+
+    CountingOutput(OutputStream out, long position) {
+      this.out = out;
+      this.position = position;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      position++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      position += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+}
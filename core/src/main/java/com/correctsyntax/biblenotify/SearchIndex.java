@@ -0,0 +1,567 @@
+package com.correctsyntax.biblenotify;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/*
+ * Inverted index from search terms to documents: verses of a bible pack
+ * (bible/<lang>/search.idx, written by compileBiblePacks) or records of a
+ * quote store (the <store>.search sidecar, written by QuoteStore.Writer).
+ *
+ * Layout (big endian):
+ *   header    magic, version, storeChecksum, docCount, termCount,
+ *             termsOffset, stringsOffset, postingsOffset, language (UTF)
+ *   terms     per term: stringStart, stringLength, postingsStart, docCount
+ *   strings   UTF-8 terms, sorted by their bytes
+ *   postings  per term: doc ids as varint deltas, ascending
+ *
+ * Terms are sorted, so every query word is a prefix: a binary search finds
+ * the first term that starts with it and the run of matching terms follows.
+ * Their postings are merged into a bitset per word and the words are ANDed.
+ * A pack's doc ids are verse table entries, a store's are record indices.
+ */
+public class SearchIndex implements Closeable {
+  static final int MAGIC = 0x454E5358; // "ENSX"
+  static final int VERSION = 1;
+  static final int TERM_ENTRY_SIZE = 16;
+
+  private ByteBuffer buffer;
+  private final long storeChecksum;
+  private final int docCount;
+  private final int termCount;
+  private final int termsOffset;
+  private final int stringsOffset;
+  private final int postingsOffset;
+  private final String language;
+
+  private SearchIndex(ByteBuffer buffer, String name) throws IOException {
+    this.buffer = buffer;
+    try {
+      ByteBuffer in = buffer.duplicate();
+      if (in.getInt() != MAGIC) {
+        throw new IOException("Not a search index: " + name);
+      }
+      int version = in.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported search index version " + version);
+      }
+      storeChecksum = in.getLong();
+      docCount = in.getInt();
+      termCount = in.getInt();
+      termsOffset = in.getInt();
+      stringsOffset = in.getInt();
+      postingsOffset = in.getInt();
+      byte[] languageBytes = new byte[in.getShort() & 0xFFFF];
+      in.get(languageBytes);
+      language = new String(languageBytes, StandardCharsets.UTF_8);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated search index: " + name);
+    }
+  }
+
+  // An index already in memory, e.g. a bible pack's mapped from the APK like the pack itself
+  public static SearchIndex open(ByteBuffer buffer, String name) throws IOException {
+    return new SearchIndex(buffer, name);
+  }
+
+  // Opens a store's sidecar, failing if it was built for a different store
+  public static SearchIndex open(File source, long expectedChecksum) throws IOException {
+    ByteBuffer buffer;
+    try (RandomAccessFile file = new RandomAccessFile(source, "r")) {
+      buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+    }
+    SearchIndex index = new SearchIndex(buffer, source.getName());
+    if (index.storeChecksum != expectedChecksum) {
+      throw new IOException("Search index is out of date");
+    }
+    return index;
+  }
+
+  public static File fileFor(File storeFile) {
+    return new File(storeFile.getPath() + ".search");
+  }
+
+  // Scans an existing store once, for stores written before the sidecar existed
+  public static void build(QuoteStore store, File target) throws IOException {
+    try (Builder builder = new Builder(target, SearchTokenizer.ANY)) {
+      for (int i = 0; i < store.count(); i++) {
+        builder.add(i, store.get(i).verse);
+      }
+      builder.commit(store.checksum());
+    }
+  }
+
+  public int docCount() {
+    return docCount;
+  }
+
+  /*
+   * Lets go of the mapping. Java cannot unmap a file: its pages are released
+   * once the buffer is collected, which the index no longer holds up.
+   */
+  @Override
+  public void close() {
+    buffer = null;
+  }
+
+  /*
+   * Docs that have a term starting with every word of the query, in doc
+   * order, at most limit of them. The query is split by the rules the
+   * index was built with, but a last word still being typed is always
+   * kept (see SearchTokenizer.queryTokens).
+   */
+  public int[] search(String query, int limit) {
+    if (buffer == null) {
+      throw new IllegalStateException("Search index is closed");
+    }
+    List<String> words = SearchTokenizer.queryTokens(query, language);
+    if (words.isEmpty()) {
+      return new int[0];
+    }
+
+    BitSet hits = null;
+    for (String word : new LinkedHashSet<>(words)) {
+      byte[] prefix = word.getBytes(StandardCharsets.UTF_8);
+      BitSet matches = new BitSet(docCount);
+      for (int term = firstTerm(prefix); term < termCount && startsWith(term, prefix); term++) {
+        collect(term, matches);
+      }
+      if (hits == null) {
+        hits = matches;
+      } else {
+        hits.and(matches);
+      }
+      if (hits.isEmpty()) {
+        return new int[0];
+      }
+    }
+
+    int[] docs = new int[Math.min(limit, hits.cardinality())];
+    int doc = hits.nextSetBit(0);
+    for (int i = 0; i < docs.length; i++) {
+      docs[i] = doc;
+      doc = hits.nextSetBit(doc + 1);
+    }
+    return docs;
+  }
+
+  // First term not sorting before the prefix, termCount if there is none
+  private int firstTerm(byte[] prefix) {
+    int low = 0;
+    int high = termCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compare(mid, prefix) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  // Unsigned byte order, a term that the prefix starts compares as equal
+  private int compare(int term, byte[] prefix) {
+    int entry = termsOffset + term * TERM_ENTRY_SIZE;
+    int start = stringsOffset + buffer.getInt(entry);
+    int length = buffer.getInt(entry + 4);
+    int common = Math.min(length, prefix.length);
+    for (int i = 0; i < common; i++) {
+      int difference = (buffer.get(start + i) & 0xFF) - (prefix[i] & 0xFF);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return length >= prefix.length ? 0 : -1;
+  }
+
+  private boolean startsWith(int term, byte[] prefix) {
+    return compare(term, prefix) == 0;
+  }
+
+  // Absolute reads only, so one index serves any number of threads
+  private void collect(int term, BitSet into) {
+    int entry = termsOffset + term * TERM_ENTRY_SIZE;
+    int position = postingsOffset + buffer.getInt(entry + 8);
+    int count = buffer.getInt(entry + 12);
+    int doc = 0;
+    for (int i = 0; i < count; i++) {
+      int delta = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = buffer.get(position++);
+        delta |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      doc += delta;
+      into.set(doc);
+    }
+  }
+
+  /*
+   * Collects postings in memory as varint deltas, which is what they are
+   * written as, so a term costs about one byte per document it is in. Once
+   * about BUFFER_SIZE bytes are buffered they are written out as a sorted run
+   * next to the target, so memory stays flat however large the import.
+   * Docs must be added in ascending order. commit() merges the runs into a
+   * temp file that is renamed over the target.
+   *
+   * Run layout: termCount, then per term: term (UTF-8, int length), docCount,
+   * firstDoc, lastDoc, postings length, postings. A run's first delta is the
+   * doc itself, runs follow each other in doc order.
+   */
+  public static class Builder implements Closeable {
+    static final int BUFFER_SIZE = 1 << 20;
+    // HashMap entry, Postings and its first array, on top of the term's chars
+    private static final int TERM_OVERHEAD = 96;
+
+    private final File target;
+    private final File temp;
+    private final File stringsTemp;
+    private final File postingsTemp;
+    private final String language;
+    private final int bufferSize;
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final List<File> runs = new ArrayList<>();
+    private int buffered = 0;
+    private int docCount = 0;
+    private boolean done = false;
+
+    public Builder(File target, String language) {
+      this(target, language, BUFFER_SIZE);
+    }
+
+    Builder(File target, String language, int bufferSize) {
+      this.target = target;
+      this.temp = new File(target.getPath() + ".tmp");
+      this.stringsTemp = new File(target.getPath() + ".strings.tmp");
+      this.postingsTemp = new File(target.getPath() + ".postings.tmp");
+      this.language = language;
+      this.bufferSize = bufferSize;
+    }
+
+    public void add(int doc, String text) throws IOException {
+      for (String token : SearchTokenizer.tokens(text, language)) {
+        Postings termPostings = postings.get(token);
+        if (termPostings == null) {
+          termPostings = new Postings();
+          postings.put(token, termPostings);
+          buffered += TERM_OVERHEAD + 2 * token.length();
+        }
+        buffered += termPostings.add(doc);
+      }
+      docCount = Math.max(docCount, doc + 1);
+
+      // Between docs only, so a doc never spans two runs
+      if (buffered >= bufferSize) {
+        spill();
+      }
+    }
+
+    private void spill() throws IOException {
+      List<byte[]> terms = new ArrayList<>(postings.size());
+      for (String term : postings.keySet()) {
+        terms.add(term.getBytes(StandardCharsets.UTF_8));
+      }
+      Collections.sort(terms, SearchIndex::compareBytes);
+
+      File run = new File(target.getPath() + ".run" + runs.size() + ".tmp");
+      runs.add(run);
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 16 * 1024))) {
+        out.writeInt(terms.size());
+        for (byte[] term : terms) {
+          Postings termPostings = postings.get(new String(term, StandardCharsets.UTF_8));
+          out.writeInt(term.length);
+          out.write(term);
+          out.writeInt(termPostings.count);
+          out.writeInt(termPostings.first);
+          out.writeInt(termPostings.last);
+          out.writeInt(termPostings.length);
+          out.write(termPostings.bytes, 0, termPostings.length);
+        }
+      }
+      postings.clear();
+      buffered = 0;
+    }
+
+    public void commit(long storeChecksum) throws IOException {
+      if (!postings.isEmpty() || runs.isEmpty()) {
+        spill();
+      }
+
+      ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+      new DataOutputStream(headerBytes).writeUTF(language);
+      int termsOffset = 36 + headerBytes.size();
+
+      // Term entries go straight after the header, strings and postings to
+      // their own temp files until the number of terms is known
+      int termCount = 0;
+      int stringsSize = 0;
+      int postingsSize = 0;
+      PriorityQueue<Run> queue = new PriorityQueue<>();
+      List<Run> matching = new ArrayList<>();
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 16 * 1024))) {
+        out.write(new byte[36]);
+        headerBytes.writeTo(out);
+
+        // Closed, so flushed, before they are copied after the term entries
+        try (OutputStream strings =
+                new BufferedOutputStream(new FileOutputStream(stringsTemp), 16 * 1024);
+            OutputStream postingsOut =
+                new BufferedOutputStream(new FileOutputStream(postingsTemp), 16 * 1024)) {
+          for (int i = 0; i < runs.size(); i++) {
+            Run run = new Run(runs.get(i), i);
+            if (run.next()) {
+              queue.add(run);
+            } else {
+              run.close();
+            }
+          }
+
+          while (!queue.isEmpty()) {
+            // The same term from every run that has it, in doc order
+            matching.add(queue.poll());
+            while (!queue.isEmpty() && queue.peek().compareTerm(matching.get(0)) == 0) {
+              matching.add(queue.poll());
+            }
+
+            byte[] term = matching.get(0).term;
+            int count = 0;
+            int length = 0;
+            int last = -1;
+            for (Run run : matching) {
+              if (last < 0) {
+                postingsOut.write(run.postings, 0, run.length);
+                length += run.length;
+              } else {
+                // The run's first doc was written as is, make it a delta again
+                int skip = 0;
+                while (run.postings[skip] < 0) {
+                  skip++;
+                }
+                skip++;
+                length += writeVarint(postingsOut, run.first - last);
+                postingsOut.write(run.postings, skip, run.length - skip);
+                length += run.length - skip;
+              }
+              count += run.count;
+              last = run.last;
+            }
+            strings.write(term);
+
+            out.writeInt(stringsSize);
+            out.writeInt(term.length);
+            out.writeInt(postingsSize);
+            out.writeInt(count);
+            termCount++;
+            stringsSize += term.length;
+            postingsSize += length;
+
+            for (Run run : matching) {
+              if (run.next()) {
+                queue.add(run);
+              } else {
+                run.close();
+              }
+            }
+            matching.clear();
+          }
+        }
+
+        copy(stringsTemp, out);
+        copy(postingsTemp, out);
+      } finally {
+        for (Run run : queue) {
+          run.close();
+        }
+        for (Run run : matching) {
+          run.close();
+        }
+      }
+
+      int stringsOffset = termsOffset + termCount * TERM_ENTRY_SIZE;
+      try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+        raf.writeInt(MAGIC);
+        raf.writeInt(VERSION);
+        raf.writeLong(storeChecksum);
+        raf.writeInt(docCount);
+        raf.writeInt(termCount);
+        raf.writeInt(termsOffset);
+        raf.writeInt(stringsOffset);
+        raf.writeInt(stringsOffset + stringsSize);
+      }
+
+      deleteTemps();
+      if (!temp.renameTo(target)) {
+        temp.delete();
+        throw new IOException("Could not replace " + target);
+      }
+      done = true;
+    }
+
+    private static int writeVarint(OutputStream out, int value) throws IOException {
+      int length = 1;
+      while ((value & ~0x7F) != 0) {
+        out.write((value & 0x7F) | 0x80);
+        value >>>= 7;
+        length++;
+      }
+      out.write(value);
+      return length;
+    }
+
+    private static void copy(File source, OutputStream out) throws IOException {
+      try (InputStream in = new FileInputStream(source)) {
+        byte[] buffer = new byte[16 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+      }
+    }
+
+    private void deleteTemps() {
+      for (File run : runs) {
+        run.delete();
+      }
+      runs.clear();
+      stringsTemp.delete();
+      postingsTemp.delete();
+    }
+
+    @Override
+    public void close() {
+      if (done) {
+        return;
+      }
+      done = true;
+      postings.clear();
+      deleteTemps();
+      temp.delete();
+    }
+  }
+
+  private static int compareBytes(byte[] a, byte[] b) {
+    int common = Math.min(a.length, b.length);
+    for (int i = 0; i < common; i++) {
+      int difference = (a[i] & 0xFF) - (b[i] & 0xFF);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return a.length - b.length;
+  }
+
+  // One term's doc ids, each stored once
+  private static class Postings {
+    byte[] bytes = new byte[8];
+    int length = 0;
+    int count = 0;
+    int first = -1;
+    int last = -1;
+
+    // Returns the bytes added
+    int add(int doc) {
+      if (doc == last) {
+        return 0;
+      }
+      if (bytes.length - length < 5) {
+        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+      }
+      int start = length;
+      int delta = last < 0 ? doc : doc - last;
+      while ((delta & ~0x7F) != 0) {
+        bytes[length++] = (byte) ((delta & 0x7F) | 0x80);
+        delta >>>= 7;
+      }
+      bytes[length++] = (byte) delta;
+      if (first < 0) {
+        first = doc;
+      }
+      last = doc;
+      count++;
+      return length - start;
+    }
+  }
+
+  // The current term of a sorted run, read one term at a time
+  private static class Run implements Comparable<Run>, Closeable {
+    private final DataInputStream in;
+    private final int index;
+    private int remaining;
+    byte[] term;
+    int count;
+    int first;
+    int last;
+    byte[] postings = new byte[64];
+    int length;
+
+    Run(File file, int index) throws IOException {
+      this.in =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(file), 16 * 1024));
+      this.index = index;
+      this.remaining = in.readInt();
+    }
+
+    boolean next() throws IOException {
+      if (remaining == 0) {
+        return false;
+      }
+      remaining--;
+      term = new byte[in.readInt()];
+      in.readFully(term);
+      count = in.readInt();
+      first = in.readInt();
+      last = in.readInt();
+      length = in.readInt();
+      if (postings.length < length) {
+        postings = new byte[Math.max(length, postings.length * 2)];
+      }
+      in.readFully(postings, 0, length);
+      return true;
+    }
+
+    int compareTerm(Run other) {
+      return compareBytes(term, other.term);
+    }
+
+    // Equal terms come out in run order, which is doc order
+    @Override
+    public int compareTo(Run other) {
+      int difference = compareTerm(other);
+      return difference != 0 ? difference : index - other.index;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package com.correctsyntax.biblenotify;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Splits text into search terms. The bundled chapters are indexed at build
+ * time by the compileBiblePacks task, which runs this class (buildSrc puts
+ * :core on the build classpath). Indexes of imported quotes live on the
+ * device, so a change here needs SearchIndex.VERSION bumped.
+ *
+ * Terms are lowercased and stripped of accents ("Éternel" -> "eternel"),
+ * so queries match however they are typed. French elisions are dropped
+ * ("l'amour" -> "amour"), as are one-letter words and, for en and fr, the
+ * most common words of the language. Custom libraries have no language
+ * (ANY): they keep every word of two letters or more.
+ *
+ * Queries are split the same way, except for a last word still being typed
+ * (nothing after it): it is a prefix, so it is kept whatever its length and
+ * even if it is a stop word, "so" has to find "soul" and "la" "lampe".
+ */
+public final class SearchTokenizer {
+  static final String ANY = "";
+  static final int MIN_LENGTH = 2;
+  static final int MAX_LENGTH = 32;
+
+  private static final Set<String> ELISIONS =
+      set("qu", "jusqu", "lorsqu", "puisqu", "quoiqu", "presqu");
+
+  private static final Set<String> EN_STOP_WORDS =
+      set(
+          "the", "and", "of", "to", "in", "that", "is", "for", "it", "as", "with", "be", "on",
+          "was", "by", "but", "are", "at", "this", "from", "or", "an", "which", "were", "so");
+
+  private static final Set<String> FR_STOP_WORDS =
+      set(
+          "le", "la", "les", "de", "des", "du", "un", "une", "et", "en", "au", "aux", "que",
+          "qui", "ne", "se", "sa", "ses", "ce", "ces", "est", "par", "sur", "dans", "ou");
+
+  private SearchTokenizer() {}
+
+  // Terms in text order, repeats included
+  public static List<String> tokens(String text, String language) {
+    return tokens(text, language, false);
+  }
+
+  // Query words, each matched as a prefix of the index's terms
+  public static List<String> queryTokens(String query, String language) {
+    return tokens(query, language, true);
+  }
+
+  private static List<String> tokens(String text, String language, boolean query) {
+    String folded = fold(text);
+    Set<String> stopWords = stopWords(language);
+    List<String> tokens = new ArrayList<>();
+    int length = folded.length();
+    int i = 0;
+    while (i < length) {
+      if (!Character.isLetterOrDigit(folded.charAt(i))) {
+        i++;
+        continue;
+      }
+      int start = i;
+      while (i < length && Character.isLetterOrDigit(folded.charAt(i))) {
+        i++;
+      }
+      String token = folded.substring(start, i);
+
+      // "qu'il" -> "il", single letter elisions are dropped by MIN_LENGTH
+      if (i < length && folded.charAt(i) == '\'' && ELISIONS.contains(token)) {
+        continue;
+      }
+      boolean typing = query && i == length;
+      if (!typing && (token.length() < MIN_LENGTH || stopWords.contains(token))) {
+        continue;
+      }
+      tokens.add(token.length() > MAX_LENGTH ? token.substring(0, MAX_LENGTH) : token);
+    }
+    return tokens;
+  }
+
+  // Lowercase without accents, typographic apostrophes made plain
+  static String fold(String text) {
+    String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+    StringBuilder folded = new StringBuilder(decomposed.length());
+    for (int i = 0; i < decomposed.length(); i++) {
+      char c = decomposed.charAt(i);
+      if (Character.getType(c) == Character.NON_SPACING_MARK) {
+        continue;
+      }
+      folded.append(c == '\u2019' || c == '\u02BC' ? '\'' : Character.toLowerCase(c));
+    }
+    return folded.toString();
+  }
+
+  private static Set<String> stopWords(String language) {
+    if ("en".equals(language)) {
+      return EN_STOP_WORDS;
+    }
+    if ("fr".equals(language)) {
+      return FR_STOP_WORDS;
+    }
+    return Collections.emptySet();
+  }
+
+  private static Set<String> set(String... words) {
+    return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(words)));
+  }
+}
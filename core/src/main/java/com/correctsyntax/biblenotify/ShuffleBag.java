@@ -0,0 +1,265 @@
+package com.correctsyntax.biblenotify;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+/*
+ * Per-profile no-repeat quote selection, persisted in one small file.
+ *
+ * Layout (big endian):
+ *   header   magic, version, count, mode, selectionKey, seed, cursor, seenCount
+ *   seen     one bit per quote, set once the quote was shown this round
+ *
+ * The order of a round is a keyed permutation of 0..count-1 (a Feistel
+ * network with cycle walking, or the identity in sequential mode), so a pick
+ * is position cursor of that order: O(1), without storing the permutation
+ * or touching the library. The seen bits let the order change mid-round
+ * (mode switch) or grow mid-round (quotes appended to the library, which
+ * join the round unseen) without repeating anything already shown. A pick
+ * reads the header and writes back the header and a single byte; the bag
+ * reseeds when a round is complete, the library's selection key changes
+ * (QuoteLibrary.selectionKey()) or it has fewer quotes than before.
+ *
+ * A pick made ahead of time (a staged notification) is a peek: the quote is
+ * marked only once it is shown, so a pick that is thrown away costs nothing.
+ */
+public class ShuffleBag {
+  static final int MAGIC = 0x454E5342; // "ENSB"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 40;
+
+  public static final int MODE_SHUFFLE = 0;
+  public static final int MODE_SEQUENTIAL = 1;
+
+  private static final int ROUNDS = 4;
+
+  private int count;
+  private int mode;
+  private long selectionKey;
+  private long seed;
+  private int cursor;
+  private int seenCount;
+
+  private ShuffleBag() {}
+
+  // Returns the index of the next quote to show, between 0 and count - 1
+  public static int next(File file, int count, long selectionKey, int mode)
+      throws IOException {
+    return pick(file, count, selectionKey, mode, true);
+  }
+
+  // The quote next() would return, left unseen until markShown()
+  public static int peek(File file, int count, long selectionKey, int mode)
+      throws IOException {
+    return pick(file, count, selectionKey, mode, false);
+  }
+
+  // Marks a peeked quote as shown, unless the bag was reseeded since
+  public static void markShown(File file, int index, long selectionKey) throws IOException {
+    if (!file.exists()) {
+      return;
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      ShuffleBag bag = read(raf);
+      if (bag == null
+          || bag.selectionKey != selectionKey
+          || index < 0
+          || index >= bag.count
+          || bag.isSeen(raf, index)) {
+        return;
+      }
+      bag.markSeen(raf, index);
+      bag.seenCount++;
+      if (bag.cursor < bag.count && bag.order(bag.cursor) == index) {
+        bag.cursor++;
+      }
+      bag.writeHeader(raf);
+    }
+  }
+
+  private static int pick(File file, int count, long selectionKey, int mode, boolean mark)
+      throws IOException {
+    if (count <= 0) {
+      throw new IllegalArgumentException("Empty quote store");
+    }
+    File parent = file.getParentFile();
+    if (parent != null) {
+      parent.mkdirs();
+    }
+
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      ShuffleBag bag = read(raf);
+      if (bag == null || bag.count > count || bag.selectionKey != selectionKey) {
+        bag = new ShuffleBag();
+        bag.count = count;
+        bag.mode = mode;
+        bag.selectionKey = selectionKey;
+        bag.startRound(raf);
+      } else {
+        if (bag.count < count) {
+          bag.grow(raf, count);
+        }
+        if (bag.mode != mode) {
+          // Same round, new order: restart the walk, the seen bits prevent repeats
+          bag.mode = mode;
+          bag.cursor = 0;
+        }
+      }
+      if (bag.seenCount >= bag.count) {
+        bag.startRound(raf);
+      }
+
+      int index;
+      do {
+        if (bag.cursor >= bag.count) {
+          // Only after an interrupted write left seenCount behind the bits
+          bag.startRound(raf);
+        }
+        index = bag.order(bag.cursor++);
+      } while (bag.isSeen(raf, index));
+
+      if (mark) {
+        bag.markSeen(raf, index);
+        bag.seenCount++;
+      } else {
+        // Seen entries skipped so far stay skipped, the peeked one is next
+        bag.cursor--;
+      }
+      bag.writeHeader(raf);
+      return index;
+    }
+  }
+
+  private static ShuffleBag read(RandomAccessFile raf) throws IOException {
+    if (raf.length() < HEADER_SIZE) {
+      return null;
+    }
+    raf.seek(0);
+    if (raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+      return null;
+    }
+    ShuffleBag bag = new ShuffleBag();
+    bag.count = raf.readInt();
+    bag.mode = raf.readInt();
+    bag.selectionKey = raf.readLong();
+    bag.seed = raf.readLong();
+    bag.cursor = raf.readInt();
+    bag.seenCount = raf.readInt();
+
+    // Anything inconsistent, e.g. after an interrupted write, starts over
+    if (bag.count <= 0
+        || raf.length() < HEADER_SIZE + bitsetSize(bag.count)
+        || bag.seenCount < 0
+        || bag.seenCount > bag.count
+        || bag.cursor < 0
+        || bag.cursor > bag.count) {
+      return null;
+    }
+    return bag;
+  }
+
+  // Clearing the bits is O(count / 8) once per round, O(1) per pick amortized
+  private void startRound(RandomAccessFile raf) throws IOException {
+    seed = new Random().nextLong();
+    cursor = 0;
+    seenCount = 0;
+    raf.setLength(HEADER_SIZE + bitsetSize(count));
+    raf.seek(HEADER_SIZE);
+    byte[] zeros = new byte[(int) Math.min(8 * 1024, bitsetSize(count))];
+    long remaining = bitsetSize(count);
+    while (remaining > 0) {
+      int chunk = (int) Math.min(zeros.length, remaining);
+      raf.write(zeros, 0, chunk);
+      remaining -= chunk;
+    }
+    writeHeader(raf);
+  }
+
+  // Appended quotes start unseen; the order depends on count, so the walk restarts
+  private void grow(RandomAccessFile raf, int newCount) throws IOException {
+    long oldSize = bitsetSize(count);
+    long newSize = bitsetSize(newCount);
+    raf.setLength(HEADER_SIZE + newSize);
+    raf.seek(HEADER_SIZE + oldSize);
+    byte[] zeros = new byte[(int) Math.min(8 * 1024, newSize - oldSize)];
+    long remaining = newSize - oldSize;
+    while (remaining > 0) {
+      int chunk = (int) Math.min(zeros.length, remaining);
+      raf.write(zeros, 0, chunk);
+      remaining -= chunk;
+    }
+    count = newCount;
+    cursor = 0;
+  }
+
+  private void writeHeader(RandomAccessFile raf) throws IOException {
+    raf.seek(0);
+    raf.writeInt(MAGIC);
+    raf.writeInt(VERSION);
+    raf.writeInt(count);
+    raf.writeInt(mode);
+    raf.writeLong(selectionKey);
+    raf.writeLong(seed);
+    raf.writeInt(cursor);
+    raf.writeInt(seenCount);
+  }
+
+  private boolean isSeen(RandomAccessFile raf, int index) throws IOException {
+    raf.seek(HEADER_SIZE + (index >>> 3));
+    return (raf.readByte() & (1 << (index & 7))) != 0;
+  }
+
+  private void markSeen(RandomAccessFile raf, int index) throws IOException {
+    long position = HEADER_SIZE + (index >>> 3);
+    raf.seek(position);
+    int value = raf.readByte() | (1 << (index & 7));
+    raf.seek(position);
+    raf.writeByte(value);
+  }
+
+  private static long bitsetSize(int count) {
+    return (count + 7L) >>> 3;
+  }
+
+  private int order(int position) {
+    return mode == MODE_SEQUENTIAL ? position : permute(position, count, seed);
+  }
+
+  /*
+   * Bijection on 0..count-1. A balanced Feistel network permutes the
+   * smallest even power of two >= count; values outside the range are
+   * encrypted again until they fall inside (cycle walking), which takes
+   * fewer than four steps on average.
+   */
+  static int permute(int value, int count, long seed) {
+    int bits = 2;
+    while ((1L << bits) < count) {
+      bits += 2;
+    }
+    int halfBits = bits / 2;
+    long mask = (1L << halfBits) - 1;
+
+    long x = value;
+    do {
+      long left = x >>> halfBits;
+      long right = x & mask;
+      for (int round = 0; round < ROUNDS; round++) {
+        long next = left ^ (round(seed, round, right) & mask);
+        left = right;
+        right = next;
+      }
+      x = (left << halfBits) | right;
+    } while (x >= count);
+    return (int) x;
+  }
+
+  // SplitMix64 finalizer over seed, round and input
+  private static long round(long seed, int round, long value) {
+    long z = seed + (round + 1) * 0x9E3779B97F4A7C15L + value;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,119 @@
+package com.correctsyntax.biblenotify;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/*
+ * Weighted quote selection. A quote's weight is its category weight, times
+ * the profile's short weight if it is short; favorites get favoriteWeight on
+ * top. The alias table is built over QuoteClasses rather than over quotes,
+ * so a pick is O(1) and a weight change rebuilds O(classes) only. Tables
+ * are cached per profile until its weights, favorites or store change.
+ */
+public final class WeightedSelection {
+  // Where a profile's favorites are kept, Favorites.source() on the device
+  public interface FavoriteSource {
+    // Changes whenever the favorites do
+    long version(String profileId);
+
+    // Kept by the library's selection key, so appends keep them
+    int[] load(String profileId, long selectionKey);
+  }
+
+  private static class Table {
+    final QuoteClasses classes;
+    final long selectionKey;
+    final String weights;
+    final long favoritesVersion;
+    final int[] favorites;
+    final AliasTable alias;
+
+    Table(
+        QuoteClasses classes,
+        long selectionKey,
+        String weights,
+        long favoritesVersion,
+        int[] favorites,
+        AliasTable alias) {
+      this.classes = classes;
+      this.selectionKey = selectionKey;
+      this.weights = weights;
+      this.favoritesVersion = favoritesVersion;
+      this.favorites = favorites;
+      this.alias = alias;
+    }
+  }
+
+  private static final Map<String, Table> tables = new HashMap<>();
+  private static final Random random = new Random();
+
+  private WeightedSelection() {}
+
+  // Returns a record index of the library the classes belong to
+  public static synchronized int next(
+      FavoriteSource favoriteSource, QuoteProfile profile, QuoteClasses classes, long selectionKey)
+      throws IOException {
+    Table table = table(favoriteSource, profile, classes, selectionKey);
+    List<QuoteClasses.QuoteClass> list = classes.classes();
+
+    int column = table.alias.sample(random);
+    if (column == list.size()) {
+      return table.favorites[random.nextInt(table.favorites.length)];
+    }
+    QuoteClasses.QuoteClass quoteClass = list.get(column);
+    return classes.member(quoteClass, random.nextInt(quoteClass.size));
+  }
+
+  private static Table table(
+      FavoriteSource favoriteSource,
+      QuoteProfile profile,
+      QuoteClasses classes,
+      long selectionKey) {
+    String weights = profile.weightsSignature();
+    long favoritesVersion = favoriteSource.version(profile.id);
+
+    Table table = tables.get(profile.id);
+    if (table != null
+        && table.classes == classes
+        && table.selectionKey == selectionKey
+        && table.weights.equals(weights)
+        && table.favoritesVersion == favoritesVersion) {
+      return table;
+    }
+
+    int[] favorites = favoriteSource.load(profile.id, selectionKey);
+    List<QuoteClasses.QuoteClass> list = classes.classes();
+
+    // One column per class, plus one for the favorites
+    double[] columns = new double[list.size() + 1];
+    double total = 0;
+    for (int i = 0; i < list.size(); i++) {
+      QuoteClasses.QuoteClass quoteClass = list.get(i);
+      double weight = profile.categoryWeight(quoteClass.category);
+      if (quoteClass.isShort) {
+        weight *= profile.shortWeight;
+      }
+      columns[i] = weight * quoteClass.size;
+      total += columns[i];
+    }
+    columns[list.size()] = (double) profile.favoriteWeight * favorites.length;
+    total += columns[list.size()];
+
+    // Everything weighted to zero falls back to uniform
+    if (total <= 0) {
+      for (int i = 0; i < list.size(); i++) {
+        columns[i] = list.get(i).size;
+      }
+      columns[list.size()] = 0;
+    }
+
+    table =
+        new Table(
+            classes, selectionKey, weights, favoritesVersion, favorites, new AliasTable(columns));
+    tables.put(profile.id, table);
+    return table;
+  }
+}
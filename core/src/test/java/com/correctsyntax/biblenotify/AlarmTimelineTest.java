@@ -0,0 +1,255 @@
+package com.correctsyntax.biblenotify;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AlarmTimelineTest {
+  private static final ZoneId PARIS = ZoneId.of("Europe/Paris");
+  private static final TimeZone PARIS_ZONE = TimeZone.getTimeZone(PARIS);
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static long paris(int year, int month, int day, int hour, int minute) {
+    return LocalDateTime.of(year, month, day, hour, minute)
+        .atZone(PARIS)
+        .toInstant()
+        .toEpochMilli();
+  }
+
+  private static long utc(int year, int month, int day, int hour, int minute) {
+    return LocalDateTime.of(year, month, day, hour, minute)
+        .toInstant(ZoneOffset.UTC)
+        .toEpochMilli();
+  }
+
+  private static QuoteProfile profile(String id, int hour, int minute) {
+    return new QuoteProfile(id, id, "General", hour, minute);
+  }
+
+  // A clock the test moves by hand
+  private static class TestClock implements Clock {
+    long now;
+
+    TestClock(long now) {
+      this.now = now;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+      return now;
+    }
+
+    @Override
+    public TimeZone timeZone() {
+      return PARIS_ZONE;
+    }
+  }
+
+  @Test
+  public void nextFireTimeIsTodayOrLater() {
+    QuoteProfile profile = profile("p", 9, 30);
+    // Wednesday 2024-05-15
+    assertEquals(
+        paris(2024, 5, 15, 9, 30), profile.nextFireTime(paris(2024, 5, 15, 8, 0), PARIS_ZONE));
+    assertEquals(
+        paris(2024, 5, 16, 9, 30), profile.nextFireTime(paris(2024, 5, 15, 9, 30), PARIS_ZONE));
+    assertEquals(
+        paris(2024, 5, 16, 9, 30), profile.nextFireTime(paris(2024, 5, 15, 22, 0), PARIS_ZONE));
+  }
+
+  @Test
+  public void nextFireTimeSkipsUnselectedDays() {
+    QuoteProfile profile = profile("p", 9, 30);
+    Arrays.fill(profile.selectedDays, false);
+    assertEquals(-1, profile.nextFireTime(paris(2024, 5, 15, 8, 0), PARIS_ZONE));
+
+    // Mondays only: from a Wednesday to the next Monday, from a Monday evening a week on
+    profile.selectedDays[1] = true;
+    assertEquals(
+        paris(2024, 5, 20, 9, 30), profile.nextFireTime(paris(2024, 5, 15, 8, 0), PARIS_ZONE));
+    assertEquals(
+        paris(2024, 5, 27, 9, 30), profile.nextFireTime(paris(2024, 5, 20, 20, 0), PARIS_ZONE));
+  }
+
+  // 2024-03-31 02:00 to 03:00 does not exist in Paris, 02:30 fires at 03:30
+  @Test
+  public void skippedTimeMovesForwardByTheGap() {
+    QuoteProfile profile = profile("p", 2, 30);
+    long fire = profile.nextFireTime(paris(2024, 3, 30, 12, 0), PARIS_ZONE);
+    assertEquals(utc(2024, 3, 31, 1, 30), fire);
+    assertEquals(paris(2024, 3, 31, 3, 30), fire);
+    assertEquals(paris(2024, 4, 1, 2, 30), profile.nextFireTime(fire, PARIS_ZONE));
+  }
+
+  // 2024-10-27 02:30 happens twice in Paris, the profile fires the first time only
+  @Test
+  public void repeatedTimeFiresOnce() {
+    QuoteProfile profile = profile("p", 2, 30);
+    long fire = profile.nextFireTime(paris(2024, 10, 26, 12, 0), PARIS_ZONE);
+    assertEquals(utc(2024, 10, 27, 0, 30), fire);
+    assertEquals(utc(2024, 10, 28, 1, 30), profile.nextFireTime(fire, PARIS_ZONE));
+  }
+
+  // The time of day stays put across a DST change, the instant moves by an hour
+  @Test
+  public void wallClockTimeAcrossTransitions() {
+    QuoteProfile profile = profile("p", 9, 0);
+    long before = profile.nextFireTime(paris(2024, 3, 29, 12, 0), PARIS_ZONE);
+    assertEquals(utc(2024, 3, 30, 8, 0), before);
+    long after = profile.nextFireTime(before, PARIS_ZONE);
+    assertEquals(utc(2024, 3, 31, 7, 0), after);
+    assertEquals(23 * 60 * 60 * 1000L, after - before);
+  }
+
+  @Test
+  public void timelineOrdersByTimeThenId() {
+    long now = paris(2024, 5, 15, 8, 0);
+    List<QuoteProfile> profiles =
+        Arrays.asList(profile("c", 10, 0), profile("b", 9, 0), profile("a", 10, 0));
+    AlarmTimeline timeline = AlarmTimeline.build(profiles, now, PARIS_ZONE);
+    assertEquals(3, timeline.size());
+
+    List<String> order = new ArrayList<>();
+    while (timeline.peek() != null) {
+      AlarmTimeline.Fire head = timeline.peek();
+      order.add(head.profileId);
+      timeline.advance(head.profileId, null, head.time, PARIS_ZONE);
+    }
+    assertEquals(Arrays.asList("b", "a", "c"), order);
+  }
+
+  @Test
+  public void advanceMovesOnlyThatProfile() {
+    long now = paris(2024, 5, 15, 8, 0);
+    QuoteProfile a = profile("a", 9, 0);
+    QuoteProfile b = profile("b", 12, 0);
+    AlarmTimeline timeline = AlarmTimeline.build(Arrays.asList(a, b), now, PARIS_ZONE);
+
+    // The head, delivered at its time
+    timeline.advance("a", a, paris(2024, 5, 15, 9, 0), PARIS_ZONE);
+    assertEquals("b", timeline.peek().profileId);
+    assertEquals(2, timeline.size());
+
+    // Not the head: edited to an earlier time
+    b.hour = 10;
+    timeline.advance("b", b, paris(2024, 5, 15, 9, 0), PARIS_ZONE);
+    assertEquals(paris(2024, 5, 15, 10, 0), timeline.peek().time);
+    assertEquals(2, timeline.size());
+
+    // Disabled or deleted profiles leave the timeline
+    b.enabled = false;
+    timeline.advance("b", b, paris(2024, 5, 15, 9, 0), PARIS_ZONE);
+    timeline.advance("a", null, paris(2024, 5, 15, 9, 0), PARIS_ZONE);
+    assertNull(timeline.peek());
+  }
+
+  @Test
+  public void timelineRoundTrip() throws IOException {
+    long now = paris(2024, 5, 15, 8, 0);
+    List<QuoteProfile> profiles = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      profiles.add(profile("p" + i, i % 24, (i * 7) % 60));
+    }
+    File file = new File(folder.getRoot(), "alarm_timeline.bin");
+    AlarmTimeline.build(profiles, now, PARIS_ZONE).write(file);
+
+    AlarmTimeline expected = AlarmTimeline.build(profiles, now, PARIS_ZONE);
+    AlarmTimeline read = AlarmTimeline.read(file);
+    assertEquals(expected.size(), read.size());
+    while (expected.peek() != null) {
+      AlarmTimeline.Fire want = expected.peek();
+      AlarmTimeline.Fire got = read.peek();
+      assertEquals(want.profileId, got.profileId);
+      assertEquals(want.time, got.time);
+      expected.remove(want.profileId);
+      read.remove(got.profileId);
+    }
+    assertEquals(0, read.size());
+  }
+
+  @Test
+  public void rejectsOtherFiles() throws IOException {
+    File file = new File(folder.getRoot(), "alarm_timeline.bin");
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(new byte[] {0, 0, 0, 1, 0, 0, 0, 1});
+    }
+    assertThrows(IOException.class, () -> AlarmTimeline.read(file));
+
+    AlarmTimeline.build(Collections.singletonList(profile("a", 9, 0)), 0, PARIS_ZONE).write(file);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 2);
+    }
+    assertThrows(IOException.class, () -> AlarmTimeline.read(file));
+  }
+
+  @Test
+  public void schedulerArmsEveryNewHead() {
+    TestClock clock = new TestClock(paris(2024, 5, 15, 8, 0));
+    List<AlarmTimeline.Fire> armed = new ArrayList<>();
+    AlarmScheduler scheduler = new AlarmScheduler(clock, armed::add);
+    QuoteProfile a = profile("a", 9, 0);
+    QuoteProfile b = profile("b", 9, 0);
+
+    assertThrows(IllegalStateException.class, () -> scheduler.delivered("a", a));
+
+    AlarmTimeline.Fire head = scheduler.rebuild(Arrays.asList(a, b));
+    assertEquals("a", head.profileId);
+
+    // Same minute: b is due straight away after a
+    clock.now = head.time;
+    assertEquals("b", scheduler.delivered("a", a).profileId);
+    assertEquals(head.time, scheduler.head().time);
+    AlarmTimeline.Fire next = scheduler.delivered("b", b);
+    assertEquals("a", next.profileId);
+    assertEquals(paris(2024, 5, 16, 9, 0), next.time);
+
+    long[] times = new long[armed.size()];
+    for (int i = 0; i < times.length; i++) {
+      times[i] = armed.get(i).time;
+    }
+    assertArrayEquals(
+        new long[] {paris(2024, 5, 15, 9, 0), paris(2024, 5, 15, 9, 0), next.time}, times);
+
+    // Nothing left to schedule
+    assertNull(scheduler.rebuild(Collections.<QuoteProfile>emptyList()));
+    assertNull(armed.get(armed.size() - 1));
+  }
+
+  // A restored timeline is already armed, only the next change arms again
+  @Test
+  public void schedulerRestoresWithoutArming() throws IOException {
+    TestClock clock = new TestClock(paris(2024, 5, 15, 8, 0));
+    QuoteProfile a = profile("a", 9, 0);
+    File file = new File(folder.getRoot(), "alarm_timeline.bin");
+    AlarmTimeline.build(Collections.singletonList(a), clock.now, PARIS_ZONE).write(file);
+
+    List<AlarmTimeline.Fire> armed = new ArrayList<>();
+    AlarmScheduler scheduler = new AlarmScheduler(clock, armed::add);
+    scheduler.restore(AlarmTimeline.read(file));
+    assertEquals(0, armed.size());
+    assertEquals(paris(2024, 5, 15, 9, 0), scheduler.head().time);
+
+    clock.now = scheduler.head().time;
+    scheduler.delivered("a", a);
+    assertEquals(1, armed.size());
+    assertEquals(paris(2024, 5, 16, 9, 0), armed.get(0).time);
+  }
+}
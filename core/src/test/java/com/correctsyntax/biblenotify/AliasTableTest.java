@@ -0,0 +1,80 @@
+package com.correctsyntax.biblenotify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class AliasTableTest {
+  private static final int SAMPLES = 400_000;
+
+  private static int[] sample(AliasTable table, long seed) {
+    int[] counts = new int[table.size()];
+    Random random = new Random(seed);
+    for (int i = 0; i < SAMPLES; i++) {
+      counts[table.sample(random)]++;
+    }
+    return counts;
+  }
+
+  // Every column within 5 standard deviations of its expected count
+  private static void assertDistribution(double[] weights, int[] counts) {
+    double total = 0;
+    for (double weight : weights) {
+      total += weight;
+    }
+    for (int i = 0; i < weights.length; i++) {
+      double p = weights[i] / total;
+      double expected = SAMPLES * p;
+      double tolerance = 5 * Math.sqrt(SAMPLES * p * (1 - p)) + 1;
+      assertEquals("column " + i, expected, counts[i], tolerance);
+    }
+  }
+
+  @Test
+  public void followsWeights() {
+    double[][] cases = {
+      {1},
+      {1, 1, 1, 1},
+      {1, 2, 3, 4},
+      {100, 1, 0.5, 10, 0.01},
+      {0.3, 0.3, 0.4},
+    };
+    for (double[] weights : cases) {
+      assertDistribution(weights, sample(new AliasTable(weights), 42));
+    }
+  }
+
+  @Test
+  public void neverPicksZeroWeights() {
+    double[] weights = {0, 3, 0, 1, 0};
+    int[] counts = sample(new AliasTable(weights), 7);
+    assertEquals(0, counts[0]);
+    assertEquals(0, counts[2]);
+    assertEquals(0, counts[4]);
+    assertDistribution(weights, counts);
+  }
+
+  @Test
+  public void manyColumns() {
+    double[] weights = new double[1000];
+    Random random = new Random(1);
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = random.nextInt(10);
+    }
+    weights[0] = 1;
+    assertDistribution(weights, sample(new AliasTable(weights), 3));
+  }
+
+  @Test
+  public void rejectsInvalidWeights() {
+    assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[0]));
+    assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] {0, 0}));
+    assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] {1, -1}));
+    assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] {Double.NaN}));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new AliasTable(new double[] {1, Double.POSITIVE_INFINITY}));
+  }
+}
@@ -0,0 +1,163 @@
+package com.correctsyntax.biblenotify;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DeliveryTelemetryTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File file;
+
+  @Before
+  public void setUp() {
+    file = new File(folder.getRoot(), "telemetry/deliveries.bin");
+  }
+
+  // Every field derived from i, so a record read back tells where it came from
+  private static DeliveryTelemetry.Record record(int i) {
+    return new DeliveryTelemetry.Record(
+        1_000_000L * i,
+        1_000_000L * i + i % 7,
+        i,
+        i + 1,
+        i + 2,
+        i + 3,
+        i + 4,
+        i % 2 == 0 ? DeliveryTelemetry.FLAG_EXACT : DeliveryTelemetry.FLAG_INEXACT);
+  }
+
+  private static void assertRecord(int i, DeliveryTelemetry.Record record) {
+    DeliveryTelemetry.Record expected = record(i);
+    assertEquals(expected.scheduledAt, record.scheduledAt);
+    assertEquals(expected.firedAt, record.firedAt);
+    assertEquals(expected.queueMs, record.queueMs);
+    assertEquals(expected.payloadMs, record.payloadMs);
+    assertEquals(expected.rescheduleMs, record.rescheduleMs);
+    assertEquals(expected.notifyMs, record.notifyMs);
+    assertEquals(expected.stageMs, record.stageMs);
+    assertEquals(expected.flags, record.flags);
+  }
+
+  @Test
+  public void readsOldestFirst() throws IOException {
+    assertTrue(DeliveryTelemetry.read(file).isEmpty());
+    for (int i = 0; i < 10; i++) {
+      DeliveryTelemetry.append(file, record(i));
+    }
+    List<DeliveryTelemetry.Record> records = DeliveryTelemetry.read(file);
+    assertEquals(10, records.size());
+    for (int i = 0; i < 10; i++) {
+      assertRecord(i, records.get(i));
+    }
+  }
+
+  // Past capacity the oldest records are overwritten and the file stops growing
+  @Test
+  public void ringWrapsAround() throws IOException {
+    int total = DeliveryTelemetry.CAPACITY * 2 + 37;
+    for (int i = 0; i < total; i++) {
+      DeliveryTelemetry.append(file, record(i));
+      if (i == DeliveryTelemetry.CAPACITY - 1) {
+        List<DeliveryTelemetry.Record> full = DeliveryTelemetry.read(file);
+        assertEquals(DeliveryTelemetry.CAPACITY, full.size());
+        assertRecord(0, full.get(0));
+      }
+    }
+    assertEquals(
+        DeliveryTelemetry.HEADER_SIZE
+            + (long) DeliveryTelemetry.CAPACITY * DeliveryTelemetry.RECORD_SIZE,
+        file.length());
+
+    List<DeliveryTelemetry.Record> records = DeliveryTelemetry.read(file);
+    assertEquals(DeliveryTelemetry.CAPACITY, records.size());
+    int first = total - DeliveryTelemetry.CAPACITY;
+    for (int i = 0; i < records.size(); i++) {
+      assertRecord(first + i, records.get(i));
+    }
+  }
+
+  // A file of another version or format is ignored, then replaced
+  @Test
+  public void startsOverOnOtherFiles() throws IOException {
+    for (int i = 0; i < 5; i++) {
+      DeliveryTelemetry.append(file, record(i));
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(4);
+      raf.writeInt(DeliveryTelemetry.VERSION + 1);
+    }
+    assertTrue(DeliveryTelemetry.read(file).isEmpty());
+
+    DeliveryTelemetry.append(file, record(42));
+    List<DeliveryTelemetry.Record> records = DeliveryTelemetry.read(file);
+    assertEquals(1, records.size());
+    assertRecord(42, records.get(0));
+
+    DeliveryTelemetry.clear(file);
+    assertFalse(file.exists());
+    assertTrue(DeliveryTelemetry.read(file).isEmpty());
+  }
+
+  @Test
+  public void nearestRankPercentiles() {
+    long[] values = new long[100];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = 100 - i;
+    }
+    assertArrayEquals(
+        new long[] {1, 50, 90, 99, 100},
+        DeliveryTelemetry.percentiles(values, 0, 50, 90, 99, 100));
+    assertEquals(100, values[0]);
+
+    assertArrayEquals(new long[] {7, 7}, DeliveryTelemetry.percentiles(new long[] {7}, 1, 99));
+    assertArrayEquals(new long[] {0, 0}, DeliveryTelemetry.percentiles(new long[0], 50, 90));
+  }
+
+  @Test
+  public void csvOneLinePerRecord() throws IOException {
+    DeliveryTelemetry.Record staged =
+        new DeliveryTelemetry.Record(
+            1000,
+            1250,
+            3,
+            1,
+            4,
+            10,
+            20,
+            DeliveryTelemetry.FLAG_EXACT | DeliveryTelemetry.FLAG_STAGED);
+    DeliveryTelemetry.Record notPosted =
+        new DeliveryTelemetry.Record(
+            2000,
+            2000,
+            5,
+            80,
+            2,
+            0,
+            0,
+            DeliveryTelemetry.FLAG_INEXACT
+                | DeliveryTelemetry.FLAG_PREPARED
+                | DeliveryTelemetry.FLAG_NOT_POSTED
+                | DeliveryTelemetry.FLAG_NOT_STAGED);
+    StringWriter out = new StringWriter();
+    DeliveryTelemetry.writeCsv(Arrays.asList(staged, notPosted), out);
+
+    String[] lines = out.toString().split("\n");
+    assertEquals(3, lines.length);
+    assertEquals(13, lines[0].split(",").length);
+    assertEquals("1000,1250,250,3,1,4,10,20,18,1,1,1,1", lines[1]);
+    assertEquals("2000,2000,0,5,80,2,0,0,87,0,0,0,0", lines[2]);
+  }
+}
@@ -0,0 +1,156 @@
+package com.correctsyntax.biblenotify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QuoteClassesTest {
+  private static final String LONG_QUOTE =
+      new String(new char[QuoteClasses.SHORT_QUOTE_LENGTH + 1]).replace('\0', 'x');
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File root;
+
+  @Before
+  public void setUp() {
+    root = new File(folder.getRoot(), "quotes_x.bin");
+  }
+
+  // Segments with categories of their own and shared ones, short and long quotes
+  private void writeSegments(int segments, int perSegment) throws IOException {
+    Random random = new Random(3);
+    for (int segment = 0; segment < segments; segment++) {
+      try (QuoteLibrary.Writer writer =
+          segment == 0 ? QuoteLibrary.replace(root) : QuoteLibrary.append(root)) {
+        for (int i = 0; i < perSegment; i++) {
+          String verse = random.nextBoolean() ? "short" : LONG_QUOTE;
+          String place = "cat" + (segment * 2 + random.nextInt(4));
+          writer.add(verse, place, "custom/" + writer.nextIndex());
+        }
+        writer.commit();
+      }
+    }
+  }
+
+  // Members of every class, by category and length
+  private static Map<String, List<Integer>> members(QuoteClasses classes) throws IOException {
+    Map<String, List<Integer>> members = new TreeMap<>();
+    for (QuoteClasses.QuoteClass quoteClass : classes.classes()) {
+      List<Integer> list = new ArrayList<>();
+      for (int i = 0; i < quoteClass.size; i++) {
+        list.add(classes.member(quoteClass, i));
+      }
+      members.put(quoteClass.category + (quoteClass.isShort ? ":short" : ":long"), list);
+    }
+    return members;
+  }
+
+  @Test
+  public void classesMatchTheRecords() throws IOException {
+    writeSegments(1, 500);
+    try (QuoteLibrary library = QuoteLibrary.open(root);
+        QuoteClasses classes =
+            QuoteClasses.open(QuoteClasses.fileFor(library.segmentFile(0)), library.checksum())) {
+      int total = 0;
+      for (Map.Entry<String, List<Integer>> entry : members(classes).entrySet()) {
+        for (int index : entry.getValue()) {
+          QuoteStore.Record record = library.get(index);
+          String expected =
+              record.place + (QuoteClasses.isShort(record.verse) ? ":short" : ":long");
+          assertEquals(expected, entry.getKey());
+          total++;
+        }
+      }
+      assertEquals(library.count(), total);
+    }
+  }
+
+  // Appends merge the segments' sidecars, which must give what a full scan gives
+  @Test
+  public void mergeEqualsBuild() throws IOException {
+    writeSegments(3, 3000);
+    try (QuoteLibrary library = QuoteLibrary.open(root)) {
+      File merged = QuoteClasses.fileFor(library.file());
+      assertTrue(merged.exists());
+      File built = new File(folder.getRoot(), "built.cls");
+      QuoteClasses.build(library, built);
+
+      try (QuoteClasses fromMerge = QuoteClasses.open(merged, library.checksum());
+          QuoteClasses fromBuild = QuoteClasses.open(built, library.checksum())) {
+        assertEquals(members(fromBuild), members(fromMerge));
+      }
+    }
+  }
+
+  @Test
+  public void mergeRebuildsMissingSegmentSidecars() throws IOException {
+    writeSegments(3, 200);
+    try (QuoteLibrary library = QuoteLibrary.open(root)) {
+      File sidecar = QuoteClasses.fileFor(library.segmentFile(1));
+      assertTrue(sidecar.delete());
+      File merged = new File(folder.getRoot(), "merged.cls");
+      QuoteClasses.merge(library, merged);
+      assertTrue(sidecar.exists());
+
+      File built = new File(folder.getRoot(), "built.cls");
+      QuoteClasses.build(library, built);
+      try (QuoteClasses fromMerge = QuoteClasses.open(merged, library.checksum());
+          QuoteClasses fromBuild = QuoteClasses.open(built, library.checksum())) {
+        assertEquals(members(fromBuild), members(fromMerge));
+      }
+    }
+  }
+
+  @Test
+  public void bibleVersesGroupedByBook() {
+    assertEquals("Genesis", QuoteClasses.categoryOf("Genesis 1:1", "Genesis/1"));
+    assertEquals("Psalms", QuoteClasses.categoryOf("Psalm 23:1", "Psalms/23"));
+    assertEquals("Hope", QuoteClasses.categoryOf("Hope", "custom/4"));
+    assertEquals("", QuoteClasses.categoryOf(null, null));
+    assertTrue(QuoteClasses.isShort("short"));
+    assertFalse(QuoteClasses.isShort(LONG_QUOTE));
+  }
+
+  @Test
+  public void rejectsOutOfDateClasses() throws IOException {
+    writeSegments(1, 10);
+    try (QuoteLibrary library = QuoteLibrary.open(root)) {
+      File file = QuoteClasses.fileFor(library.segmentFile(0));
+      IOException e =
+          assertThrows(IOException.class, () -> QuoteClasses.open(file, library.checksum() + 1));
+      assertTrue(e.getMessage().contains("out of date"));
+    }
+  }
+
+  @Test
+  public void rejectsTruncatedClasses() throws IOException {
+    writeSegments(1, 10);
+    try (QuoteLibrary library = QuoteLibrary.open(root)) {
+      File file = QuoteClasses.fileFor(library.segmentFile(0));
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(30);
+      }
+      assertThrows(IOException.class, () -> QuoteClasses.open(file, library.checksum()));
+
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.writeInt(QuoteStore.MAGIC);
+      }
+      assertThrows(IOException.class, () -> QuoteClasses.open(file, library.checksum()));
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package com.correctsyntax.biblenotify;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class QuoteImporterTest {
+  // What the import did before QuoteImporter
+  private static String cleanWithRegexes(String text) {
+    text = text.trim();
+    text = text.replaceAll("^\\d+\\.\\s*", "");
+    text = text.replaceAll("^\\d+\\s*", "");
+    text = text.replaceAll("^-\\s*", "");
+    text = text.replaceAll("^•\\s*", "");
+    return text.trim();
+  }
+
+  private static List<String> importText(String text) throws IOException {
+    List<String> quotes = new ArrayList<>();
+    int count = QuoteImporter.run(new StringReader(text), quotes::add);
+    assertEquals(quotes.size(), count);
+    return quotes;
+  }
+
+  @Test
+  public void stripsListPrefixes() {
+    assertEquals("Be still", QuoteImporter.cleanQuoteText("12. Be still"));
+    assertEquals("Be still", QuoteImporter.cleanQuoteText("  3 Be still  "));
+    assertEquals("Be still", QuoteImporter.cleanQuoteText("- Be still"));
+    assertEquals("Be still", QuoteImporter.cleanQuoteText("•\tBe still"));
+    assertEquals("Be still", QuoteImporter.cleanQuoteText("1. - • Be still"));
+    assertEquals("", QuoteImporter.cleanQuoteText(" 42. "));
+    // Only one of each, in that order
+    assertEquals("- 2. Be still", QuoteImporter.cleanQuoteText("• - 2. Be still"));
+  }
+
+  @Test
+  public void cleansLikeTheRegexes() {
+    char[] alphabet = {' ', '\t', '\u000B', '\f', '\u0001', '1', '9', '.', '-', '•', 'a', 'Z'};
+    Random random = new Random(11);
+    for (int i = 0; i < 100_000; i++) {
+      char[] text = new char[random.nextInt(10)];
+      for (int c = 0; c < text.length; c++) {
+        text[c] = alphabet[random.nextInt(alphabet.length)];
+      }
+      String line = new String(text);
+      assertEquals(
+          "\"" + line + "\"", cleanWithRegexes(line), QuoteImporter.cleanQuoteText(line));
+    }
+  }
+
+  @Test
+  public void splitsLinesOfEveryKind() throws IOException {
+    assertEquals(
+        Arrays.asList("One", "Two", "Three", "Four"),
+        importText("1. One\n2. Two\r\n3. Three\r4. Four"));
+    assertEquals(Arrays.asList("One", "Two"), importText("\n\n  One  \n \t \n- Two\n\n"));
+    assertEquals(Arrays.asList(), importText(""));
+    assertEquals(Arrays.asList(), importText("\r\n1.\n-\n"));
+  }
+
+  // Lines do not have to fit in a chunk
+  @Test
+  public void linesAcrossChunks() throws IOException {
+    StringBuilder text = new StringBuilder();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      char[] quote = new char[1 + (i * 997) % (2 * QuoteImporter.CHUNK_SIZE)];
+      Arrays.fill(quote, (char) ('a' + i % 26));
+      expected.add(new String(quote));
+      text.append(i).append(". ").append(quote).append(i % 2 == 0 ? "\n" : "\r\n");
+    }
+    assertEquals(expected, importText(text.toString()));
+  }
+
+  // Long lines are cut to MAX_LINE_LENGTH and reported with their full length
+  @Test
+  public void cutsLongLines() throws IOException {
+    int max = QuoteImporter.MAX_LINE_LENGTH;
+    String text =
+        repeat('a', max) + "\n" + repeat('b', max + 1) + "\r\n" + repeat('c', 3 * max) + "\nd";
+    List<String> quotes = new ArrayList<>();
+    List<Integer> cut = new ArrayList<>();
+    int count = QuoteImporter.run(new StringReader(text), quotes::add, cut::add);
+
+    assertEquals(4, count);
+    assertEquals(
+        Arrays.asList(repeat('a', max), repeat('b', max), repeat('c', max), "d"), quotes);
+    assertEquals(Arrays.asList(max + 1, 3 * max), cut);
+  }
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+}
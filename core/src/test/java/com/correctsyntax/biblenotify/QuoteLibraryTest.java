@@ -0,0 +1,223 @@
+package com.correctsyntax.biblenotify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QuoteLibraryTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File root;
+
+  @Before
+  public void setUp() {
+    root = new File(folder.getRoot(), "quotes_x.bin");
+  }
+
+  private void write(boolean append, int count, String tag) throws IOException {
+    try (QuoteLibrary.Writer writer =
+        append ? QuoteLibrary.append(root) : QuoteLibrary.replace(root)) {
+      for (int i = 0; i < count; i++) {
+        writer.add(tag + " " + i, tag, "custom/" + writer.nextIndex());
+      }
+      writer.commit();
+    }
+  }
+
+  private static void assertRecords(QuoteLibrary library, String... tags) throws IOException {
+    int index = 0;
+    for (String tag : tags) {
+      String[] parts = tag.split(":");
+      for (int i = 0; i < Integer.parseInt(parts[1]); i++) {
+        QuoteStore.Record record = library.get(index);
+        assertEquals(parts[0] + " " + i, record.verse);
+        assertEquals("custom/" + index, record.data);
+        index++;
+      }
+    }
+    assertEquals(index, library.count());
+  }
+
+  // Older imports and the bundled verses: a root store without a manifest
+  @Test
+  public void rootStoreAlone() throws IOException {
+    QuoteStoreTest.write(root, 10);
+    assertFalse(QuoteLibrary.manifestFor(root).exists());
+    try (QuoteLibrary library = QuoteLibrary.open(root)) {
+      assertEquals(1, library.segmentCount());
+      assertEquals(10, library.count());
+      assertEquals(QuoteStore.readChecksum(root), library.checksum());
+      assertEquals(library.checksum(), library.selectionKey());
+      assertEquals(root, library.file());
+    }
+  }
+
+  @Test
+  public void appendRoundTrip() throws IOException {
+    write(false, 5, "a");
+    write(true, 3, "b");
+    write(true, 4, "c");
+
+    try (QuoteLibrary library = QuoteLibrary.open(root)) {
+      assertEquals(3, library.segmentCount());
+      assertEquals(0, library.base(0));
+      assertEquals(5, library.base(1));
+      assertEquals(8, library.base(2));
+      assertRecords(library, "a:5", "b:3", "c:4");
+      assertEquals(QuoteLibrary.readChecksum(root), library.checksum());
+      assertEquals(QuoteLibrary.manifestFor(root), library.file());
+    }
+  }
+
+  // The checksum changes with every commit, the selection key only on replace
+  @Test
+  public void selectionKeySurvivesAppendAndCompaction() throws IOException {
+    write(false, 5, "a");
+    long checksum = QuoteLibrary.readChecksum(root);
+    long key;
+    try (QuoteLibrary library = QuoteLibrary.open(root)) {
+      key = library.selectionKey();
+    }
+
+    for (int i = 0; i < QuoteLibrary.COMPACT_SEGMENTS; i++) {
+      write(true, 2, "b" + i);
+    }
+    assertNotEquals(checksum, QuoteLibrary.readChecksum(root));
+    assertTrue(QuoteLibrary.needsCompaction(root));
+    try (QuoteLibrary library = QuoteLibrary.open(root)) {
+      assertEquals(key, library.selectionKey());
+    }
+
+    assertEquals(QuoteLibrary.COMPACT_SEGMENTS + 1, QuoteLibrary.compact(root));
+    assertFalse(QuoteLibrary.needsCompaction(root));
+    try (QuoteLibrary library = QuoteLibrary.open(root)) {
+      assertEquals(1, library.segmentCount());
+      assertEquals(key, library.selectionKey());
+      assertRecords(library, "a:5", "b0:2", "b1:2", "b2:2", "b3:2");
+    }
+
+    write(false, 5, "z");
+    try (QuoteLibrary library = QuoteLibrary.open(root)) {
+      assertNotEquals(key, library.selectionKey());
+      assertRecords(library, "z:5");
+    }
+  }
+
+  @Test
+  public void compactionDeletesMergedSegments() throws IOException {
+    write(false, 2, "a");
+    write(true, 2, "b");
+    write(true, 2, "c");
+    assertEquals(3, QuoteLibrary.compact(root));
+    assertEquals(0, QuoteLibrary.compact(root));
+
+    // The segment, its two sidecars, the manifest and the merged classes at most
+    int files = 0;
+    for (String name : folder.getRoot().list()) {
+      assertFalse(name, name.endsWith(".tmp"));
+      files++;
+    }
+    assertTrue(files <= 5);
+  }
+
+  @Test
+  public void uncommittedWriterChangesNothing() throws IOException {
+    write(false, 3, "a");
+    long checksum = QuoteLibrary.readChecksum(root);
+    try (QuoteLibrary.Writer writer = QuoteLibrary.append(root)) {
+      writer.add("lost", "lost", "custom/3");
+    }
+    assertEquals(checksum, QuoteLibrary.readChecksum(root));
+    try (QuoteLibrary library = QuoteLibrary.open(root)) {
+      assertRecords(library, "a:3");
+    }
+  }
+
+  // Version 1 manifests had no selection key, the first segment's checksum stands in
+  @Test
+  public void readsVersion1Manifest() throws IOException {
+    write(false, 3, "a");
+    write(true, 3, "b");
+    File first;
+    File second;
+    try (QuoteLibrary library = QuoteLibrary.open(root)) {
+      first = library.segmentFile(0);
+      second = library.segmentFile(1);
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(QuoteLibrary.MAGIC);
+    out.writeInt(1);
+    out.writeInt(2);
+    out.writeUTF(first.getName());
+    out.writeUTF(second.getName());
+    CRC32 crc = new CRC32();
+    crc.update(bytes.toByteArray());
+    out.writeLong(crc.getValue());
+    try (FileOutputStream fos = new FileOutputStream(QuoteLibrary.manifestFor(root))) {
+      bytes.writeTo(fos);
+    }
+
+    try (QuoteLibrary library = QuoteLibrary.open(root)) {
+      assertRecords(library, "a:3", "b:3");
+      assertEquals(QuoteStore.readChecksum(first), library.selectionKey());
+    }
+  }
+
+  @Test
+  public void rejectsCorruptManifest() throws IOException {
+    write(false, 3, "a");
+    write(true, 3, "b");
+    File manifest = QuoteLibrary.manifestFor(root);
+    try (RandomAccessFile raf = new RandomAccessFile(manifest, "rw")) {
+      raf.seek(12);
+      int b = raf.read();
+      raf.seek(12);
+      raf.write(b ^ 0x01);
+    }
+    IOException e = assertThrows(IOException.class, () -> QuoteLibrary.open(root));
+    assertTrue(e.getMessage().startsWith("Corrupt"));
+  }
+
+  @Test
+  public void rejectsTruncatedManifest() throws IOException {
+    write(false, 3, "a");
+    write(true, 3, "b");
+    File manifest = QuoteLibrary.manifestFor(root);
+    try (RandomAccessFile raf = new RandomAccessFile(manifest, "rw")) {
+      raf.setLength(raf.length() - 3);
+    }
+    assertThrows(IOException.class, () -> QuoteLibrary.open(root));
+
+    try (RandomAccessFile raf = new RandomAccessFile(manifest, "rw")) {
+      raf.setLength(4);
+    }
+    IOException e = assertThrows(IOException.class, () -> QuoteLibrary.open(root));
+    assertTrue(e.getMessage().startsWith("Truncated"));
+  }
+
+  @Test
+  public void rejectsMissingSegment() throws IOException {
+    write(false, 3, "a");
+    write(true, 3, "b");
+    try (QuoteLibrary library = QuoteLibrary.open(root)) {
+      assertTrue(library.segmentFile(1).delete());
+    }
+    assertThrows(IOException.class, () -> QuoteLibrary.open(root));
+  }
+}
@@ -0,0 +1,128 @@
+package com.correctsyntax.biblenotify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QuoteStoreTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  static File write(File target, int count) throws IOException {
+    try (QuoteStore.Writer writer = new QuoteStore.Writer(target)) {
+      for (int i = 0; i < count; i++) {
+        writer.add("Quote " + i, "Category " + (i % 3), "custom/" + i);
+      }
+      writer.commit();
+    }
+    return target;
+  }
+
+  @Test
+  public void roundTrip() throws IOException {
+    File file = folder.newFile("quotes.bin");
+    try (QuoteStore.Writer writer = new QuoteStore.Writer(file)) {
+      writer.add("In the beginning", "Genesis 1:1", "Genesis/1");
+      writer.add("Éternel, tu m’as sondé", "Psaume 139:1", "Psalms/139");
+      writer.add("", null, "custom/2");
+      writer.commit();
+    }
+
+    try (QuoteStore store = QuoteStore.open(file)) {
+      assertEquals(3, store.count());
+      assertEquals("In the beginning", store.get(0).verse);
+      assertEquals("Genesis 1:1", store.get(0).place);
+      assertEquals("Genesis/1", store.get(0).data);
+      assertEquals("Éternel, tu m’as sondé", store.get(1).verse);
+      assertEquals("", store.get(2).verse);
+      assertEquals("", store.get(2).place);
+      assertEquals(QuoteStore.readChecksum(file), store.checksum());
+    }
+  }
+
+  // Places past the shared table are stored inline with their record
+  @Test
+  public void inlinePlaces() throws IOException {
+    File file = folder.newFile("quotes.bin");
+    int count = QuoteStore.MAX_SHARED_STRINGS + 10;
+    try (QuoteStore.Writer writer = new QuoteStore.Writer(file)) {
+      for (int i = 0; i < count; i++) {
+        writer.add("Quote " + i, "Place " + i, "custom/" + i);
+      }
+      writer.commit();
+    }
+
+    try (QuoteStore store = QuoteStore.open(file)) {
+      assertEquals(count, store.count());
+      for (int i = 0; i < count; i++) {
+        assertEquals("Place " + i, store.get(i).place);
+        assertEquals("custom/" + i, store.get(i).data);
+      }
+    }
+  }
+
+  @Test
+  public void checksumFollowsContent() throws IOException {
+    long first = QuoteStore.readChecksum(write(folder.newFile("a.bin"), 50));
+    long same = QuoteStore.readChecksum(write(folder.newFile("b.bin"), 50));
+    long other = QuoteStore.readChecksum(write(folder.newFile("c.bin"), 51));
+    assertEquals(first, same);
+    assertNotEquals(first, other);
+  }
+
+  @Test
+  public void closeWithoutCommitLeavesNothing() throws IOException {
+    File dir = folder.newFolder("store");
+    File file = new File(dir, "quotes.bin");
+    try (QuoteStore.Writer writer = new QuoteStore.Writer(file)) {
+      writer.add("Quote", "Category", "custom/0");
+    }
+    assertEquals(0, dir.list().length);
+  }
+
+  @Test
+  public void rejectsTruncatedStore() throws IOException {
+    File file = write(folder.newFile("quotes.bin"), 20);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 8);
+    }
+    assertThrows(IOException.class, () -> QuoteStore.open(file));
+
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(QuoteStore.HEADER_SIZE - 1);
+    }
+    assertThrows(IOException.class, () -> QuoteStore.open(file));
+    assertThrows(IOException.class, () -> QuoteStore.readChecksum(file));
+  }
+
+  @Test
+  public void rejectsOtherFiles() throws IOException {
+    File file = write(folder.newFile("quotes.bin"), 20);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.writeInt(0x12345678);
+    }
+    IOException e = assertThrows(IOException.class, () -> QuoteStore.open(file));
+    assertTrue(e.getMessage().startsWith("Not a quote store"));
+
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.writeInt(QuoteStore.MAGIC);
+      raf.writeInt(QuoteStore.VERSION + 1);
+    }
+    assertThrows(IOException.class, () -> QuoteStore.open(file));
+  }
+
+  @Test
+  public void rejectsIndexOutOfRange() throws IOException {
+    try (QuoteStore store = QuoteStore.open(write(folder.newFile("quotes.bin"), 3))) {
+      assertThrows(IndexOutOfBoundsException.class, () -> store.get(3));
+      assertThrows(IndexOutOfBoundsException.class, () -> store.get(-1));
+    }
+  }
+}
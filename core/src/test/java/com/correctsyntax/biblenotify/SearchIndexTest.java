@@ -0,0 +1,192 @@
+package com.correctsyntax.biblenotify;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SearchIndexTest {
+  private static final long CHECKSUM = 0xC0FFEEL;
+
+  private static final String[] VERSES = {
+    "In the beginning God created the heaven and the earth.",
+    "And God said, Let there be light: and there was light.",
+    "The LORD is my shepherd; I shall not want.",
+    "For God so loved the world",
+    "Thy word is a lamp unto my feet, and a light unto my path.",
+    "Au commencement, Dieu créa les cieux et la terre.",
+    "He restoreth my soul",
+  };
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File build(String name, String language, int bufferSize, String... docs)
+      throws IOException {
+    File file = new File(folder.getRoot(), name);
+    try (SearchIndex.Builder builder = new SearchIndex.Builder(file, language, bufferSize)) {
+      for (int i = 0; i < docs.length; i++) {
+        builder.add(i, docs[i]);
+      }
+      builder.commit(CHECKSUM);
+    }
+    return file;
+  }
+
+  private File build(String name, String... docs) throws IOException {
+    return build(name, "en", SearchIndex.Builder.BUFFER_SIZE, docs);
+  }
+
+  @Test
+  public void findsPrefixesOfEveryWord() throws IOException {
+    try (SearchIndex index = SearchIndex.open(build("en.idx", VERSES), CHECKSUM)) {
+      assertEquals(VERSES.length, index.docCount());
+      assertArrayEquals(new int[] {0, 1, 3}, index.search("God", 10));
+      assertArrayEquals(new int[] {1, 4}, index.search("light", 10));
+      assertArrayEquals(new int[] {1, 4}, index.search("lig", 10));
+      assertArrayEquals(new int[] {1}, index.search("god light", 10));
+      // Stop words are not indexed, but a word being typed still is a prefix
+      assertArrayEquals(new int[] {6}, index.search("so", 10));
+      assertArrayEquals(new int[] {0, 5}, index.search("créa", 10));
+      assertArrayEquals(new int[] {5}, index.search("CRÉA CIEUX", 10));
+      assertArrayEquals(new int[0], index.search("darkness", 10));
+      assertArrayEquals(new int[0], index.search("god darkness", 10));
+      assertArrayEquals(new int[0], index.search("   ", 10));
+    }
+  }
+
+  @Test
+  public void limitsResultsInDocOrder() throws IOException {
+    try (SearchIndex index = SearchIndex.open(build("en.idx", VERSES), CHECKSUM)) {
+      assertArrayEquals(new int[] {0, 1}, index.search("god", 2));
+      assertArrayEquals(new int[0], index.search("god", 0));
+    }
+  }
+
+  // Doc ids far apart take multi-byte varint deltas
+  @Test
+  public void sparseDocIds() throws IOException {
+    File file = new File(folder.getRoot(), "sparse.idx");
+    int[] docs = {0, 127, 128, 16_383, 16_384, 2_097_152};
+    try (SearchIndex.Builder builder = new SearchIndex.Builder(file, SearchTokenizer.ANY)) {
+      for (int doc : docs) {
+        builder.add(doc, "needle doc" + doc);
+      }
+      builder.commit(CHECKSUM);
+    }
+    try (SearchIndex index = SearchIndex.open(file, CHECKSUM)) {
+      assertEquals(docs[docs.length - 1] + 1, index.docCount());
+      assertArrayEquals(docs, index.search("needle", 100));
+      assertArrayEquals(new int[] {16_384}, index.search("doc16384", 100));
+    }
+  }
+
+  // A tiny buffer spills a run after every doc; the merged file is the same
+  @Test
+  public void spilledRunsMergeToTheSameIndex() throws IOException {
+    String[] docs = new String[500];
+    Random random = new Random(5);
+    for (int i = 0; i < docs.length; i++) {
+      StringBuilder text = new StringBuilder();
+      for (int w = 0; w < 12; w++) {
+        text.append("w").append(random.nextInt(300)).append(' ');
+      }
+      docs[i] = text.toString();
+    }
+
+    File memory = build("memory.idx", SearchTokenizer.ANY, SearchIndex.Builder.BUFFER_SIZE, docs);
+    File spilled = build("spilled.idx", SearchTokenizer.ANY, 1, docs);
+    File some = build("some.idx", SearchTokenizer.ANY, 4096, docs);
+    byte[] expected = Files.readAllBytes(memory.toPath());
+    assertArrayEquals(expected, Files.readAllBytes(spilled.toPath()));
+    assertArrayEquals(expected, Files.readAllBytes(some.toPath()));
+
+    // Runs and temp files are gone
+    for (String name : folder.getRoot().list()) {
+      assertTrue(name, name.endsWith(".idx"));
+    }
+  }
+
+  @Test
+  public void closeWithoutCommitLeavesNothing() throws IOException {
+    File file = new File(folder.getRoot(), "lost.idx");
+    try (SearchIndex.Builder builder = new SearchIndex.Builder(file, "en", 1)) {
+      for (int i = 0; i < VERSES.length; i++) {
+        builder.add(i, VERSES[i]);
+      }
+    }
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void opensIndexInMemory() throws IOException {
+    byte[] bytes = Files.readAllBytes(build("en.idx", VERSES).toPath());
+    SearchIndex index = SearchIndex.open(ByteBuffer.wrap(bytes), "en.idx");
+    assertArrayEquals(new int[] {2}, index.search("shepherd", 10));
+  }
+
+  @Test
+  public void rejectsOutOfDateIndex() throws IOException {
+    File file = build("en.idx", VERSES);
+    IOException e = assertThrows(IOException.class, () -> SearchIndex.open(file, CHECKSUM + 1));
+    assertTrue(e.getMessage().contains("out of date"));
+  }
+
+  @Test
+  public void rejectsTruncatedIndex() throws IOException {
+    File file = build("en.idx", VERSES);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(20);
+    }
+    IOException e = assertThrows(IOException.class, () -> SearchIndex.open(file, CHECKSUM));
+    assertTrue(e.getMessage().startsWith("Truncated"));
+  }
+
+  @Test
+  public void rejectsOtherFiles() throws IOException {
+    File file = build("en.idx", VERSES);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.writeInt(QuoteStore.MAGIC);
+    }
+    assertThrows(IOException.class, () -> SearchIndex.open(file, CHECKSUM));
+
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.writeInt(SearchIndex.MAGIC);
+      raf.writeInt(SearchIndex.VERSION + 1);
+    }
+    assertThrows(IOException.class, () -> SearchIndex.open(file, CHECKSUM));
+  }
+
+  @Test
+  public void closedIndexRefusesSearches() throws IOException {
+    SearchIndex index = SearchIndex.open(build("en.idx", VERSES), CHECKSUM);
+    index.close();
+    assertThrows(IllegalStateException.class, () -> index.search("god", 10));
+  }
+
+  // The sidecar a store writes indexes its records
+  @Test
+  public void storeSidecar() throws IOException {
+    File store = new File(folder.getRoot(), "quotes.bin");
+    try (QuoteStore.Writer writer = new QuoteStore.Writer(store)) {
+      for (String verse : VERSES) {
+        writer.add(verse, "Bible", "custom/" + writer.count());
+      }
+      writer.commit();
+    }
+    try (SearchIndex index =
+        SearchIndex.open(SearchIndex.fileFor(store), QuoteStore.readChecksum(store))) {
+      // No language, so "the" is indexed too; it also matches "there"
+      assertArrayEquals(new int[] {0, 1, 2, 3}, index.search("the ", 10));
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.correctsyntax.biblenotify;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class SearchTokenizerTest {
+  private static void assertTokens(String text, String language, String... expected) {
+    assertEquals(Arrays.asList(expected), SearchTokenizer.tokens(text, language));
+  }
+
+  private static void assertQuery(String query, String language, String... expected) {
+    assertEquals(Arrays.asList(expected), SearchTokenizer.queryTokens(query, language));
+  }
+
+  @Test
+  public void foldsCaseAndAccents() {
+    assertTokens("Éternel, ÇA Noël", "fr", "eternel", "ca", "noel");
+    assertEquals("l'ame", SearchTokenizer.fold("L’Âme"));
+  }
+
+  @Test
+  public void keepsRepeatsInTextOrder() {
+    assertTokens("Holy, holy, holy", SearchTokenizer.ANY, "holy", "holy", "holy");
+    assertTokens("Psalm 23:1", SearchTokenizer.ANY, "psalm", "23");
+  }
+
+  @Test
+  public void dropsShortAndStopWords() {
+    assertTokens("In the beginning God created", "en", "beginning", "god", "created");
+    assertTokens(
+        "Au commencement, Dieu créa le ciel", "fr", "commencement", "dieu", "crea", "ciel");
+    // Custom libraries keep every word of two letters or more
+    assertTokens("In the beginning a God", SearchTokenizer.ANY, "in", "the", "beginning", "god");
+  }
+
+  @Test
+  public void dropsFrenchElisions() {
+    assertTokens("L'amour qu’il donne jusqu'au bout", "fr", "amour", "il", "donne", "bout");
+  }
+
+  @Test
+  public void truncatesLongTokens() {
+    String word = "supercalifragilisticexpialidocious";
+    assertEquals(
+        Collections.singletonList(word.substring(0, SearchTokenizer.MAX_LENGTH)),
+        SearchTokenizer.tokens(word, SearchTokenizer.ANY));
+  }
+
+  // The last word is a prefix still being typed, kept whatever it is
+  @Test
+  public void queryKeepsTheWordBeingTyped() {
+    assertQuery("so", "en", "so");
+    assertQuery("the", "en", "the");
+    assertQuery("g", "en", "g");
+    assertQuery("la", "fr", "la");
+    assertQuery("love the", "en", "love", "the");
+  }
+
+  // Once followed by anything the word is finished and filtered like the index
+  @Test
+  public void queryFiltersFinishedWords() {
+    assertQuery("so ", "en");
+    assertQuery("the light", "en", "light");
+    assertQuery("a light", "en", "light");
+    assertQuery("l'amour", "fr", "amour");
+    assertQuery("la lumière.", "fr", "lumiere");
+  }
+
+  @Test
+  public void emptyText() {
+    assertTokens("", "en");
+    assertTokens(" ,;! ", "en");
+    assertQuery("", "en");
+  }
+}
@@ -0,0 +1,188 @@
+package com.correctsyntax.biblenotify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShuffleBagTest {
+  private static final long KEY = 0x5EEDL;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File bag;
+
+  @Before
+  public void setUp() {
+    bag = new File(folder.getRoot(), "bags/profile.bag");
+  }
+
+  // Picks n quotes, failing on a repeat or an index out of range
+  private void pickDistinct(Set<Integer> seen, int n, int count, long key, int mode)
+      throws IOException {
+    for (int i = 0; i < n; i++) {
+      int index = ShuffleBag.next(bag, count, key, mode);
+      assertTrue("out of range " + index, index >= 0 && index < count);
+      assertTrue("repeated " + index, seen.add(index));
+    }
+  }
+
+  @Test
+  public void fullCycleWithoutRepeats() throws IOException {
+    for (int count : new int[] {1, 2, 7, 64, 1000}) {
+      bag.delete();
+      for (int round = 0; round < 3; round++) {
+        Set<Integer> seen = new HashSet<>();
+        pickDistinct(seen, count, count, KEY, ShuffleBag.MODE_SHUFFLE);
+        assertEquals(count, seen.size());
+      }
+    }
+  }
+
+  @Test
+  public void sequentialModeInOrder() throws IOException {
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < 10; i++) {
+        assertEquals(i, ShuffleBag.next(bag, 10, KEY, ShuffleBag.MODE_SEQUENTIAL));
+      }
+    }
+  }
+
+  // Quotes appended mid-round join it unseen, nothing already shown comes back
+  @Test
+  public void growthKeepsTheRound() throws IOException {
+    Set<Integer> seen = new HashSet<>();
+    pickDistinct(seen, 30, 50, KEY, ShuffleBag.MODE_SHUFFLE);
+    pickDistinct(seen, 10, 80, KEY, ShuffleBag.MODE_SHUFFLE);
+    pickDistinct(seen, 83, 123, KEY, ShuffleBag.MODE_SHUFFLE);
+    assertEquals(123, seen.size());
+
+    // The next round starts over
+    Set<Integer> next = new HashSet<>();
+    pickDistinct(next, 123, 123, KEY, ShuffleBag.MODE_SHUFFLE);
+  }
+
+  @Test
+  public void modeSwitchKeepsTheRound() throws IOException {
+    Set<Integer> seen = new HashSet<>();
+    pickDistinct(seen, 20, 100, KEY, ShuffleBag.MODE_SHUFFLE);
+    pickDistinct(seen, 30, 100, KEY, ShuffleBag.MODE_SEQUENTIAL);
+    pickDistinct(seen, 50, 100, KEY, ShuffleBag.MODE_SHUFFLE);
+    assertEquals(100, seen.size());
+  }
+
+  // A replaced library (new key) or a smaller one starts a new round
+  @Test
+  public void newKeyOrFewerQuotesReseed() throws IOException {
+    Set<Integer> seen = new HashSet<>();
+    pickDistinct(seen, 9, 10, KEY, ShuffleBag.MODE_SEQUENTIAL);
+    assertEquals(0, ShuffleBag.next(bag, 10, KEY + 1, ShuffleBag.MODE_SEQUENTIAL));
+
+    pickDistinct(new HashSet<>(), 5, 10, KEY + 1, ShuffleBag.MODE_SEQUENTIAL);
+    assertEquals(0, ShuffleBag.next(bag, 8, KEY + 1, ShuffleBag.MODE_SEQUENTIAL));
+  }
+
+  // A peek is what next() returns until it is shown
+  @Test
+  public void peekDoesNotUseUpTheQuote() throws IOException {
+    int peeked = ShuffleBag.peek(bag, 50, KEY, ShuffleBag.MODE_SHUFFLE);
+    assertEquals(peeked, ShuffleBag.peek(bag, 50, KEY, ShuffleBag.MODE_SHUFFLE));
+    assertEquals(peeked, ShuffleBag.next(bag, 50, KEY, ShuffleBag.MODE_SHUFFLE));
+
+    assertEquals(0, ShuffleBag.peek(bag, 10, KEY + 1, ShuffleBag.MODE_SEQUENTIAL));
+    ShuffleBag.markShown(bag, 0, KEY + 1);
+    // Twice is once
+    ShuffleBag.markShown(bag, 0, KEY + 1);
+    assertEquals(1, ShuffleBag.peek(bag, 10, KEY + 1, ShuffleBag.MODE_SEQUENTIAL));
+    assertEquals(1, ShuffleBag.next(bag, 10, KEY + 1, ShuffleBag.MODE_SEQUENTIAL));
+    assertEquals(2, ShuffleBag.next(bag, 10, KEY + 1, ShuffleBag.MODE_SEQUENTIAL));
+  }
+
+  // Staged picks that are shown, thrown away, or picked again make a full round
+  @Test
+  public void peeksKeepTheRound() throws IOException {
+    Set<Integer> seen = new HashSet<>();
+    Random random = new Random(9);
+    while (seen.size() < 200) {
+      int peeked = ShuffleBag.peek(bag, 200, KEY, ShuffleBag.MODE_SHUFFLE);
+      assertTrue("repeated " + peeked, !seen.contains(peeked));
+      switch (random.nextInt(3)) {
+        case 0:
+          ShuffleBag.markShown(bag, peeked, KEY);
+          seen.add(peeked);
+          break;
+        case 1:
+          // Stale, the receiver picks on the spot
+          pickDistinct(seen, 1, 200, KEY, ShuffleBag.MODE_SHUFFLE);
+          break;
+        default:
+          // Discarded, staged again later
+          break;
+      }
+    }
+    pickDistinct(new HashSet<>(), 200, 200, KEY, ShuffleBag.MODE_SHUFFLE);
+  }
+
+  // Once the bag reseeded, a pick peeked before is not marked in the new round
+  @Test
+  public void markShownIgnoresOtherRounds() throws IOException {
+    assertEquals(0, ShuffleBag.peek(bag, 10, KEY, ShuffleBag.MODE_SEQUENTIAL));
+    assertEquals(0, ShuffleBag.next(bag, 10, KEY + 1, ShuffleBag.MODE_SEQUENTIAL));
+    ShuffleBag.markShown(bag, 5, KEY);
+    Set<Integer> seen = new HashSet<>(Collections.singleton(0));
+    pickDistinct(seen, 9, 10, KEY + 1, ShuffleBag.MODE_SEQUENTIAL);
+
+    ShuffleBag.markShown(new File(folder.getRoot(), "missing.bag"), 0, KEY);
+  }
+
+  @Test
+  public void damagedBagStartsOver() throws IOException {
+    pickDistinct(new HashSet<>(), 5, 10, KEY, ShuffleBag.MODE_SEQUENTIAL);
+
+    // Cut inside the bitset
+    try (RandomAccessFile raf = new RandomAccessFile(bag, "rw")) {
+      raf.setLength(ShuffleBag.HEADER_SIZE);
+    }
+    assertEquals(0, ShuffleBag.next(bag, 10, KEY, ShuffleBag.MODE_SEQUENTIAL));
+
+    try (FileOutputStream out = new FileOutputStream(bag)) {
+      out.write(new byte[ShuffleBag.HEADER_SIZE + 2]);
+    }
+    Set<Integer> seen = new HashSet<>();
+    pickDistinct(seen, 10, 10, KEY, ShuffleBag.MODE_SHUFFLE);
+  }
+
+  @Test
+  public void rejectsEmptyStore() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ShuffleBag.next(bag, 0, KEY, ShuffleBag.MODE_SHUFFLE));
+  }
+
+  @Test
+  public void permuteIsABijection() {
+    for (int count : new int[] {1, 3, 4, 5, 17, 256, 1000, 4097}) {
+      for (long seed : new long[] {0, 1, -7, 0x123456789ABCDEFL}) {
+        boolean[] hit = new boolean[count];
+        for (int i = 0; i < count; i++) {
+          int value = ShuffleBag.permute(i, count, seed);
+          assertTrue(value >= 0 && value < count);
+          assertTrue("collision at " + value, !hit[value]);
+          hit[value] = true;
+        }
+      }
+    }
+  }
+}
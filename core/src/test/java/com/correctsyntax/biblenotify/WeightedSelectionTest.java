@@ -0,0 +1,183 @@
+package com.correctsyntax.biblenotify;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WeightedSelectionTest {
+  private static final int SAMPLES = 100_000;
+  private static final long CHECKSUM = 0x5E1EC7L;
+  private static final long SELECTION_KEY = 1;
+  private static final String LONG_QUOTE =
+      new String(new char[QuoteClasses.SHORT_QUOTE_LENGTH + 1]).replace('\0', 'x');
+
+  // Records 0-99 are short "Hope" quotes, 100-299 long "Peace" ones
+  private static final int HOPE = 100;
+  private static final int PEACE = 200;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private QuoteClasses classes;
+  private final MemoryFavorites favorites = new MemoryFavorites();
+
+  // Bumps the version on every change, like Favorites on the device
+  private static class MemoryFavorites implements WeightedSelection.FavoriteSource {
+    final Map<String, int[]> byProfile = new HashMap<>();
+    long version;
+
+    void set(String profileId, int... indices) {
+      byProfile.put(profileId, indices);
+      version++;
+    }
+
+    @Override
+    public long version(String profileId) {
+      return version;
+    }
+
+    @Override
+    public int[] load(String profileId, long selectionKey) {
+      int[] indices = byProfile.get(profileId);
+      return indices != null ? indices : new int[0];
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    File file = new File(folder.getRoot(), "quotes.bin.cls");
+    try (QuoteClasses.Builder builder = new QuoteClasses.Builder(file)) {
+      for (int i = 0; i < HOPE; i++) {
+        builder.add("short", "Hope", "custom/" + i);
+      }
+      for (int i = 0; i < PEACE; i++) {
+        builder.add(LONG_QUOTE, "Peace", "custom/" + (HOPE + i));
+      }
+      builder.commit(CHECKSUM);
+    }
+    classes = QuoteClasses.open(file, CHECKSUM);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    classes.close();
+  }
+
+  private int[] sample(QuoteProfile profile) throws IOException {
+    int[] counts = new int[HOPE + PEACE];
+    for (int i = 0; i < SAMPLES; i++) {
+      counts[WeightedSelection.next(favorites, profile, classes, SELECTION_KEY)]++;
+    }
+    return counts;
+  }
+
+  private static int sum(int[] counts, int from, int to) {
+    int sum = 0;
+    for (int i = from; i < to; i++) {
+      sum += counts[i];
+    }
+    return sum;
+  }
+
+  // Within 5 standard deviations of the share p of the samples
+  private static void assertShare(String message, double p, int count) {
+    double tolerance = 5 * Math.sqrt(SAMPLES * p * (1 - p)) + 1;
+    assertEquals(message, SAMPLES * p, count, tolerance);
+  }
+
+  @Test
+  public void followsCategoryAndShortWeights() throws IOException {
+    QuoteProfile profile = new QuoteProfile("weights", "weights", "General", 9, 0);
+    profile.favoriteWeight = 0;
+
+    // Hope 100 x 1, Peace 200 x 1
+    int[] counts = sample(profile);
+    assertShare("hope", 1 / 3.0, sum(counts, 0, HOPE));
+
+    // Hope 100 x 4, Peace 200 x 1
+    profile.categoryWeights.put("Hope", 4);
+    counts = sample(profile);
+    assertShare("hope", 2 / 3.0, sum(counts, 0, HOPE));
+
+    // Hope 100 x 4 x 3 (short), Peace 200 x 1
+    profile.shortWeight = 3;
+    counts = sample(profile);
+    assertShare("hope", 6 / 7.0, sum(counts, 0, HOPE));
+
+    // Every quote of a class equally likely
+    for (int i = 0; i < HOPE; i++) {
+      assertShare("quote " + i, 6 / 7.0 / HOPE, counts[i]);
+    }
+  }
+
+  // Favorites weigh on top of their class: 200 x 1 for the classes, 2 x 50 for them
+  @Test
+  public void favoritesOnTop() throws IOException {
+    QuoteProfile profile = new QuoteProfile("favorites", "favorites", "General", 9, 0);
+    profile.categoryWeights.put("Hope", 0);
+    profile.favoriteWeight = 50;
+    favorites.set(profile.id, 7, 250);
+
+    int[] counts = sample(profile);
+    assertEquals(0, sum(counts, 0, 7) + sum(counts, 8, HOPE));
+    assertShare("favorite 7", 1 / 6.0, counts[7]);
+    assertShare("favorite 250", 1 / 6.0 + 1 / 300.0, counts[250]);
+    assertShare("peace", 5 / 6.0, sum(counts, HOPE, HOPE + PEACE));
+  }
+
+  @Test
+  public void onlyFavorites() throws IOException {
+    QuoteProfile profile = new QuoteProfile("only", "only", "General", 9, 0);
+    profile.categoryWeights.put("Hope", 0);
+    profile.categoryWeights.put("Peace", 0);
+    favorites.set(profile.id, 3, 120, 299);
+
+    int[] counts = sample(profile);
+    assertEquals(SAMPLES, counts[3] + counts[120] + counts[299]);
+    assertShare("favorite 3", 1 / 3.0, counts[3]);
+  }
+
+  // Everything weighted to zero, favorites too: every quote equally likely
+  @Test
+  public void zeroWeightsFallBackToUniform() throws IOException {
+    QuoteProfile profile = new QuoteProfile("zero", "zero", "General", 9, 0);
+    profile.categoryWeights.put("Hope", 0);
+    profile.categoryWeights.put("Peace", 0);
+    profile.favoriteWeight = 0;
+    favorites.set(profile.id, 3);
+
+    int[] counts = sample(profile);
+    assertShare("hope", 1 / 3.0, sum(counts, 0, HOPE));
+    assertShare("favorite 3", 1 / 300.0, counts[3]);
+  }
+
+  // The cached table follows the weights and favorites of the same profile
+  @Test
+  public void changesInvalidateTheTable() throws IOException {
+    QuoteProfile profile = new QuoteProfile("cached", "cached", "General", 9, 0);
+    profile.categoryWeights.put("Peace", 0);
+    profile.favoriteWeight = 0;
+    assertEquals(SAMPLES, sum(sample(profile), 0, HOPE));
+
+    profile.categoryWeights.put("Hope", 0);
+    profile.categoryWeights.put("Peace", 1);
+    assertEquals(SAMPLES, sum(sample(profile), HOPE, HOPE + PEACE));
+
+    profile.categoryWeights.put("Peace", 0);
+    profile.favoriteWeight = 1;
+    favorites.set(profile.id, 42);
+    assertEquals(SAMPLES, sample(profile)[42]);
+    favorites.set(profile.id, 142);
+    assertEquals(SAMPLES, sample(profile)[142]);
+
+    // A copy is the same profile to the cache
+    assertEquals(SAMPLES, sample(profile.copy())[142]);
+  }
+}